@@ -0,0 +1,114 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.http.converter.JsonOAuth2AccessTokenMessageConverter;
+
+/**
+ * Latency of JSON token endpoint responses: the Spring MVC default Jackson converter (which goes through
+ * <code>OAuth2AccessTokenSerializer</code>) against the dedicated access token converter. Run it with
+ * <code>-prof gc</code> to compare the garbage allocated per response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonTokenResponseBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean additionalInformation;
+
+	private final MappingJacksonHttpMessageConverter jacksonConverter = new MappingJacksonHttpMessageConverter();
+
+	private final JsonOAuth2AccessTokenMessageConverter accessTokenConverter = new JsonOAuth2AccessTokenMessageConverter();
+
+	private final ByteArrayOutputStream output = new ByteArrayOutputStream(512);
+
+	private final HttpOutputMessage outputMessage = new HttpOutputMessage() {
+
+		private final HttpHeaders headers = new HttpHeaders();
+
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+
+		public OutputStream getBody() throws IOException {
+			return output;
+		}
+	};
+
+	private DefaultOAuth2AccessToken accessToken;
+
+	@Setup
+	public void setup() {
+		accessToken = new DefaultOAuth2AccessToken("FOO");
+		accessToken.setExpiration(new Date(System.currentTimeMillis() + 3600000L));
+		accessToken.setRefreshToken(new DefaultOAuth2RefreshToken("BAR"));
+		TreeSet<String> scope = new TreeSet<String>();
+		scope.add("read");
+		scope.add("write");
+		accessToken.setScope(scope);
+		if (additionalInformation) {
+			Map<String, Object> information = new LinkedHashMap<String, Object>();
+			information.put("user_name", "marissa");
+			information.put("authorities", Collections.singletonList("ROLE_USER"));
+			accessToken.setAdditionalInformation(information);
+		}
+	}
+
+	@Benchmark
+	public int jacksonConverter() throws IOException {
+		output.reset();
+		outputMessage.getHeaders().clear();
+		jacksonConverter.write(accessToken, MediaType.APPLICATION_JSON, outputMessage);
+		return output.size();
+	}
+
+	@Benchmark
+	public int accessTokenConverter() throws IOException {
+		output.reset();
+		outputMessage.getHeaders().clear();
+		accessTokenConverter.write(accessToken, MediaType.APPLICATION_JSON, outputMessage);
+		return output.size();
+	}
+
+}
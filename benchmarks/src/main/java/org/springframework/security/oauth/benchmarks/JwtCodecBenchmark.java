@@ -0,0 +1,96 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.jwt.Jwt;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.codec.Codecs;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+
+/**
+ * Decoding and verification of HS256 JWTs, and the URL-safe Base64 decoding underneath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtCodecBenchmark {
+
+	/**
+	 * Number of scopes and authorities in the claims (to vary the size of the token).
+	 */
+	@Param({ "2", "20" })
+	public int claimCount;
+
+	private MacSigner signer;
+
+	private String token;
+
+	private byte[] tokenBytes;
+
+	private byte[] claimsSegment;
+
+	@Setup
+	public void setup() throws Exception {
+		signer = new MacSigner("a-shared-secret-for-hs256-signing");
+		StringBuilder claims = new StringBuilder("{\"jti\":\"1b7a4b0e-8a4e-4f0b-9a63-6f1ff6b2ad0c\",")
+				.append("\"client_id\":\"my-client\",\"user_name\":\"marissa\",\"exp\":1350000000,\"scope\":[");
+		for (int i = 0; i < claimCount; i++) {
+			claims.append(i > 0 ? "," : "").append("\"scope").append(i).append("\"");
+		}
+		claims.append("],\"authorities\":[");
+		for (int i = 0; i < claimCount; i++) {
+			claims.append(i > 0 ? "," : "").append("\"ROLE_").append(i).append("\"");
+		}
+		claims.append("]}");
+		token = JwtHelper.encode(claims, signer).getEncoded();
+		tokenBytes = token.getBytes("US-ASCII");
+		claimsSegment = Codecs.b64UrlEncode(claims);
+	}
+
+	@Benchmark
+	public Jwt decodeAndVerify() {
+		return JwtHelper.decodeAndVerify(token, signer);
+	}
+
+	@Benchmark
+	public Jwt decodeAndVerifyBytes() {
+		return JwtHelper.decodeAndVerify(tokenBytes, 0, tokenBytes.length, signer);
+	}
+
+	@Benchmark
+	public Jwt decode() {
+		return JwtHelper.decode(token);
+	}
+
+	@Benchmark
+	public byte[] b64UrlDecode() {
+		return Codecs.b64UrlDecode(claimsSegment);
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.benchmarks;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.springframework.security.jwt.crypto.sign.RsaSigner;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+
+/**
+ * HS256 and RS256 signing and verification of JWT signing inputs at typical sizes, with the pooled signers compared to
+ * a fresh <code>Mac</code> or <code>Signature</code> per call (what the signers used to do).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtSignatureBenchmark {
+
+	/**
+	 * Size of the signing input (base64 header and claims) in bytes.
+	 */
+	@Param({ "256", "1024" })
+	public int size;
+
+	private byte[] content;
+
+	private SecretKeySpec secretKey;
+
+	private MacSigner macSigner;
+
+	private byte[] macSignature;
+
+	private KeyPair keyPair;
+
+	private RsaSigner rsaSigner;
+
+	private RsaVerifier rsaVerifier;
+
+	private byte[] rsaSignature;
+
+	@Setup
+	public void setup() throws Exception {
+		content = new byte[size];
+		Arrays.fill(content, (byte) 'a');
+		secretKey = new SecretKeySpec("a-shared-secret-for-hs256-signing".getBytes("UTF-8"), "HMACSHA256");
+		macSigner = new MacSigner(secretKey);
+		macSignature = macSigner.sign(content);
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		keyPair = generator.generateKeyPair();
+		rsaSigner = new RsaSigner((RSAPrivateKey) keyPair.getPrivate());
+		rsaVerifier = new RsaVerifier((RSAPublicKey) keyPair.getPublic());
+		rsaSignature = rsaSigner.sign(content);
+	}
+
+	@Benchmark
+	public byte[] hs256Sign() {
+		return macSigner.sign(content);
+	}
+
+	@Benchmark
+	public void hs256Verify() {
+		macSigner.verify(content, macSignature);
+	}
+
+	@Benchmark
+	public byte[] hs256SignFreshMac() throws Exception {
+		Mac mac = Mac.getInstance("HMACSHA256");
+		mac.init(secretKey);
+		return mac.doFinal(content);
+	}
+
+	@Benchmark
+	public byte[] rs256Sign() {
+		return rsaSigner.sign(content);
+	}
+
+	@Benchmark
+	public void rs256Verify() {
+		rsaVerifier.verify(content, rsaSignature);
+	}
+
+	@Benchmark
+	public boolean rs256VerifyFreshSignature() throws Exception {
+		Signature signature = Signature.getInstance("SHA256withRSA");
+		signature.initVerify(keyPair.getPublic());
+		signature.update(content);
+		return signature.verify(rsaSignature);
+	}
+
+}
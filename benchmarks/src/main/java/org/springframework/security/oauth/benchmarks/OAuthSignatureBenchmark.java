@@ -0,0 +1,112 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.oauth.common.signature.CoreOAuthSignatureMethodFactory;
+import org.springframework.security.oauth.common.signature.HMAC_SHA1SignatureMethod;
+import org.springframework.security.oauth.common.signature.SharedConsumerSecret;
+import org.springframework.security.oauth.provider.filter.CoreOAuthProviderSupport;
+
+/**
+ * The OAuth 1.0 provider hot path: building the signature base string of a request and verifying its HMAC-SHA1
+ * signature, with and without looking up the signature method in the factory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OAuthSignatureBenchmark {
+
+	private CoreOAuthProviderSupport providerSupport;
+
+	private MockHttpServletRequest request;
+
+	private Map<String, String> oauthParams;
+
+	private HMAC_SHA1SignatureMethod signatureMethod;
+
+	private CoreOAuthSignatureMethodFactory signatureMethodFactory;
+
+	private SharedConsumerSecret consumerSecret;
+
+	private String signatureBaseString;
+
+	private String signature;
+
+	@Setup
+	public void setup() throws Exception {
+		providerSupport = new CoreOAuthProviderSupport();
+		request = new MockHttpServletRequest("GET", "/photos");
+		request.setScheme("http");
+		request.setServerName("photos.example.net");
+		request.setServerPort(80);
+		request.addParameter("file", "vacation.jpg");
+		request.addParameter("size", "original");
+		request.addHeader("Authorization", "OAuth realm=\"http://photos.example.net/\", "
+				+ "oauth_consumer_key=\"dpf43f3p2l4k3l03\", oauth_token=\"nnch734d00sl2jdk\", "
+				+ "oauth_signature_method=\"HMAC-SHA1\", oauth_signature=\"tR3%2BTy81lMeYAr%2FFid0kMTYa%2FWM%3D\", "
+				+ "oauth_timestamp=\"1191242096\", oauth_nonce=\"kllo9940pd9333jh\", oauth_version=\"1.0\"");
+		signatureMethod = new HMAC_SHA1SignatureMethod(new SecretKeySpec("kd94hf93k423kf44&pfkkdhi9sl3r4s00"
+				.getBytes("UTF-8"), HMAC_SHA1SignatureMethod.MAC_NAME));
+		oauthParams = providerSupport.parseParameters(request);
+		signatureMethodFactory = new CoreOAuthSignatureMethodFactory();
+		consumerSecret = new SharedConsumerSecret("kd94hf93k423kf44");
+		signatureBaseString = providerSupport.getSignatureBaseString(request);
+		signature = signatureMethod.sign(signatureBaseString);
+	}
+
+	@Benchmark
+	public String getSignatureBaseString() {
+		return providerSupport.getSignatureBaseString(request);
+	}
+
+	@Benchmark
+	public String getSignatureBaseStringWithParsedParameters() {
+		return providerSupport.getSignatureBaseString(request, oauthParams);
+	}
+
+	@Benchmark
+	public void verify() {
+		signatureMethod.verify(signatureBaseString, signature);
+	}
+
+	@Benchmark
+	public void getSignatureBaseStringAndVerify() {
+		signatureMethod.verify(providerSupport.getSignatureBaseString(request), signature);
+	}
+
+	@Benchmark
+	public void getSignatureMethodAndVerify() {
+		signatureMethodFactory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, consumerSecret,
+				"pfkkdhi9sl3r4s00").verify(signatureBaseString, signature);
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.InMemoryTokenStore;
+import org.springframework.security.oauth2.provider.token.JdbcTokenStore;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+/**
+ * Access token issue and validation through {@link DefaultTokenServices}, with an in-memory store and a JDBC store
+ * backed by an embedded HSQL database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenServicesBenchmark {
+
+	private static final int TOKEN_COUNT = 1000;
+
+	@Param({ "inMemory", "jdbc" })
+	public String store;
+
+	private final AtomicInteger userCounter = new AtomicInteger();
+
+	private final AtomicInteger tokenCounter = new AtomicInteger();
+
+	private EmbeddedDatabase database;
+
+	private DefaultTokenServices tokenServices;
+
+	private String[] tokenValues;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		TokenStore tokenStore;
+		if ("jdbc".equals(store)) {
+			database = new EmbeddedDatabaseBuilder().addScript(
+					"classpath:org/springframework/security/oauth2/provider/token/oauth2-token-schema.sql").build();
+			tokenStore = new JdbcTokenStore(database);
+		}
+		else {
+			tokenStore = new InMemoryTokenStore();
+		}
+		tokenServices = new DefaultTokenServices();
+		tokenServices.setTokenStore(tokenStore);
+		tokenServices.setSupportRefreshToken(true);
+		tokenServices.afterPropertiesSet();
+		tokenValues = new String[TOKEN_COUNT];
+		for (int i = 0; i < TOKEN_COUNT; i++) {
+			tokenValues[i] = tokenServices.createAccessToken(authentication("existing" + i)).getValue();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (database != null) {
+			database.shutdown();
+		}
+	}
+
+	/**
+	 * Issue a new token (for a new user every time, so no existing token is found).
+	 */
+	@Benchmark
+	public OAuth2AccessToken createAccessToken() {
+		return tokenServices.createAccessToken(authentication("user" + userCounter.incrementAndGet()));
+	}
+
+	/**
+	 * Validate an existing token (what a resource server does on every request).
+	 */
+	@Benchmark
+	public OAuth2Authentication loadAuthentication() {
+		int index = (tokenCounter.incrementAndGet() & 0x7fffffff) % TOKEN_COUNT;
+		return tokenServices.loadAuthentication(tokenValues[index]);
+	}
+
+	private OAuth2Authentication authentication(String userName) {
+		DefaultAuthorizationRequest request = new DefaultAuthorizationRequest("client", Arrays.asList("read", "write"));
+		request.setApproved(true);
+		return new OAuth2Authentication(request, new UsernamePasswordAuthenticationToken(userName, "N/A",
+				AuthorityUtils.createAuthorityList("ROLE_USER")));
+	}
+
+}
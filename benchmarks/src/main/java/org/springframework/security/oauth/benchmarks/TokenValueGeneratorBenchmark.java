@@ -0,0 +1,79 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.benchmarks;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
+import org.springframework.security.oauth2.common.util.SecureRandomTokenValueGenerator;
+
+/**
+ * Throughput of token value generation from many threads at once: the old defaults (<code>UUID.randomUUID()</code> and
+ * a single shared <code>SecureRandom</code>) against the per-thread generators. Run it with increasing numbers of
+ * threads (<code>-t</code>) to see the shared instances stop scaling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenValueGeneratorBenchmark {
+
+	private SecureRandomTokenValueGenerator tokenValueGenerator;
+
+	private RandomValueStringGenerator sharedRandomGenerator;
+
+	private RandomValueStringGenerator perThreadRandomGenerator;
+
+	@Setup
+	public void setup() {
+		tokenValueGenerator = new SecureRandomTokenValueGenerator();
+		sharedRandomGenerator = new RandomValueStringGenerator();
+		sharedRandomGenerator.setRandom(new SecureRandom());
+		perThreadRandomGenerator = new RandomValueStringGenerator();
+	}
+
+	@Benchmark
+	public String randomUuid() {
+		return UUID.randomUUID().toString();
+	}
+
+	@Benchmark
+	public String secureRandomTokenValue() {
+		return tokenValueGenerator.generate();
+	}
+
+	@Benchmark
+	public String sharedRandomCode() {
+		return sharedRandomGenerator.generate();
+	}
+
+	@Benchmark
+	public String perThreadRandomCode() {
+		return perThreadRandomGenerator.generate();
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.http.converter.jaxb.JaxbOAuth2AccessTokenMessageConverter;
+import org.springframework.security.oauth2.http.converter.jaxb.JaxbOAuth2ExceptionMessageConverter;
+
+/**
+ * Throughput of XML token and error responses, written by the JAXB message converters that are shared by all request
+ * threads. Run it with several threads (<code>-t</code>) to measure the converters under contention.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XmlTokenResponseBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Converters {
+
+		private final JaxbOAuth2AccessTokenMessageConverter accessTokenConverter = new JaxbOAuth2AccessTokenMessageConverter();
+
+		private final JaxbOAuth2ExceptionMessageConverter exceptionConverter = new JaxbOAuth2ExceptionMessageConverter();
+
+	}
+
+	private final ByteArrayOutputStream output = new ByteArrayOutputStream(512);
+
+	private final HttpOutputMessage outputMessage = new HttpOutputMessage() {
+
+		private final HttpHeaders headers = new HttpHeaders();
+
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+
+		public OutputStream getBody() throws IOException {
+			return output;
+		}
+	};
+
+	private DefaultOAuth2AccessToken accessToken;
+
+	private OAuth2Exception exception;
+
+	@Setup
+	public void setup() {
+		accessToken = new DefaultOAuth2AccessToken("FOO");
+		accessToken.setExpiration(new Date(System.currentTimeMillis() + 3600000L));
+		accessToken.setRefreshToken(new DefaultOAuth2RefreshToken("BAR"));
+		accessToken.setScope(Collections.singleton("read"));
+		exception = new InvalidGrantException("Invalid authorization code: FOO");
+	}
+
+	@Benchmark
+	public int writeAccessToken(Converters converters) throws IOException {
+		output.reset();
+		outputMessage.getHeaders().clear();
+		converters.accessTokenConverter.write(accessToken, MediaType.APPLICATION_XML, outputMessage);
+		return output.size();
+	}
+
+	@Benchmark
+	public int writeException(Converters converters) throws IOException {
+		output.reset();
+		outputMessage.getHeaders().clear();
+		converters.exceptionConverter.write(exception, MediaType.APPLICATION_XML, outputMessage);
+		return output.size();
+	}
+
+}
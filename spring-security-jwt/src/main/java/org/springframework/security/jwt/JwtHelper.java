@@ -21,12 +21,13 @@ import static org.springframework.security.jwt.codec.Codecs.utf8Encode;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.CharBuffer;
+import java.nio.ByteBuffer;
 
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonToken;
+import org.springframework.security.jwt.crypto.sign.RangeSignatureVerifier;
 import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
 import org.springframework.security.jwt.crypto.sign.Signer;
 
@@ -36,52 +37,175 @@ import org.springframework.security.jwt.crypto.sign.Signer;
 public class JwtHelper {
 	static byte[] PERIOD = utf8Encode(".");
 
+	private static final byte PERIOD_BYTE = (byte) '.';
+
 	/**
 	 * Creates a token from an encoded token string.
 	 *
 	 * @param token the (non-null) encoded token (three Base-64 encoded strings separated by "." characters)
 	 */
 	public static Jwt decode(String token) {
-		int firstPeriod = token.indexOf('.');
-		int lastPeriod = token.lastIndexOf('.');
+		byte[] bytes = asciiBytes(token);
+		return decode(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Creates a token from the encoded token bytes. The array is not copied, so it must not be modified while the
+	 * token is in use.
+	 *
+	 * @param token the encoded token (three Base-64 encoded segments separated by "." characters)
+	 * @param offset the offset of the token in the array
+	 * @param length the length of the token
+	 */
+	public static Jwt decode(byte[] token, int offset, int length) {
+		Segments segments = new Segments(token, offset, length);
+		return segments.toJwt(segments.decodeCrypto());
+	}
 
-		if (firstPeriod <=0 || lastPeriod <= firstPeriod) {
-			throw new IllegalArgumentException("JWT must have 3 tokens");
+	/**
+	 * Creates a token from the remaining bytes in a buffer (without changing its position). The backing array of the
+	 * buffer is used directly if it has one, so it must not be modified while the token is in use.
+	 *
+	 * @param token the encoded token
+	 */
+	public static Jwt decode(ByteBuffer token) {
+		if (token.hasArray()) {
+			return decode(token.array(), token.arrayOffset() + token.position(), token.remaining());
 		}
-		CharBuffer buffer = CharBuffer.wrap(token, 0, firstPeriod);
-		// TODO: Use a Reader which supports CharBuffer
-		JwtHeader header = JwtHeaderHelper.create(buffer.toString());
+		byte[] bytes = new byte[token.remaining()];
+		token.duplicate().get(bytes);
+		return decode(bytes, 0, bytes.length);
+	}
 
-		buffer.limit(lastPeriod).position(firstPeriod + 1);
-		byte[] claims = b64UrlDecode(buffer);
-		boolean emptyCrypto = lastPeriod == token.length() - 1;
+	public static Jwt decodeAndVerify(String token, SignatureVerifier verifier) {
+		byte[] bytes = asciiBytes(token);
+		return decodeAndVerify(bytes, 0, bytes.length, verifier);
+	}
 
-		byte[] crypto;
+	/**
+	 * Verifies the signature of a token and decodes it. The signature is checked against the encoded header and claims
+	 * segments in place, and the claims are only decoded once the signature is known to be valid.
+	 *
+	 * @param token the encoded token (three Base-64 encoded segments separated by "." characters)
+	 * @param offset the offset of the token in the array
+	 * @param length the length of the token
+	 * @param verifier the signature verifier
+	 */
+	public static Jwt decodeAndVerify(byte[] token, int offset, int length, SignatureVerifier verifier) {
+		Segments segments = new Segments(token, offset, length);
+		byte[] crypto = segments.decodeCrypto();
+		verify(verifier, token, offset, segments.signedLength(), crypto);
+		return segments.toJwt(crypto);
+	}
 
-		if (emptyCrypto) {
-			if (!"none".equals(header.parameters.alg)) {
-				throw new IllegalArgumentException("Signed or encrypted token must have non-empty crypto segment");
-			}
-			crypto = new byte[0];
-		} else {
-			buffer.limit(token.length()).position(lastPeriod + 1);
-			crypto = b64UrlDecode(buffer);
+	/**
+	 * Verifies a signature over part of an array, in place if the verifier supports it and otherwise with a copy.
+	 */
+	static void verify(SignatureVerifier verifier, byte[] content, int offset, int length, byte[] signature) {
+		if (verifier instanceof RangeSignatureVerifier) {
+			((RangeSignatureVerifier) verifier).verify(content, offset, length, signature);
+		}
+		else {
+			byte[] copy = new byte[length];
+			System.arraycopy(content, offset, copy, 0, length);
+			verifier.verify(copy, signature);
 		}
-		return new JwtImpl(header, claims, crypto);
 	}
 
-	public static Jwt decodeAndVerify(String token, SignatureVerifier verifier) {
-		Jwt jwt = decode(token);
-		jwt.verifySignature(verifier);
-
-		return jwt;
+	/**
+	 * Verifies the signature of the token in the remaining bytes of a buffer and decodes it (without changing the
+	 * position of the buffer).
+	 *
+	 * @param token the encoded token
+	 * @param verifier the signature verifier
+	 * @see #decodeAndVerify(byte[], int, int, SignatureVerifier)
+	 */
+	public static Jwt decodeAndVerify(ByteBuffer token, SignatureVerifier verifier) {
+		if (token.hasArray()) {
+			return decodeAndVerify(token.array(), token.arrayOffset() + token.position(), token.remaining(), verifier);
+		}
+		byte[] bytes = new byte[token.remaining()];
+		token.duplicate().get(bytes);
+		return decodeAndVerify(bytes, 0, bytes.length, verifier);
 	}
 
 	public static Jwt encode(CharSequence content, Signer signer) {
 		JwtHeader header = JwtHeaderHelper.create(signer);
 		byte[] claims = utf8Encode(content);
-		byte[] crypto = signer.sign(concat(b64UrlEncode(header.bytes()), PERIOD, b64UrlEncode(claims)));
-		return new JwtImpl(header, claims, crypto);
+		byte[] signingInput = concat(b64UrlEncode(header.bytes()), PERIOD, b64UrlEncode(claims));
+		byte[] crypto = signer.sign(signingInput);
+		byte[] token = concat(signingInput, PERIOD, b64UrlEncode(crypto));
+		return new JwtImpl(header, claims, crypto, token, 0, token.length, signingInput.length);
+	}
+
+	private static byte[] asciiBytes(String token) {
+		int length = token.length();
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			char c = token.charAt(i);
+			if (c > 0x7f) {
+				throw new IllegalArgumentException("JWT must only contain ASCII characters");
+			}
+			bytes[i] = (byte) c;
+		}
+		return bytes;
+	}
+
+	/**
+	 * The positions of the segments of an encoded token.
+	 */
+	private static class Segments {
+		private final byte[] token;
+		private final int offset;
+		private final int length;
+		private final int firstPeriod;
+		private final int lastPeriod;
+		private final JwtHeader header;
+
+		Segments(byte[] token, int offset, int length) {
+			if (offset < 0 || length < 0 || offset + length > token.length) {
+				throw new IllegalArgumentException("Invalid offset or length for token of length " + token.length);
+			}
+			int end = offset + length;
+			int first = -1;
+			int last = -1;
+			for (int i = offset; i < end; i++) {
+				if (token[i] == PERIOD_BYTE) {
+					if (first < 0) {
+						first = i;
+					}
+					last = i;
+				}
+			}
+			if (first <= offset || last <= first) {
+				throw new IllegalArgumentException("JWT must have 3 tokens");
+			}
+			this.token = token;
+			this.offset = offset;
+			this.length = length;
+			this.firstPeriod = first;
+			this.lastPeriod = last;
+			this.header = JwtHeaderHelper.create(token, offset, first - offset);
+		}
+
+		int signedLength() {
+			return lastPeriod - offset;
+		}
+
+		byte[] decodeCrypto() {
+			if (lastPeriod == offset + length - 1) {
+				if (!"none".equals(header.parameters.alg)) {
+					throw new IllegalArgumentException("Signed or encrypted token must have non-empty crypto segment");
+				}
+				return new byte[0];
+			}
+			return b64UrlDecode(token, lastPeriod + 1, offset + length - lastPeriod - 1);
+		}
+
+		Jwt toJwt(byte[] crypto) {
+			byte[] claims = b64UrlDecode(token, firstPeriod + 1, lastPeriod - firstPeriod - 1);
+			return new JwtImpl(header, claims, crypto, token, offset, length, signedLength());
+		}
 	}
 }
 
@@ -93,8 +217,8 @@ public class JwtHelper {
 class JwtHeaderHelper {
 	private static final JsonFactory f = new JsonFactory();
 
-	static JwtHeader create(String header) {
-		byte[] bytes = b64UrlDecode(header);
+	static JwtHeader create(byte[] token, int offset, int length) {
+		byte[] bytes = b64UrlDecode(token, offset, length);
 		return new JwtHeader(bytes, parseParams(bytes));
 	}
 
@@ -239,33 +363,39 @@ class HeaderParameters {
 
 class JwtImpl implements Jwt {
 	private final JwtHeader header;
-	private final byte[] content;
 	private final byte[] crypto;
-	private String claims;
+	private final String claims;
+	private final byte[] token;
+	private final int offset;
+	private final int length;
+	private final int signedLength;
 
 	/**
 	 * @param header the header, containing the JWS/JWE algorithm information.
 	 * @param content the base64-decoded "claims" segment (may be encrypted, depending on header information).
 	 * @param crypto the base64-decoded "crypto" segment.
+	 * @param token the array containing the encoded token
+	 * @param offset the offset of the encoded token in the array
+	 * @param length the length of the encoded token
+	 * @param signedLength the length of the signing input (the encoded header and claims segments)
 	 */
-	JwtImpl(JwtHeader header, byte[] content, byte[] crypto) {
+	JwtImpl(JwtHeader header, byte[] content, byte[] crypto, byte[] token, int offset, int length, int signedLength) {
 		this.header = header;
-		this.content = content;
 		this.crypto = crypto;
+		this.token = token;
+		this.offset = offset;
+		this.length = length;
+		this.signedLength = signedLength;
 		claims = utf8Decode(content);
 	}
 
 	/**
-	 * Validates a signature contained in the 'crypto' segment.
+	 * Validates a signature contained in the 'crypto' segment against the encoded header and claims.
 	 *
 	 * @param verifier the signature verifier
 	 */
 	public void verifySignature(SignatureVerifier verifier) {
-		verifier.verify(signingInput(), crypto);
- 	}
-
-	private byte[] signingInput() {
-		return concat(b64UrlEncode(header.bytes()), JwtHelper.PERIOD, b64UrlEncode(content));
+		JwtHelper.verify(verifier, token, offset, signedLength, crypto);
 	}
 
   /**
@@ -274,15 +404,17 @@ class JwtImpl implements Jwt {
    * @return the encoded header, claims and crypto segments concatenated with "." characters
    */
 	public byte[] bytes() {
-		return concat(b64UrlEncode(header.bytes()), JwtHelper.PERIOD, b64UrlEncode(content), JwtHelper.PERIOD, b64UrlEncode(crypto));
+		byte[] bytes = new byte[length];
+		System.arraycopy(token, offset, bytes, 0, length);
+		return bytes;
 	}
 
 	public String getClaims() {
-		return utf8Decode(content);
+		return claims;
 	}
 
 	public String getEncoded() {
-		return utf8Decode(bytes());
+		return utf8Decode(ByteBuffer.wrap(token, offset, length));
 	}
 
 	@Override
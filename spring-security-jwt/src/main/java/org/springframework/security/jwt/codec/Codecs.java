@@ -16,6 +16,7 @@ import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
  * Functions for Hex, Base64 and Utf8 encoding/decoding
@@ -46,7 +47,11 @@ public class Codecs {
 	}
 
 	public static byte[] b64UrlDecode(byte[] bytes) {
-		return Base64.urlDecode(bytes);
+		return Base64.urlDecode(bytes, 0, bytes.length);
+	}
+
+	public static byte[] b64UrlDecode(byte[] bytes, int offset, int length) {
+		return Base64.urlDecode(bytes, offset, length);
 	}
 
 	public static byte[] b64UrlDecode(CharSequence value) {
@@ -111,6 +116,16 @@ public class Codecs {
 class Base64 {
 	private static byte EQUALS = (byte)'=';
 
+	private static final byte[] URL_SAFE_DECODABET = new byte[128];
+
+	static {
+		Arrays.fill(URL_SAFE_DECODABET, (byte) -1);
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+		for (int i = 0; i < alphabet.length(); i++) {
+			URL_SAFE_DECODABET[alphabet.charAt(i)] = (byte) i;
+		}
+	}
+
 	static byte[] encode(byte[] bytes) {
 		return Base64Codec.encode(bytes);
 	}
@@ -134,33 +149,55 @@ class Base64 {
 		return result;
 	}
 
-	static byte[] urlDecode(byte[] b64) {
-		// Pad with '=' as necessary before feeding to standard decoder
-		byte[] b64Bytes = null;
+	/**
+	 * Decodes URL-safe Base64 straight into an array of the right size. Padding is optional.
+	 */
+	static byte[] urlDecode(byte[] b64, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > b64.length) {
+			throw new IllegalArgumentException("Invalid offset or length for array of length " + b64.length);
+		}
+		for (int padding = 0; padding < 2 && length > 0 && b64[offset + length - 1] == EQUALS; padding++) {
+			length--;
+		}
 
-		int lMod4 = b64.length % 4;
+		int remainder = length % 4;
 
-		if (lMod4 == 0) {
-			b64Bytes = b64;
-		} else if (lMod4 == 2) {
-			b64Bytes = pad(b64, 2);
-		} else if (lMod4 == 3) {
-			b64Bytes = pad(b64, 1);
-		} else {
+		if (remainder == 1) {
 			throw new IllegalArgumentException("Invalid Base64 string");
 		}
 
-		return Base64Codec.decode(b64Bytes, 0, b64Bytes.length, Base64Codec.URL_SAFE);
+		byte[] result = new byte[(length / 4) * 3 + (remainder == 0 ? 0 : remainder - 1)];
+		int in = offset;
+		int end = offset + length - remainder;
+		int out = 0;
+
+		while (in < end) {
+			int bits = (value(b64, in) << 18) | (value(b64, in + 1) << 12) | (value(b64, in + 2) << 6) | value(b64, in + 3);
+			result[out++] = (byte) (bits >> 16);
+			result[out++] = (byte) (bits >> 8);
+			result[out++] = (byte) bits;
+			in += 4;
+		}
+		if (remainder == 2) {
+			int bits = (value(b64, in) << 18) | (value(b64, in + 1) << 12);
+			result[out] = (byte) (bits >> 16);
+		} else if (remainder == 3) {
+			int bits = (value(b64, in) << 18) | (value(b64, in + 1) << 12) | (value(b64, in + 2) << 6);
+			result[out++] = (byte) (bits >> 16);
+			result[out] = (byte) (bits >> 8);
+		}
+
+		return result;
 	}
 
-	private static byte[] pad(byte[] bytes, int n) {
-		int l = bytes.length;
-		byte[] padded = new byte[l + n];
-		System.arraycopy(bytes, 0, padded, 0, l);
-		for (int i = l; i < l + n; i++) {
-			padded[i] = EQUALS;
+	private static int value(byte[] b64, int index) {
+		byte b = b64[index];
+		int value = b < 0 ? -1 : URL_SAFE_DECODABET[b];
+		if (value < 0) {
+			throw new InvalidBase64CharacterException("Bad Base64 input character decimal " + (b & 0xFF)
+					+ " in array position " + index);
 		}
-		return padded;
+		return value;
 	}
 }
 
@@ -13,18 +13,27 @@
 package org.springframework.security.jwt.crypto.sign;
 
 import java.security.GeneralSecurityException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
 /**
+ * Signs and verifies with a shared secret key (HMAC SHA-256 by default).
+ *
+ * Initialized <code>Mac</code> instances are pooled and reused, since looking up the provider and initializing the key
+ * cost more than signing a typical token. The pool grows to the number of threads signing concurrently.
+ *
  * @author Luke Taylor
  */
-public class MacSigner implements SignerVerifier {
+public class MacSigner implements SignerVerifier, RangeSignatureVerifier {
 	private static final String DEFAULT_ALGORITHM = "HMACSHA256";
 
 	private final String algorithm;
 	private final SecretKey key;
+	private final Queue<Mac> macs = new ConcurrentLinkedQueue<Mac>();
 
 	public MacSigner(byte[] key) {
 		this(new SecretKeySpec(key, DEFAULT_ALGORITHM));
@@ -46,10 +55,27 @@ public class MacSigner implements SignerVerifier {
 //	val keyLength = key.getEncoded.length * 8
 
 	public byte[] sign(byte[] bytes) {
+		return sign(bytes, 0, bytes.length);
+	}
+
+	private byte[] sign(byte[] bytes, int offset, int length) {
+		Mac mac = borrowMac();
+		mac.update(bytes, offset, length);
+		// doFinal() leaves the Mac initialized with the same key, ready for reuse
+		byte[] result = mac.doFinal();
+		macs.offer(mac);
+		return result;
+	}
+
+	private Mac borrowMac() {
+		Mac mac = macs.poll();
+		if (mac != null) {
+			return mac;
+		}
 		try {
-			Mac mac = Mac.getInstance(algorithm);
+			mac = Mac.getInstance(algorithm);
 			mac.init(key);
-			return mac.doFinal(bytes);
+			return mac;
 		}
 		catch (GeneralSecurityException e) {
 			throw new RuntimeException(e);
@@ -57,7 +83,11 @@ public class MacSigner implements SignerVerifier {
 	}
 
   public void verify(byte[] content, byte[] signature) {
-    byte[] signed = sign(content);
+    verify(content, 0, content.length, signature);
+  }
+
+  public void verify(byte[] content, int offset, int length, byte[] signature) {
+    byte[] signed = sign(content, offset, length);
     if (!isEqual(signed, signature)) {
       throw new InvalidSignatureException("Calculated signature did not match actual value");
     }
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.crypto.sign;
+
+/**
+ * Optional interface for a {@link SignatureVerifier} that can verify a signature over part of an array, so that the
+ * content doesn't have to be copied out of a larger buffer (e.g. the signed segments of an encoded token). Verifiers
+ * that don't implement it are passed a copy of the content.
+ */
+public interface RangeSignatureVerifier extends SignatureVerifier {
+
+	/**
+	 * Verify a signature over part of an array.
+	 *
+	 * @param content the array containing the signed content
+	 * @param offset the offset of the content in the array
+	 * @param length the length of the content
+	 * @param signature the signature
+	 */
+	void verify(byte[] content, int offset, int length, byte[] signature);
+}
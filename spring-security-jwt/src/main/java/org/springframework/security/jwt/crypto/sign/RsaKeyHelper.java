@@ -25,6 +25,7 @@ import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.RSAPrivateCrtKeySpec;
 import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
 import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -105,6 +106,11 @@ class RsaKeyHelper {
 			return parseSSHPublicKey(key);
 		}
 
+		RSAPublicKey publicKey = parsePemPublicKey(key);
+		if (publicKey != null) {
+			return publicKey;
+		}
+
 		KeyPair kp = parseKeyPair(key);
 
 		if (kp.getPublic() == null) {
@@ -114,6 +120,44 @@ class RsaKeyHelper {
 		return (RSAPublicKey) kp.getPublic();
 	}
 
+	/**
+	 * Parses PEM encoded public key data, either a SubjectPublicKeyInfo ("PUBLIC KEY", as produced by
+	 * <tt>openssl rsa -pubout</tt>) or a PKCS#1 "RSA PUBLIC KEY".
+	 *
+	 * @return the public key, or null if the data is not a PEM encoded public key
+	 */
+	private static RSAPublicKey parsePemPublicKey(String pemData) {
+		Matcher m = PEM_DATA.matcher(pemData);
+
+		if (!m.matches()) {
+			return null;
+		}
+
+		String type = m.group(1);
+		byte[] content = b64Decode(utf8Encode(m.group(2)));
+
+		try {
+			if (type.equals("PUBLIC KEY")) {
+				return (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(content));
+			}
+			if (type.equals("RSA PUBLIC KEY")) {
+				org.bouncycastle.asn1.pkcs.RSAPublicKey key = org.bouncycastle.asn1.pkcs.RSAPublicKey.getInstance(
+						ASN1Sequence.getInstance(ASN1Primitive.fromByteArray(content)));
+				return createPublicKey(key.getModulus(), key.getPublicExponent());
+			}
+			return null;
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		catch (InvalidKeySpecException e) {
+			throw new IllegalArgumentException("Invalid public key data", e);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	private static RSAPublicKey parseSSHPublicKey(String encKey) {
 		final byte[] PREFIX = new byte[] {0,0,0,7, 's','s','h','-','r','s','a'};
 		ByteArrayInputStream in = new ByteArrayInputStream(b64Decode(utf8Encode(encKey)));
@@ -16,6 +16,8 @@ import java.math.BigInteger;
 import java.security.*;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.spec.RSAPrivateKeySpec;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * A signer for signing using an RSA private key.
@@ -23,6 +25,8 @@ import java.security.spec.RSAPrivateKeySpec;
  * The key can be supplied directly, or as an SSH private key string (in
  * the standard format produced by <tt>ssh-keygen</tt>)
  *
+ * Initialized <code>Signature</code> instances are pooled and reused by concurrent callers.
+ *
  * @author Luke Taylor
  */
 public class RsaSigner implements Signer {
@@ -30,6 +34,7 @@ public class RsaSigner implements Signer {
 
 	private final RSAPrivateKey key;
 	private final String algorithm;
+	private final Queue<Signature> signatures = new ConcurrentLinkedQueue<Signature>();
 
 	public RsaSigner(BigInteger n, BigInteger d) {
 		this(createPrivateKey(n,d));
@@ -50,16 +55,27 @@ public class RsaSigner implements Signer {
 
 	public byte[] sign(byte[] bytes) {
 		try {
-			Signature signature = Signature.getInstance(algorithm);
-			signature.initSign(key);
+			Signature signature = borrowSignature();
 			signature.update(bytes);
-			return signature.sign();
+			// sign() resets the signature to its initialized state, so it can be reused (but not after an error)
+			byte[] result = signature.sign();
+			signatures.offer(signature);
+			return result;
 		}
 		catch (GeneralSecurityException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	private Signature borrowSignature() throws GeneralSecurityException {
+		Signature signature = signatures.poll();
+		if (signature == null) {
+			signature = Signature.getInstance(algorithm);
+			signature.initSign(key);
+		}
+		return signature;
+	}
+
 	public String algorithm() {
 		return algorithm;
 	}
@@ -15,18 +15,23 @@ package org.springframework.security.jwt.crypto.sign;
 import java.math.BigInteger;
 import java.security.*;
 import java.security.interfaces.RSAPublicKey;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Verifies signatures using an RSA public key.
  *
  * The key can be supplied directly, or as an SSH public or private key string (in
- * the standard format produced by <tt>ssh-keygen</tt>).
+ * the standard format produced by <tt>ssh-keygen</tt>), or as a PEM encoded public key.
+ *
+ * Initialized <code>Signature</code> instances are pooled and reused by concurrent callers.
  *
  * @author Luke Taylor
  */
-public class RsaVerifier implements SignatureVerifier {
+public class RsaVerifier implements RangeSignatureVerifier {
 	private final RSAPublicKey key;
 	private final String algorithm;
+	private final Queue<Signature> signatures = new ConcurrentLinkedQueue<Signature>();
 
 	public RsaVerifier(BigInteger n, BigInteger e) {
 		this(RsaKeyHelper.createPublicKey(n, e));
@@ -46,18 +51,34 @@ public class RsaVerifier implements SignatureVerifier {
 	}
 
 	public void verify(byte[] content, byte[] sig) {
-		try {
-			Signature signature = Signature.getInstance(algorithm);
-			signature.initVerify(key);
-			signature.update(content);
+		verify(content, 0, content.length, sig);
+	}
 
-			if (!signature.verify(sig)) {
-				throw new InvalidSignatureException("RSA Signature did not match content");
-			}
+	public void verify(byte[] content, int offset, int length, byte[] sig) {
+		boolean verified;
+		try {
+			Signature signature = borrowSignature();
+			signature.update(content, offset, length);
+			// verify() resets the signature to its initialized state, so it can be reused (but not after an error)
+			verified = signature.verify(sig);
+			signatures.offer(signature);
 		}
 		catch (GeneralSecurityException e) {
 			throw new RuntimeException(e);
 		}
+
+		if (!verified) {
+			throw new InvalidSignatureException("RSA Signature did not match content");
+		}
+	}
+
+	private Signature borrowSignature() throws GeneralSecurityException {
+		Signature signature = signatures.poll();
+		if (signature == null) {
+			signature = Signature.getInstance(algorithm);
+			signature.initVerify(key);
+		}
+		return signature;
 	}
 
 	public String algorithm() {
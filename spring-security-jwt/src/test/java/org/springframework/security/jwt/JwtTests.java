@@ -15,11 +15,14 @@ package org.springframework.security.jwt;
 import static org.junit.Assert.assertEquals;
 import static org.springframework.security.jwt.JwtSpecData.*;
 
+import java.nio.ByteBuffer;
+
 import org.junit.Test;
 import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
 import org.springframework.security.jwt.crypto.sign.MacSigner;
 import org.springframework.security.jwt.crypto.sign.RsaSigner;
 import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
 
 /**
  * @author Luke Taylor
@@ -86,6 +89,54 @@ public class JwtTests {
 		Jwt jwt = JwtHelper.encode(JOE_CLAIM_SEGMENT, new RsaSigner(N, E));
 		jwt.verifySignature(new RsaVerifier(N, D));
 	}
-}
 
+	@Test
+	public void tokenCanBeDecodedFromPartOfAnArray() throws Exception {
+		byte[] bytes = ("Bearer " + JOE_HMAC_TOKEN + "\r\n").getBytes("UTF-8");
+		Jwt jwt = JwtHelper.decodeAndVerify(bytes, 7, JOE_HMAC_TOKEN.length(), hmac);
+		assertEquals(JOE_CLAIM_SEGMENT, jwt.getClaims());
+		assertEquals(JOE_HMAC_TOKEN, jwt.getEncoded());
+		jwt.verifySignature(hmac);
+	}
+
+	@Test
+	public void tokenFromPartOfAnArrayIsCopiedForOtherVerifiers() throws Exception {
+		// A verifier that only implements the plain SignatureVerifier interface
+		SignatureVerifier verifier = new SignatureVerifier() {
+			public void verify(byte[] content, byte[] signature) {
+				hmac.verify(content, signature);
+			}
+
+			public String algorithm() {
+				return hmac.algorithm();
+			}
+		};
+		byte[] bytes = ("Bearer " + JOE_HMAC_TOKEN + "\r\n").getBytes("UTF-8");
+		Jwt jwt = JwtHelper.decodeAndVerify(bytes, 7, JOE_HMAC_TOKEN.length(), verifier);
+		assertEquals(JOE_CLAIM_SEGMENT, jwt.getClaims());
+		jwt.verifySignature(verifier);
+	}
 
+	@Test
+	public void tokenCanBeDecodedFromDirectBuffer() throws Exception {
+		byte[] bytes = JOE_RSA_TOKEN.getBytes("UTF-8");
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes).flip();
+		Jwt jwt = JwtHelper.decodeAndVerify(buffer, new RsaVerifier(N, E));
+		assertEquals(JOE_CLAIM_SEGMENT, jwt.getClaims());
+		assertEquals(0, buffer.position());
+	}
+
+	@Test(expected = InvalidSignatureException.class)
+	public void signatureIsVerifiedBeforeClaimsAreDecoded() throws Exception {
+		// Claims segment that is not valid Base64
+		String token = JOE_HMAC_TOKEN.substring(0, JOE_HMAC_TOKEN.indexOf('.') + 1) + "*"
+				+ JOE_HMAC_TOKEN.substring(JOE_HMAC_TOKEN.lastIndexOf('.'));
+		JwtHelper.decodeAndVerify(token.getBytes("UTF-8"), 0, token.length(), hmac);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tokenWithoutSegmentsIsRejected() throws Exception {
+		JwtHelper.decode(ByteBuffer.wrap(JOE_HEADER_HMAC.getBytes("UTF-8")));
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.crypto.sign;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+import org.springframework.security.jwt.codec.Codecs;
+
+public class MacSignerTests {
+
+	private final MacSigner signer = new MacSigner("secret");
+
+	@Test
+	public void reusedSignerProducesSameSignatureAsFreshMac() throws Exception {
+		Mac mac = Mac.getInstance("HMACSHA256");
+		mac.init(new SecretKeySpec(Codecs.utf8Encode("secret"), "HMACSHA256"));
+		for (int i = 0; i < 3; i++) {
+			byte[] content = Codecs.utf8Encode("Content " + i);
+			assertArrayEquals(mac.doFinal(content), signer.sign(content));
+		}
+	}
+
+	@Test(expected = InvalidSignatureException.class)
+	public void verifyRejectsWrongSignature() throws Exception {
+		byte[] content = Codecs.utf8Encode("Hi I'm the data");
+		byte[] signature = signer.sign(content);
+		signer.verify(content, signature);
+		signer.verify(Codecs.utf8Encode("Hi I'm other data"), signature);
+	}
+
+	@Test
+	public void signerCanBeUsedConcurrently() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		Future<?>[] results = new Future<?>[8];
+		for (int i = 0; i < results.length; i++) {
+			final byte[] content = Codecs.utf8Encode("Content " + i);
+			final byte[] expected = new MacSigner("secret").sign(content);
+			results[i] = executor.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					for (int j = 0; j < 1000; j++) {
+						assertArrayEquals(expected, signer.sign(content));
+					}
+					return null;
+				}
+			});
+		}
+		for (Future<?> result : results) {
+			result.get();
+		}
+		executor.shutdown();
+	}
+}
@@ -12,6 +12,11 @@
  */
 package org.springframework.security.jwt.crypto.sign;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Test;
 import org.springframework.security.jwt.codec.Codecs;
 import org.springframework.security.jwt.crypto.cipher.RsaTestKeyData;
@@ -21,6 +26,27 @@ import org.springframework.security.jwt.crypto.cipher.RsaTestKeyData;
  */
 public class RsaSigningTests {
 
+	private static final String PEM_PUBLIC_KEY_STRING =
+			"-----BEGIN PUBLIC KEY-----\n" +
+			"MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEAwARN4S7Z0asSEj61+SIv\n" +
+			"tUUuHopd/ffne1CbaHXNxj/cI4rY0k5ELZ2SGCFVgmx9XADJJhYoQImO+vMxFAqb\n" +
+			"WxyO45B1rZR1q0ChEFWLGPmNB+fY8TrFHIjJb873s0d2FTYDOwst6HdKPjXkLdgG\n" +
+			"HO4K1fLnO1cQHKGglBKvc4ZSVniUOJ1EdKZHxGnkVjps1hP98AvQx6EpmKExewd4\n" +
+			"MMj77gRYAeSo0pPhugLrmy5DLPoxSUGSZEHCPlCfOfTAt9NuE4YwbpCwDfDmQb+9\n" +
+			"neq7Q0PwmtP6jFrV4VZ3ir2cWYOTF6FcL7ZIncG3aCvXxp8pUQ7NPimYd70dEPuu\n" +
+			"1QIDAQAB\n" +
+			"-----END PUBLIC KEY-----";
+
+	private static final String PEM_RSA_PUBLIC_KEY_STRING =
+			"-----BEGIN RSA PUBLIC KEY-----\n" +
+			"MIIBCgKCAQEAwARN4S7Z0asSEj61+SIvtUUuHopd/ffne1CbaHXNxj/cI4rY0k5E\n" +
+			"LZ2SGCFVgmx9XADJJhYoQImO+vMxFAqbWxyO45B1rZR1q0ChEFWLGPmNB+fY8TrF\n" +
+			"HIjJb873s0d2FTYDOwst6HdKPjXkLdgGHO4K1fLnO1cQHKGglBKvc4ZSVniUOJ1E\n" +
+			"dKZHxGnkVjps1hP98AvQx6EpmKExewd4MMj77gRYAeSo0pPhugLrmy5DLPoxSUGS\n" +
+			"ZEHCPlCfOfTAt9NuE4YwbpCwDfDmQb+9neq7Q0PwmtP6jFrV4VZ3ir2cWYOTF6Fc\n" +
+			"L7ZIncG3aCvXxp8pUQ7NPimYd70dEPuu1QIDAQAB\n" +
+			"-----END RSA PUBLIC KEY-----";
+
 	@Test(expected = IllegalArgumentException.class)
 	public void rsaSignerRejectsInvalidKey() throws Exception {
 		RsaSigner signer = new RsaSigner(RsaTestKeyData.SSH_PUBLIC_KEY_STRING);
@@ -40,4 +66,52 @@ public class RsaSigningTests {
 		verifier = new RsaVerifier(RsaTestKeyData.SSH_PUBLIC_KEY_STRING);
 		verifier.verify(content, signer.sign(content));
 	}
+
+	@Test
+	public void verifierAcceptsPemPublicKeys() throws Exception {
+		byte[] content = Codecs.utf8Encode("Hi I'm the data");
+		RsaSigner signer = new RsaSigner(RsaTestKeyData.SSH_PRIVATE_KEY_STRING);
+
+		new RsaVerifier(PEM_PUBLIC_KEY_STRING).verify(content, signer.sign(content));
+		new RsaVerifier(PEM_RSA_PUBLIC_KEY_STRING).verify(content, signer.sign(content));
+	}
+
+	@Test
+	public void signerAndVerifierCanBeUsedConcurrently() throws Exception {
+		final RsaSigner signer = new RsaSigner(RsaTestKeyData.SSH_PRIVATE_KEY_STRING);
+		final RsaVerifier verifier = new RsaVerifier(RsaTestKeyData.SSH_PUBLIC_KEY_STRING);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		Future<?>[] results = new Future<?>[8];
+		for (int i = 0; i < results.length; i++) {
+			final byte[] content = Codecs.utf8Encode("Content " + i);
+			results[i] = executor.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					for (int j = 0; j < 20; j++) {
+						verifier.verify(content, signer.sign(content));
+					}
+					return null;
+				}
+			});
+		}
+		for (Future<?> result : results) {
+			result.get();
+		}
+		executor.shutdown();
+	}
+
+	@Test(expected = InvalidSignatureException.class)
+	public void verifierCanBeReusedAfterFailure() throws Exception {
+		RsaSigner signer = new RsaSigner(RsaTestKeyData.SSH_PRIVATE_KEY_STRING);
+		RsaVerifier verifier = new RsaVerifier(RsaTestKeyData.SSH_PUBLIC_KEY_STRING);
+		byte[] content = Codecs.utf8Encode("Hi I'm the data");
+		byte[] signature = signer.sign(content);
+		try {
+			verifier.verify(Codecs.utf8Encode("Hi I'm other data"), signature);
+		}
+		catch (InvalidSignatureException e) {
+			// expected
+		}
+		verifier.verify(content, signature);
+		verifier.verify(Codecs.utf8Encode("Hi I'm other data"), signature);
+	}
 }
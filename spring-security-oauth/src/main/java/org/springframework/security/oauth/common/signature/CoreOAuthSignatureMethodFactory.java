@@ -26,9 +26,15 @@ import java.io.UnsupportedEncodingException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Implements the signatures defined in OAuth Core 1.0. By default, PLAINTEXT signatures are not supported
+ * <p>
+ * HMAC-SHA1 signature methods are cached by consumer secret and token secret (up to the
+ * {@link #setHmacCacheSize(int) HMAC cache size}), so that repeated requests with the same credentials reuse the
+ * encoded key and the MACs already initialized with it.
  *
  * @author Ryan Heaton
  */
@@ -38,6 +44,15 @@ public class CoreOAuthSignatureMethodFactory implements OAuthSignatureMethodFact
   private boolean supportHMAC_SHA1 = true;
   private boolean supportRSA_SHA1 = true;
   private PasswordEncoder plainTextPasswordEncoder;
+  private volatile int hmacCacheSize = 1000;
+  private final Map<SecretPair, HMAC_SHA1SignatureMethod> hmacSignatureMethods = new LinkedHashMap<SecretPair, HMAC_SHA1SignatureMethod>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<SecretPair, HMAC_SHA1SignatureMethod> eldest) {
+      return size() > hmacCacheSize;
+    }
+  };
 
   public OAuthSignatureMethod getSignatureMethod(String methodName, SignatureSecret signatureSecret, String tokenSecret) throws UnsupportedSignatureMethodException {
     if (supportPlainText && PlainTextSignatureMethod.SIGNATURE_NAME.equals(methodName)) {
@@ -79,18 +94,27 @@ public class CoreOAuthSignatureMethodFactory implements OAuthSignatureMethodFact
         tokenSecret = "";
       }
 
-      consumerSecret = oauthEncode(consumerSecret);
-      tokenSecret = oauthEncode(tokenSecret);
+      if (hmacCacheSize <= 0) {
+        return createHMAC_SHA1SignatureMethod(consumerSecret, tokenSecret);
+      }
 
-      byte[] keyBytes;
-      try {
-        keyBytes = new StringBuilder(consumerSecret).append('&').append(tokenSecret).toString().getBytes("UTF-8");
+      SecretPair secrets = new SecretPair(consumerSecret, tokenSecret);
+      HMAC_SHA1SignatureMethod signatureMethod;
+      synchronized (hmacSignatureMethods) {
+        signatureMethod = hmacSignatureMethods.get(secrets);
       }
-      catch (UnsupportedEncodingException e) {
-        throw new RuntimeException(e.getMessage());
+      if (signatureMethod == null) {
+        HMAC_SHA1SignatureMethod created = createHMAC_SHA1SignatureMethod(consumerSecret, tokenSecret);
+        synchronized (hmacSignatureMethods) {
+          // Another thread may have got there first
+          signatureMethod = hmacSignatureMethods.get(secrets);
+          if (signatureMethod == null) {
+            signatureMethod = created;
+            hmacSignatureMethods.put(secrets, signatureMethod);
+          }
+        }
       }
-      SecretKeySpec spec = new SecretKeySpec(keyBytes, HMAC_SHA1SignatureMethod.MAC_NAME);
-      return new HMAC_SHA1SignatureMethod(spec);
+      return signatureMethod;
     }
     else if (supportRSA_SHA1 && RSA_SHA1SignatureMethod.SIGNATURE_NAME.equals(methodName)) {
       if (signatureSecret instanceof RSAKeySecret) {
@@ -112,6 +136,18 @@ public class CoreOAuthSignatureMethodFactory implements OAuthSignatureMethodFact
     throw new UnsupportedSignatureMethodException("Unsupported signature method: " + methodName);    
   }
 
+  private HMAC_SHA1SignatureMethod createHMAC_SHA1SignatureMethod(String consumerSecret, String tokenSecret) {
+    byte[] keyBytes;
+    try {
+      keyBytes = new StringBuilder(oauthEncode(consumerSecret)).append('&').append(oauthEncode(tokenSecret)).toString().getBytes("UTF-8");
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e.getMessage());
+    }
+    SecretKeySpec spec = new SecretKeySpec(keyBytes, HMAC_SHA1SignatureMethod.MAC_NAME);
+    return new HMAC_SHA1SignatureMethod(spec);
+  }
+
   /**
    * Whether to support the plain text signature method.
    *
@@ -183,4 +219,52 @@ public class CoreOAuthSignatureMethodFactory implements OAuthSignatureMethodFact
   public void setPlainTextPasswordEncoder(PasswordEncoder plainTextPasswordEncoder) {
     this.plainTextPasswordEncoder = plainTextPasswordEncoder;
   }
-}
+
+  /**
+   * The maximum number of HMAC-SHA1 signature methods to cache by consumer secret and token secret (default 1000). The
+   * least recently used entries are discarded first. Zero disables the cache.
+   *
+   * @return The maximum number of cached HMAC-SHA1 signature methods.
+   */
+  public int getHmacCacheSize() {
+    return hmacCacheSize;
+  }
+
+  /**
+   * The maximum number of HMAC-SHA1 signature methods to cache by consumer secret and token secret (default 1000). The
+   * least recently used entries are discarded first. Zero disables the cache.
+   *
+   * @param hmacCacheSize The maximum number of cached HMAC-SHA1 signature methods.
+   */
+  public void setHmacCacheSize(int hmacCacheSize) {
+    this.hmacCacheSize = hmacCacheSize;
+    synchronized (hmacSignatureMethods) {
+      hmacSignatureMethods.clear();
+    }
+  }
+
+  private static class SecretPair {
+
+    private final String consumerSecret;
+    private final String tokenSecret;
+
+    public SecretPair(String consumerSecret, String tokenSecret) {
+      this.consumerSecret = consumerSecret;
+      this.tokenSecret = tokenSecret;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * consumerSecret.hashCode() + tokenSecret.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof SecretPair)) {
+        return false;
+      }
+      SecretPair other = (SecretPair) obj;
+      return consumerSecret.equals(other.consumerSecret) && tokenSecret.equals(other.tokenSecret);
+    }
+  }
+}
\ No newline at end of file
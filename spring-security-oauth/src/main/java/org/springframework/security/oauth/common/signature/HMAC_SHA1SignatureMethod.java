@@ -25,6 +25,9 @@ import javax.crypto.SecretKey;
 import java.io.UnsupportedEncodingException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * HMAC-SHA1 signature method.
@@ -45,8 +48,22 @@ public class HMAC_SHA1SignatureMethod implements OAuthSignatureMethod {
    */
   public static final String MAC_NAME = "HmacSHA1";
 
+  /**
+   * The maximum number of idle MACs kept for reuse by one signature method.
+   */
+  private static final int MAX_POOLED_MACS = 4;
+
   private final SecretKey key;
 
+  /**
+   * MACs initialized with the key, so that the provider lookup and key schedule are not repeated for every signature.
+   * {@link Mac#doFinal(byte[])} resets a MAC ready for the next use. Only a few are kept, so that an idle signature
+   * method holds little more than its key, and a MAC is created when none is free.
+   */
+  private final Queue<Mac> macs = new ConcurrentLinkedQueue<Mac>();
+
+  private final AtomicInteger pooledMacs = new AtomicInteger();
+
   /**
    * Construct a HMAC-SHA1 signature method with the given HMAC-SHA1 key.
    *
@@ -74,10 +91,8 @@ public class HMAC_SHA1SignatureMethod implements OAuthSignatureMethod {
    */
   public String sign(String signatureBaseString) {
     try {
-      Mac mac = Mac.getInstance(MAC_NAME);
-      mac.init(key);
       byte[] text = signatureBaseString.getBytes("UTF-8");
-      byte[] signatureBytes = mac.doFinal(text);
+      byte[] signatureBytes = doFinal(text);
       signatureBytes = Base64.encodeBase64(signatureBytes);
       String signature = new String(signatureBytes, "UTF-8");
 
@@ -88,12 +103,6 @@ public class HMAC_SHA1SignatureMethod implements OAuthSignatureMethod {
 
       return signature;
     }
-    catch (NoSuchAlgorithmException e) {
-      throw new IllegalStateException(e);
-    }
-    catch (InvalidKeyException e) {
-      throw new IllegalStateException(e);
-    }
     catch (UnsupportedEncodingException e) {
       throw new RuntimeException(e);
     }
@@ -117,23 +126,54 @@ public class HMAC_SHA1SignatureMethod implements OAuthSignatureMethod {
 
       byte[] signatureBytes = Base64.decodeBase64(signature.getBytes("UTF-8"));
 
-      Mac mac = Mac.getInstance(MAC_NAME);
-      mac.init(key);
       byte[] text = signatureBaseString.getBytes("UTF-8");
-      byte[] calculatedBytes = mac.doFinal(text);
+      byte[] calculatedBytes = doFinal(text);
       if (!safeArrayEquals(calculatedBytes, signatureBytes)) {
         throw new InvalidSignatureException("Invalid signature for signature method " + getName());
       }
     }
+    catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private byte[] doFinal(byte[] text) {
+    Mac mac = macs.poll();
+    if (mac == null) {
+      mac = createMac();
+    }
+    else {
+      pooledMacs.decrementAndGet();
+    }
+    byte[] result = mac.doFinal(text);
+    if (pooledMacs.incrementAndGet() <= MAX_POOLED_MACS) {
+      macs.offer(mac);
+    }
+    else {
+      pooledMacs.decrementAndGet();
+    }
+    return result;
+  }
+
+  /**
+   * @return The number of idle MACs kept for reuse.
+   */
+  int getPooledMacCount() {
+    return pooledMacs.get();
+  }
+
+  private Mac createMac() {
+    try {
+      Mac mac = Mac.getInstance(MAC_NAME);
+      mac.init(key);
+      return mac;
+    }
     catch (NoSuchAlgorithmException e) {
       throw new IllegalStateException(e);
     }
     catch (InvalidKeyException e) {
       throw new IllegalStateException(e);
     }
-    catch (UnsupportedEncodingException e) {
-      throw new RuntimeException(e);
-    }
   }
 
   boolean safeArrayEquals(byte[] a1, byte[] a2) {
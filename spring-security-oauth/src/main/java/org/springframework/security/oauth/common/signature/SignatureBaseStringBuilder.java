@@ -0,0 +1,208 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.common.signature;
+
+import java.util.Arrays;
+
+import org.springframework.security.oauth.common.OAuthCodec;
+
+/**
+ * Builds the signature base string of a request per OAuth Core 1.0, section 9.1, for both the consumer and the
+ * provider. Parameter names and values are added as they are (not encoded), and {@link #build(String, String)} writes
+ * the method, the encoded URL and the normalized parameters into a single buffer. Each name and value is encoded
+ * once, with a lookup table rather than {@link OAuthCodec}, the parameters are sorted with one array sort, and
+ * duplicate name and value pairs are only included once. The result is the same as encoding with
+ * {@link OAuthCodec#oauthEncode(String)} at each step.
+ * <p>
+ * A builder is not thread safe: create one for each signature base string.
+ */
+public class SignatureBaseStringBuilder {
+
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+  /**
+   * The characters that are not encoded (OAuth Core 1.0, section 5.1).
+   */
+  private static final boolean[] UNRESERVED = new boolean[128];
+  static {
+    for (char c = 'a'; c <= 'z'; c++) {
+      UNRESERVED[c] = true;
+    }
+    for (char c = 'A'; c <= 'Z'; c++) {
+      UNRESERVED[c] = true;
+    }
+    for (char c = '0'; c <= '9'; c++) {
+      UNRESERVED[c] = true;
+    }
+    UNRESERVED['-'] = true;
+    UNRESERVED['.'] = true;
+    UNRESERVED['_'] = true;
+    UNRESERVED['~'] = true;
+  }
+
+  private Parameter[] parameters = new Parameter[16];
+
+  private int size;
+
+  private int length;
+
+  /**
+   * Add a parameter to the signature base string.
+   *
+   * @param name  The parameter name (not encoded).
+   * @param value The parameter value (not encoded), or null for an empty value.
+   * @return This builder.
+   */
+  public SignatureBaseStringBuilder addParameter(String name, String value) {
+    Parameter parameter = new Parameter(encode(name), encode(value == null ? "" : value));
+    if (size == parameters.length) {
+      parameters = Arrays.copyOf(parameters, size * 2);
+    }
+    parameters[size++] = parameter;
+    length += parameter.name.length() + parameter.value.length() + 6;
+    return this;
+  }
+
+  /**
+   * Build the signature base string.
+   *
+   * @param httpMethod The HTTP method (converted to upper case).
+   * @param url        The normalized request URL (not encoded).
+   * @return The signature base string.
+   */
+  public String build(String httpMethod, String url) {
+    Arrays.sort(parameters, 0, size);
+
+    // Escaped characters in the parameters are escaped again, so leave some room for that
+    StringBuilder builder = new StringBuilder(httpMethod.length() + url.length() * 3 + 2 + length + length / 4);
+    builder.append(httpMethod.toUpperCase()).append('&');
+    appendEncoded(builder, url);
+    builder.append('&');
+    Parameter previous = null;
+    for (int i = 0; i < size; i++) {
+      Parameter parameter = parameters[i];
+      if (previous != null) {
+        if (parameter.compareTo(previous) == 0) {
+          continue;
+        }
+        builder.append("%26");
+      }
+      appendEncodedAgain(builder, parameter.name);
+      builder.append("%3D");
+      appendEncodedAgain(builder, parameter.value);
+      previous = parameter;
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Encode the specified value, in the same way as {@link OAuthCodec#oauthEncode(String)}. Values that do not need
+   * encoding are returned as they are.
+   *
+   * @param value The value to encode.
+   * @return The encoded value.
+   */
+  public static String encode(String value) {
+    if (value == null) {
+      return "";
+    }
+
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 128 || !UNRESERVED[c]) {
+        StringBuilder builder = new StringBuilder(length + 16);
+        builder.append(value, 0, i);
+        appendEncoded(builder, value, i);
+        return builder.toString();
+      }
+    }
+    return value;
+  }
+
+  private static void appendEncoded(StringBuilder builder, String value) {
+    appendEncoded(builder, value, 0);
+  }
+
+  private static void appendEncoded(StringBuilder builder, String value, int start) {
+    int length = value.length();
+    for (int i = start; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 128) {
+        if (UNRESERVED[c]) {
+          builder.append(c);
+        }
+        else {
+          appendEscaped(builder, c);
+        }
+      }
+      else if (c < 0x800) {
+        appendEscaped(builder, 0xC0 | (c >> 6));
+        appendEscaped(builder, 0x80 | (c & 0x3F));
+      }
+      else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        appendEscaped(builder, 0xF0 | (codePoint >> 18));
+        appendEscaped(builder, 0x80 | ((codePoint >> 12) & 0x3F));
+        appendEscaped(builder, 0x80 | ((codePoint >> 6) & 0x3F));
+        appendEscaped(builder, 0x80 | (codePoint & 0x3F));
+      }
+      else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+        // An unpaired surrogate is replaced with '?', as by String.getBytes("UTF-8")
+        appendEscaped(builder, '?');
+      }
+      else {
+        appendEscaped(builder, 0xE0 | (c >> 12));
+        appendEscaped(builder, 0x80 | ((c >> 6) & 0x3F));
+        appendEscaped(builder, 0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+  private static void appendEscaped(StringBuilder builder, int b) {
+    builder.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+  }
+
+  /**
+   * Append a value that is already encoded, encoding it again. Only the escape character needs escaping.
+   */
+  private static void appendEncodedAgain(StringBuilder builder, String encoded) {
+    int length = encoded.length();
+    for (int i = 0; i < length; i++) {
+      char c = encoded.charAt(i);
+      if (c == '%') {
+        builder.append("%25");
+      }
+      else {
+        builder.append(c);
+      }
+    }
+  }
+
+  private static class Parameter implements Comparable<Parameter> {
+
+    private final String name;
+
+    private final String value;
+
+    public Parameter(String name, String value) {
+      this.name = name;
+      this.value = value;
+    }
+
+    public int compareTo(Parameter other) {
+      int result = name.compareTo(other.name);
+      return result != 0 ? result : value.compareTo(other.value);
+    }
+  }
+}
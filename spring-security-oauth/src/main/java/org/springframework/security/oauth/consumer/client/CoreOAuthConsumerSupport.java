@@ -26,6 +26,7 @@ import org.springframework.security.oauth.common.StringSplitUtils;
 import org.springframework.security.oauth.common.signature.CoreOAuthSignatureMethodFactory;
 import org.springframework.security.oauth.common.signature.OAuthSignatureMethod;
 import org.springframework.security.oauth.common.signature.OAuthSignatureMethodFactory;
+import org.springframework.security.oauth.common.signature.SignatureBaseStringBuilder;
 import org.springframework.security.oauth.common.signature.UnsupportedSignatureMethodException;
 import org.springframework.security.oauth.consumer.InvalidOAuthRealmException;
 import org.springframework.security.oauth.consumer.OAuthConsumerSupport;
@@ -624,38 +625,10 @@ public class CoreOAuthConsumerSupport implements OAuthConsumerSupport, Initializ
    * @return The signature base string.
    */
   protected String getSignatureBaseString(Map<String, Set<CharSequence>> oauthParams, URL requestURL, String httpMethod) {
-    TreeMap<String, TreeSet<String>> sortedParameters = new TreeMap<String, TreeSet<String>>();
-
+    SignatureBaseStringBuilder builder = new SignatureBaseStringBuilder();
     for (Map.Entry<String, Set<CharSequence>> param : oauthParams.entrySet()) {
-      //first encode all parameter names and values (spec section 9.1)
-      String key = oauthEncode(param.getKey());
-
-      //add the encoded parameters sorted according to the spec.
-      TreeSet<String> sortedValues = sortedParameters.get(key);
-      if (sortedValues == null) {
-        sortedValues = new TreeSet<String>();
-        sortedParameters.put(key, sortedValues);
-      }
-
       for (CharSequence value : param.getValue()) {
-        sortedValues.add(oauthEncode(value.toString()));
-      }
-    }
-
-    //now concatenate them into a single query string according to the spec.
-    StringBuilder queryString = new StringBuilder();
-    Iterator<Map.Entry<String, TreeSet<String>>> sortedIt = sortedParameters.entrySet().iterator();
-    while (sortedIt.hasNext()) {
-      Map.Entry<String, TreeSet<String>> sortedParameter = sortedIt.next();
-      for (String parameterValue : sortedParameter.getValue()) {
-        if (parameterValue == null) {
-          parameterValue = "";
-        }
-
-        queryString.append(sortedParameter.getKey()).append('=').append(parameterValue);
-        if (sortedIt.hasNext()) {
-          queryString.append('&');
-        }
+        builder.addParameter(param.getKey(), value.toString());
       }
     }
 
@@ -664,8 +637,8 @@ public class CoreOAuthConsumerSupport implements OAuthConsumerSupport, Initializ
       url.append(":").append(requestURL.getPort());
     }
     url.append(requestURL.getPath());
-    
-    return new StringBuilder(httpMethod.toUpperCase()).append('&').append(oauthEncode(url.toString())).append('&').append(oauthEncode(queryString.toString())).toString();
+
+    return builder.build(httpMethod, url.toString());
   }
 
   /**
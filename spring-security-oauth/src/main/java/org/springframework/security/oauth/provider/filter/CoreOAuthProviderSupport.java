@@ -21,6 +21,7 @@ import static org.springframework.security.oauth.common.OAuthCodec.oauthDecode;
 import static org.springframework.security.oauth.common.OAuthCodec.oauthEncode;
 import org.springframework.security.oauth.common.OAuthConsumerParameter;
 import org.springframework.security.oauth.common.StringSplitUtils;
+import org.springframework.security.oauth.common.signature.SignatureBaseStringBuilder;
 import org.springframework.security.oauth.provider.OAuthProviderSupport;
 
 import javax.servlet.http.HttpServletRequest;
@@ -113,10 +114,78 @@ public class CoreOAuthProviderSupport implements OAuthProviderSupport {
     return this.supportedOAuthParameters;
   }
 
-  // Inherited.
+  /**
+   * Get the signature base string for the specified request. If the OAuth parameters have already been parsed by the
+   * {@link OAuthProviderProcessingFilter} they are reused (see {@link OAuthProviderProcessingFilter#OAUTH_PARAMETERS}),
+   * otherwise they are parsed with {@link #parseParameters(HttpServletRequest)}.
+   *
+   * @param request The request.
+   * @return The signature base string.
+   */
+  @SuppressWarnings("unchecked")
   public String getSignatureBaseString(HttpServletRequest request) {
-    SortedMap<String, SortedSet<String>> significantParameters = loadSignificantParametersForSignatureBaseString(request);
+    Map<String, String> oauthParams = (Map<String, String>) request.getAttribute(OAuthProviderProcessingFilter.OAUTH_PARAMETERS);
+    if (oauthParams == null) {
+      oauthParams = parseParameters(request);
+    }
+    return getSignatureBaseString(request, oauthParams);
+  }
 
+  /**
+   * Get the signature base string for the specified request, with its OAuth parameters already parsed. Subclasses
+   * that customize the signature base string should override this method.
+   *
+   * @param request     The request.
+   * @param oauthParams The OAuth parameters of the request (not encoded). The map is not modified.
+   * @return The signature base string.
+   */
+  protected String getSignatureBaseString(HttpServletRequest request, Map<String, String> oauthParams) {
+    SignatureBaseStringBuilder builder = new SignatureBaseStringBuilder();
+    //first pull from the request...
+    Enumeration parameterNames = request.getParameterNames();
+    while (parameterNames.hasMoreElements()) {
+      String parameterName = (String) parameterNames.nextElement();
+      if (OAuthConsumerParameter.oauth_signature.toString().equals(parameterName)) {
+        continue;
+      }
+
+      String[] values = request.getParameterValues(parameterName);
+      if (values == null) {
+        builder.addParameter(parameterName, "");
+      }
+      else {
+        for (String parameterValue : values) {
+          builder.addParameter(parameterName, parameterValue);
+        }
+      }
+    }
+
+    //then take into account the header parameter values, without the realm and the signature itself.
+    for (Map.Entry<String, String> oauthParam : oauthParams.entrySet()) {
+      String parameterName = oauthParam.getKey();
+      if (!"realm".equals(parameterName) && !OAuthConsumerParameter.oauth_signature.toString().equals(parameterName)) {
+        builder.addParameter(parameterName, oauthParam.getValue());
+      }
+    }
+
+    String url = getBaseUrl(request);
+    if (url == null) {
+      //if no URL is configured, then we'll attempt to reconstruct the URL.  This may be inaccurate.
+      url = request.getRequestURL().toString();
+    }
+    return builder.build(request.getMethod(), normalizeUrl(url));
+  }
+
+  /**
+   * Get the signature base string from significant parameters that have already been encoded, as returned by
+   * {@link #loadSignificantParametersForSignatureBaseString(HttpServletRequest)}. A subclass that still loads its own
+   * significant parameters can override {@link #getSignatureBaseString(HttpServletRequest, Map)} to call this method.
+   *
+   * @param request               The request.
+   * @param significantParameters The significant parameters (already encoded).
+   * @return The signature base string.
+   */
+  protected String getSignatureBaseStringFromSignificantParameters(HttpServletRequest request, SortedMap<String, SortedSet<String>> significantParameters) {
     //now concatenate them into a single query string according to the spec.
     StringBuilder queryString = new StringBuilder();
     Iterator<Map.Entry<String, SortedSet<String>>> paramIt = significantParameters.entrySet().iterator();
@@ -134,11 +203,9 @@ public class CoreOAuthProviderSupport implements OAuthProviderSupport {
 
     String url = getBaseUrl(request);
     if (url == null) {
-      //if no URL is configured, then we'll attempt to reconstruct the URL.  This may be inaccurate.
       url = request.getRequestURL().toString();
     }
-    url = normalizeUrl(url);
-    url = oauthEncode(url);
+    url = oauthEncode(normalizeUrl(url));
 
     String method = request.getMethod().toUpperCase();
     return new StringBuilder(method).append('&').append(url).append('&').append(oauthEncode(queryString.toString())).toString();
@@ -172,7 +239,12 @@ public class CoreOAuthProviderSupport implements OAuthProviderSupport {
    *
    * @param request The request.
    * @return The significan parameters.
+   * @deprecated The signature base string is now built without this map, by a {@link SignatureBaseStringBuilder}, and
+   * this method is no longer called. Override {@link #getSignatureBaseString(HttpServletRequest, Map)} instead, or
+   * pass the result of this method to
+   * {@link #getSignatureBaseStringFromSignificantParameters(HttpServletRequest, SortedMap)}.
    */
+  @Deprecated
   protected SortedMap<String, SortedSet<String>> loadSignificantParametersForSignatureBaseString(HttpServletRequest request) {
     //first collect the relevant parameters...
     SortedMap<String, SortedSet<String>> significantParameters = new TreeMap<String, SortedSet<String>>();
@@ -66,6 +66,12 @@ public abstract class OAuthProviderProcessingFilter implements Filter, Initializ
    */
   public static final String OAUTH_PROCESSING_HANDLED = "org.springframework.security.oauth.provider.OAuthProviderProcessingFilter#SKIP_PROCESSING";
 
+  /**
+   * Attribute holding the OAuth parameters parsed from the request, so that the provider support need not parse them
+   * again.
+   */
+  public static final String OAUTH_PARAMETERS = "org.springframework.security.oauth.provider.OAuthProviderProcessingFilter#PARAMETERS";
+
   private final Log log = LogFactory.getLog(getClass());
   private final List<String> allowedMethods = new ArrayList<String>(Arrays.asList("GET", "POST"));
   private OAuthProcessingFilterEntryPoint authenticationEntryPoint = new OAuthProcessingFilterEntryPoint();
@@ -139,6 +145,7 @@ public abstract class OAuthProviderProcessingFilter implements Filter, Initializ
             String token = oauthParams.get(OAuthConsumerParameter.oauth_token.toString());
             String signatureMethod = oauthParams.get(OAuthConsumerParameter.oauth_signature_method.toString());
             String signature = oauthParams.get(OAuthConsumerParameter.oauth_signature.toString());
+            request.setAttribute(OAUTH_PARAMETERS, oauthParams);
             String signatureBaseString = getProviderSupport().getSignatureBaseString(request);
             ConsumerCredentials credentials = new ConsumerCredentials(consumerKey, signature, signatureMethod, signatureBaseString, token);
 
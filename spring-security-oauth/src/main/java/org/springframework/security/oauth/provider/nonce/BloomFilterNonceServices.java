@@ -0,0 +1,313 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.provider.nonce;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth.provider.ConsumerDetails;
+import org.springframework.security.oauth.provider.InvalidOAuthParametersException;
+import org.springframework.util.Assert;
+
+/**
+ * Nonce services that detect replayed requests with Bloom filters instead of keeping every nonce, so the memory used
+ * is fixed by the configuration rather than by the request rate. The validity window is divided into
+ * {@link #setGenerations(int) generations}, each a time slice of request timestamps with its own filter, and a filter
+ * is discarded as a whole when its slice falls out of the window. A request only ever consults the one filter for its
+ * timestamp, and lookups and inserts are lock free.
+ * <p>
+ * The trade off is that a small proportion of fresh requests (the configured false positive probability, at the
+ * expected request rate) are rejected as replays, and a client has to retry them with a new nonce. Two copies of the
+ * same request that are checked at exactly the same time may both be accepted. Timestamps are also limited to one
+ * validity window in the future, because filters are only kept for that range.
+ *
+ * @see InMemoryNonceServices
+ */
+public class BloomFilterNonceServices implements OAuthNonceServices {
+
+	private static final double LN2 = Math.log(2);
+
+	private long validityWindowSeconds = 60 * 10;
+
+	private int generations = 10;
+
+	private int expectedNoncesPerSecond = 1000;
+
+	private double falsePositiveProbability = 0.000001;
+
+	private volatile Filters filters;
+
+	private final AtomicLong acceptedCount = new AtomicLong();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	private final AtomicLong expiredCount = new AtomicLong();
+
+	private final AtomicLong rotationCount = new AtomicLong();
+
+	public void validateNonce(ConsumerDetails consumerDetails, long timestamp, String nonce)
+			throws AuthenticationException {
+		long now = System.currentTimeMillis() / 1000;
+		if (now - timestamp > validityWindowSeconds) {
+			expiredCount.incrementAndGet();
+			throw new CredentialsExpiredException("Expired timestamp.");
+		}
+		if (timestamp - now > validityWindowSeconds) {
+			expiredCount.incrementAndGet();
+			throw new InvalidOAuthParametersException("Timestamp too far in the future.");
+		}
+
+		Generation generation = getFilters().getGeneration(timestamp);
+		if (generation == null) {
+			// The slot was already taken by a more recent slice, so the timestamp has just expired
+			expiredCount.incrementAndGet();
+			throw new CredentialsExpiredException("Expired timestamp.");
+		}
+		if (!generation.add(consumerDetails.getConsumerKey(), timestamp, nonce)) {
+			rejectedCount.incrementAndGet();
+			throw new NonceAlreadyUsedException("Nonce already used: " + nonce);
+		}
+		acceptedCount.incrementAndGet();
+	}
+
+	/**
+	 * The timestamp validity window (in seconds, default 600).
+	 *
+	 * @param validityWindowSeconds the timestamp validity window (in seconds).
+	 */
+	public void setValidityWindowSeconds(long validityWindowSeconds) {
+		Assert.isTrue(validityWindowSeconds > 0, "Validity window must be positive");
+		this.validityWindowSeconds = validityWindowSeconds;
+		this.filters = null;
+	}
+
+	/**
+	 * @return the timestamp validity window (in seconds).
+	 */
+	public long getValidityWindowSeconds() {
+		return validityWindowSeconds;
+	}
+
+	/**
+	 * The number of time slices the validity window is divided into (default 10). More generations mean that less
+	 * memory is held for slices that have nearly expired, but each filter is created and dropped more often.
+	 *
+	 * @param generations the number of generations per validity window
+	 */
+	public void setGenerations(int generations) {
+		Assert.isTrue(generations > 0, "Number of generations must be positive");
+		this.generations = generations;
+		this.filters = null;
+	}
+
+	/**
+	 * The request rate that the filters are sized for (default 1000 per second). Above it the false positive rate
+	 * rises, but nothing else breaks.
+	 *
+	 * @param expectedNoncesPerSecond the expected number of signed requests per second
+	 */
+	public void setExpectedNoncesPerSecond(int expectedNoncesPerSecond) {
+		Assert.isTrue(expectedNoncesPerSecond > 0, "Expected number of nonces must be positive");
+		this.expectedNoncesPerSecond = expectedNoncesPerSecond;
+		this.filters = null;
+	}
+
+	/**
+	 * The probability that a fresh request is mistaken for a replay at the expected request rate (default one in a
+	 * million).
+	 *
+	 * @param falsePositiveProbability the false positive probability, between 0 and 1
+	 */
+	public void setFalsePositiveProbability(double falsePositiveProbability) {
+		Assert.isTrue(falsePositiveProbability > 0 && falsePositiveProbability < 1,
+				"False positive probability must be between 0 and 1");
+		this.falsePositiveProbability = falsePositiveProbability;
+		this.filters = null;
+	}
+
+	/**
+	 * @return the number of requests whose nonce was accepted
+	 */
+	public long getAcceptedCount() {
+		return acceptedCount.get();
+	}
+
+	/**
+	 * @return the number of requests rejected as replays (including false positives)
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * @return the number of requests rejected because their timestamp was outside the validity window
+	 */
+	public long getExpiredCount() {
+		return expiredCount.get();
+	}
+
+	/**
+	 * @return the number of filters that have been created as time moved on
+	 */
+	public long getRotationCount() {
+		return rotationCount.get();
+	}
+
+	/**
+	 * @return the number of bytes used by the bit arrays of all the filters that may be live at once
+	 */
+	public long getMemoryBytes() {
+		Filters filters = getFilters();
+		return (long) filters.slots.length() * filters.words * 8;
+	}
+
+	/**
+	 * @return the number of hash functions (bits per nonce) used by each filter
+	 */
+	public int getHashCount() {
+		return getFilters().hashes;
+	}
+
+	private Filters getFilters() {
+		Filters filters = this.filters;
+		if (filters == null) {
+			synchronized (this) {
+				filters = this.filters;
+				if (filters == null) {
+					filters = new Filters();
+					this.filters = filters;
+				}
+			}
+		}
+		return filters;
+	}
+
+	/**
+	 * The filters for the timestamps that are currently acceptable, in a ring of slots, each holding one generation.
+	 */
+	private class Filters {
+
+		private final long sliceSeconds = (validityWindowSeconds + generations - 1) / generations;
+
+		// Timestamps from one window in the past to one in the future, plus the partial slices at either end
+		private final AtomicReferenceArray<Generation> slots = new AtomicReferenceArray<Generation>(2 * generations + 2);
+
+		private final int words;
+
+		private final int hashes;
+
+		public Filters() {
+			double insertions = (double) expectedNoncesPerSecond * sliceSeconds;
+			long bits = (long) Math.ceil(-insertions * Math.log(falsePositiveProbability) / (LN2 * LN2));
+			Assert.isTrue(bits / 64 < Integer.MAX_VALUE, "Filters would be too large: reduce the expected rate");
+			this.words = (int) Math.max(1, (bits + 63) / 64);
+			this.hashes = (int) Math.max(1, Math.round(-Math.log(falsePositiveProbability) / LN2));
+		}
+
+		public Generation getGeneration(long timestamp) {
+			long slice = timestamp / sliceSeconds;
+			int index = (int) (slice % slots.length());
+			while (true) {
+				Generation generation = slots.get(index);
+				if (generation != null && generation.slice == slice) {
+					return generation;
+				}
+				if (generation != null && generation.slice > slice) {
+					return null;
+				}
+				Generation created = new Generation(slice, words, hashes);
+				if (slots.compareAndSet(index, generation, created)) {
+					rotationCount.incrementAndGet();
+					return created;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * A Bloom filter for the nonces with timestamps in one time slice.
+	 */
+	private static class Generation {
+
+		private final long slice;
+
+		private final AtomicLongArray bits;
+
+		private final long size;
+
+		private final int hashes;
+
+		public Generation(long slice, int words, int hashes) {
+			this.slice = slice;
+			this.bits = new AtomicLongArray(words);
+			this.size = (long) words * 64;
+			this.hashes = hashes;
+		}
+
+		/**
+		 * @return true if the nonce was not (probably) in the filter already
+		 */
+		public boolean add(String consumerKey, long timestamp, String nonce) {
+			long hash = hash(consumerKey, timestamp, nonce);
+			// Double hashing: the bit positions are h1 + i * h2
+			long h1 = mix(hash);
+			long h2 = mix(hash + 0x9E3779B97F4A7C15L) | 1;
+			boolean added = false;
+			for (int i = 0; i < hashes; i++) {
+				long index = ((h1 + i * h2) & Long.MAX_VALUE) % size;
+				if (set((int) (index >>> 6), 1L << index)) {
+					added = true;
+				}
+			}
+			return added;
+		}
+
+		private boolean set(int word, long mask) {
+			while (true) {
+				long value = bits.get(word);
+				if ((value & mask) != 0) {
+					return false;
+				}
+				if (bits.compareAndSet(word, value, value | mask)) {
+					return true;
+				}
+			}
+		}
+
+		private static long hash(String consumerKey, long timestamp, String nonce) {
+			// 64 bit FNV-1a over the characters, separated by a value outside the range of a char
+			long hash = 0xcbf29ce484222325L;
+			for (int i = 0; i < consumerKey.length(); i++) {
+				hash = (hash ^ consumerKey.charAt(i)) * 0x100000001b3L;
+			}
+			hash = (hash ^ 0x10000) * 0x100000001b3L;
+			for (int i = 0; i < nonce.length(); i++) {
+				hash = (hash ^ nonce.charAt(i)) * 0x100000001b3L;
+			}
+			return hash ^ mix(timestamp);
+		}
+
+		private static long mix(long value) {
+			// The MurmurHash3 finalizer, so that every input bit affects every output bit
+			value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+			value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+			return value ^ (value >>> 33);
+		}
+
+	}
+
+}
@@ -16,11 +16,16 @@
 
 package org.springframework.security.oauth.provider.nonce;
 
-import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.security.authentication.CredentialsExpiredException;
 import org.springframework.security.oauth.provider.ConsumerDetails;
+import org.springframework.util.Assert;
 
 /**
  * Expands on the {@link org.springframework.security.oauth.provider.nonce.ExpiringTimestampNonceServices} to include
@@ -31,7 +36,11 @@ import org.springframework.security.oauth.provider.ConsumerDetails;
  * {@link org.springframework.security.oauth.provider.nonce.ExpiringTimestampNonceServices}. Assuming the consumer and
  * timestamp are valid, the InMemoryNonceServices further ensures that the specified nonce was not used with the
  * specified timestamp within the specified validity window. The list of nonces used within the validity window is kept
- * in memory.
+ * in memory, in this instance only.
+ *
+ * The nonces are split into shards by consumer key, and within a shard into one bucket per timestamp (second), so
+ * requests are checked concurrently and expiring old nonces means dropping whole buckets. A sweep runs at most once a
+ * second, in one request thread, and costs time proportional to the number of buckets that expired.
  *
  * Note: the default validity window in this class is different from the one used in
  * {@link org.springframework.security.oauth.provider.nonce.ExpiringTimestampNonceServices}. The reason for this is that
@@ -43,56 +52,66 @@ import org.springframework.security.oauth.provider.ConsumerDetails;
  */
 public class InMemoryNonceServices implements OAuthNonceServices {
 
+	private static final int DEFAULT_SHARDS = 16;
+
 	/**
-	 * Contains all the nonces that were used inside the validity window.
+	 * Contains all the nonces that were used inside the validity window, by consumer key and then timestamp.
 	 */
-	static final TreeSet<NonceEntry> NONCES = new TreeSet<NonceEntry>();
+	private Shard[] shards = createShards(DEFAULT_SHARDS);
 
-	private volatile long lastCleaned = 0;
+	private final AtomicLong lastCleaned = new AtomicLong();
 
-	// we'll default to a 10 minute validity window, otherwise the amount of memory used on NONCES can get quite large.
+	// we'll default to a 10 minute validity window, otherwise the amount of memory used on the nonces can get quite
+	// large.
 	private long validityWindowSeconds = 60 * 10;
 
 	public void validateNonce(ConsumerDetails consumerDetails, long timestamp, String nonce) {
-		if (System.currentTimeMillis() / 1000 - timestamp > getValidityWindowSeconds()) {
+		long now = System.currentTimeMillis() / 1000;
+		if (now - timestamp > getValidityWindowSeconds()) {
 			throw new CredentialsExpiredException("Expired timestamp.");
 		}
 
-		NonceEntry entry = new NonceEntry(consumerDetails.getConsumerKey(), timestamp, nonce);
+		if (!add(consumerDetails.getConsumerKey(), timestamp, nonce)) {
+			throw new NonceAlreadyUsedException("Nonce already used: " + nonce);
+		}
 
-		synchronized (NONCES) {
-			if (NONCES.contains(entry)) {
-				throw new NonceAlreadyUsedException("Nonce already used: " + nonce);
-			}
-			else {
-				NONCES.add(entry);
+		cleanupNonces(now);
+	}
+
+	/**
+	 * Record a nonce.
+	 *
+	 * @return false if the nonce had already been used by the consumer with the same timestamp
+	 */
+	boolean add(String consumerKey, long timestamp, String nonce) {
+		return getShard(consumerKey).getBucket(timestamp).add(new NonceEntry(consumerKey, nonce));
+	}
+
+	private void cleanupNonces(long now) {
+		// don't clean out the nonces for each request, this would cause the service to be constantly sweeping under
+		// load. One second is small enough that cleaning up does not become too expensive.
+		// Also see SECOAUTH-180 for reasons this class was refactored.
+		long last = lastCleaned.get();
+		if (now - last > 1 && lastCleaned.compareAndSet(last, now)) {
+			// the buckets are sorted, so simply drop the head up to the first one within the validity window
+			long oldest = now - getValidityWindowSeconds();
+			for (Shard shard : shards) {
+				shard.buckets.headMap(oldest).clear();
 			}
-			cleanupNonces();
 		}
 	}
 
-	private void cleanupNonces() {
-		long now = System.currentTimeMillis() / 1000;
-		// don't clean out the NONCES for each request, this would cause the service to be constantly locked on this
-		// loop under load. One second is small enough that cleaning up does not become too expensive.
-		// Also see SECOAUTH-180 for reasons this class was refactored.
-		if (now - lastCleaned > 1) {
-			Iterator<NonceEntry> iterator = NONCES.iterator();
-			while (iterator.hasNext()) {
-				// the nonces are already sorted, so simply iterate and remove until the first nonce within the validity
-				// window.
-				NonceEntry nextNonce = iterator.next();
-				long difference = now - nextNonce.timestamp;
-				if (difference > getValidityWindowSeconds()) {
-					iterator.remove();
-				}
-				else {
-					break;
-				}
+	/**
+	 * @return the number of nonces currently held (including any that have expired but not yet been discarded)
+	 */
+	public int getNonceCount() {
+		int count = 0;
+		for (Shard shard : shards) {
+			for (Set<NonceEntry> bucket : shard.buckets.values()) {
+				count += bucket.size();
 			}
-			// keep track of when cleanupNonces last ran
-			lastCleaned = now;
 		}
+		return count;
 	}
 
 	/**
@@ -114,25 +133,67 @@ public class InMemoryNonceServices implements OAuthNonceServices {
 	}
 
 	/**
-	 * Representation of a nonce with the right hashCode, equals, and compareTo methods for the TreeSet approach above
-	 * to work.
+	 * The number of shards that the nonces are split into by consumer key (default 16). Set it before the service is
+	 * used: any nonces already recorded are discarded.
+	 *
+	 * @param shards the number of shards
 	 */
-	static class NonceEntry implements Comparable<NonceEntry> {
-		private final String consumerKey;
+	public void setShards(int shards) {
+		Assert.isTrue(shards > 0, "Number of shards must be positive");
+		this.shards = createShards(shards);
+	}
+
+	private Shard getShard(String consumerKey) {
+		Shard[] shards = this.shards;
+		return shards[(consumerKey.hashCode() & Integer.MAX_VALUE) % shards.length];
+	}
 
-		private final long timestamp;
+	private static Shard[] createShards(int count) {
+		Shard[] shards = new Shard[count];
+		for (int i = 0; i < count; i++) {
+			shards[i] = new Shard();
+		}
+		return shards;
+	}
+
+	/**
+	 * The nonces used by a subset of the consumers, in one bucket per timestamp.
+	 */
+	private static class Shard {
+
+		private final ConcurrentNavigableMap<Long, Set<NonceEntry>> buckets = new ConcurrentSkipListMap<Long, Set<NonceEntry>>();
+
+		public Set<NonceEntry> getBucket(long timestamp) {
+			Set<NonceEntry> bucket = buckets.get(timestamp);
+			if (bucket == null) {
+				Set<NonceEntry> created = Collections.newSetFromMap(new ConcurrentHashMap<NonceEntry, Boolean>());
+				bucket = buckets.putIfAbsent(timestamp, created);
+				if (bucket == null) {
+					bucket = created;
+				}
+			}
+			return bucket;
+		}
+
+	}
+
+	/**
+	 * A nonce used by a consumer. The timestamp is implied by the bucket it is in.
+	 */
+	private static class NonceEntry {
+
+		private final String consumerKey;
 
 		private final String nonce;
 
-		public NonceEntry(String consumerKey, long timestamp, String nonce) {
+		public NonceEntry(String consumerKey, String nonce) {
 			this.consumerKey = consumerKey;
-			this.timestamp = timestamp;
 			this.nonce = nonce;
 		}
 
 		@Override
 		public int hashCode() {
-			return consumerKey.hashCode() * nonce.hashCode() * Long.valueOf(timestamp).hashCode();
+			return 31 * consumerKey.hashCode() + nonce.hashCode();
 		}
 
 		@Override
@@ -141,31 +202,12 @@ public class InMemoryNonceServices implements OAuthNonceServices {
 				return false;
 			}
 			NonceEntry arg = (NonceEntry) obj;
-			return timestamp == arg.timestamp && consumerKey.equals(arg.consumerKey) && nonce.equals(arg.nonce);
-		}
-
-		public int compareTo(NonceEntry o) {
-			// sort by timestamp
-			if (timestamp < o.timestamp) {
-				return -1;
-			}
-			else if (timestamp == o.timestamp) {
-				int consumerKeyCompare = consumerKey.compareTo(o.consumerKey);
-				if (consumerKeyCompare == 0) {
-					return nonce.compareTo(o.nonce);
-				}
-				else {
-					return consumerKeyCompare;
-				}
-			}
-			else {
-				return 1;
-			}
+			return consumerKey.equals(arg.consumerKey) && nonce.equals(arg.nonce);
 		}
 
 		@Override
 		public String toString() {
-			return timestamp + " " + consumerKey + " " + nonce;
+			return consumerKey + " " + nonce;
 		}
 	}
 }
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.provider.nonce;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth.provider.ConsumerDetails;
+import org.springframework.util.Assert;
+
+/**
+ * Nonce services that record the nonces in a database, so that replay protection covers all the nodes of a cluster
+ * that share it. A nonce is recorded by inserting a row keyed on consumer key, timestamp and nonce, and the unique
+ * key does the replay check: if the insert fails with a duplicate key then the nonce has been used already, on this
+ * node or another. The recommended schema is in <code>oauth-nonce-schema.sql</code> in this package.
+ * <p>
+ * A small local cache of recently seen nonces turns away duplicates that arrive at the same node without a trip to
+ * the database. It keeps one bucket per timestamp (second), like {@link InMemoryNonceServices}, so that dropping the
+ * expired nonces or, when it is full, the oldest ones costs time proportional to the nonces dropped. Rows whose
+ * timestamp has left the validity window are removed in batches, by a background thread every
+ * {@link #setPurgeInterval(int) purge interval} or with {@link #removeExpiredNonces()}.
+ *
+ * @see InMemoryNonceServices
+ */
+public class JdbcNonceServices implements OAuthNonceServices, InitializingBean, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(JdbcNonceServices.class);
+
+	private static final String DEFAULT_INSERT_STATEMENT = "insert into oauth_nonce (consumer_key, nonce_timestamp, nonce) values (?, ?, ?)";
+
+	private static final String DEFAULT_SELECT_EXPIRED_STATEMENT = "select consumer_key, nonce_timestamp, nonce from oauth_nonce where nonce_timestamp < ?";
+
+	private static final String DEFAULT_DELETE_STATEMENT = "delete from oauth_nonce where consumer_key = ? and nonce_timestamp = ? and nonce = ?";
+
+	private static final int DEFAULT_BATCH_SIZE = 500;
+
+	private static final int DEFAULT_LOCAL_CACHE_SIZE = 10000;
+
+	private String insertNonceSql = DEFAULT_INSERT_STATEMENT;
+
+	private String selectExpiredNoncesSql = DEFAULT_SELECT_EXPIRED_STATEMENT;
+
+	private String deleteNonceSql = DEFAULT_DELETE_STATEMENT;
+
+	private long validityWindowSeconds = 60 * 10;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private int localCacheSize = DEFAULT_LOCAL_CACHE_SIZE;
+
+	private int purgeInterval = 60;
+
+	private ScheduledExecutorService purger;
+
+	/**
+	 * Recently seen nonces, by timestamp.
+	 */
+	private final ConcurrentNavigableMap<Long, Set<NonceEntry>> localCache = new ConcurrentSkipListMap<Long, Set<NonceEntry>>();
+
+	/**
+	 * The number of nonces in the local cache (approximate while other threads are adding or evicting).
+	 */
+	private final AtomicInteger localCacheCount = new AtomicInteger();
+
+	private final AtomicLong lastExpired = new AtomicLong();
+
+	private final AtomicLong localRejectedCount = new AtomicLong();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	private final AtomicLong purgedNonceCount = new AtomicLong();
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public JdbcNonceServices(DataSource dataSource) {
+		Assert.notNull(dataSource, "DataSource required");
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	public void validateNonce(ConsumerDetails consumerDetails, long timestamp, String nonce)
+			throws AuthenticationException {
+		long now = System.currentTimeMillis() / 1000;
+		if (now - timestamp > getValidityWindowSeconds()) {
+			throw new CredentialsExpiredException("Expired timestamp.");
+		}
+
+		NonceEntry entry = new NonceEntry(consumerDetails.getConsumerKey(), timestamp, nonce);
+		if (isCached(entry)) {
+			localRejectedCount.incrementAndGet();
+			rejectedCount.incrementAndGet();
+			throw new NonceAlreadyUsedException("Nonce already used: " + nonce);
+		}
+
+		try {
+			jdbcTemplate.update(insertNonceSql, entry.consumerKey, timestamp, nonce);
+		}
+		catch (DuplicateKeyException e) {
+			cache(entry, now);
+			rejectedCount.incrementAndGet();
+			throw new NonceAlreadyUsedException("Nonce already used: " + nonce);
+		}
+		cache(entry, now);
+	}
+
+	private boolean isCached(NonceEntry entry) {
+		Set<NonceEntry> bucket = localCache.get(entry.timestamp);
+		return bucket != null && bucket.contains(entry);
+	}
+
+	private void cache(NonceEntry entry, long now) {
+		if (localCacheSize <= 0) {
+			return;
+		}
+		// Drop the expired buckets at most once a second, in one request thread
+		long last = lastExpired.get();
+		if (now > last && lastExpired.compareAndSet(last, now)) {
+			for (Map.Entry<Long, Set<NonceEntry>> expired : localCache.headMap(now - getValidityWindowSeconds())
+					.entrySet()) {
+				if (localCache.remove(expired.getKey(), expired.getValue())) {
+					localCacheCount.addAndGet(-expired.getValue().size());
+				}
+			}
+		}
+		// Still full of live nonces: drop the oldest, the database has them anyway
+		while (localCacheCount.get() >= localCacheSize) {
+			Map.Entry<Long, Set<NonceEntry>> oldest = localCache.pollFirstEntry();
+			if (oldest == null) {
+				localCacheCount.set(0);
+				break;
+			}
+			localCacheCount.addAndGet(-oldest.getValue().size());
+		}
+		if (getBucket(entry.timestamp).add(entry)) {
+			localCacheCount.incrementAndGet();
+		}
+	}
+
+	private Set<NonceEntry> getBucket(long timestamp) {
+		Set<NonceEntry> bucket = localCache.get(timestamp);
+		if (bucket == null) {
+			Set<NonceEntry> created = Collections.newSetFromMap(new ConcurrentHashMap<NonceEntry, Boolean>());
+			bucket = localCache.putIfAbsent(timestamp, created);
+			if (bucket == null) {
+				bucket = created;
+			}
+		}
+		return bucket;
+	}
+
+	/**
+	 * Remove the nonces whose timestamp is no longer within the validity window. Rows are deleted in batches of
+	 * {@link #setBatchSize(int) batch size}, so that no single statement holds locks on the table for long.
+	 *
+	 * @return the number of nonces removed
+	 */
+	public int removeExpiredNonces() {
+		final long oldest = System.currentTimeMillis() / 1000 - getValidityWindowSeconds();
+		int count = 0;
+		while (true) {
+			final List<NonceEntry> batch = jdbcTemplate.query(selectExpiredNoncesSql, new PreparedStatementSetter() {
+				public void setValues(PreparedStatement ps) throws SQLException {
+					ps.setLong(1, oldest);
+					ps.setMaxRows(batchSize);
+				}
+			}, new ResultSetExtractor<List<NonceEntry>>() {
+				public List<NonceEntry> extractData(ResultSet rs) throws SQLException {
+					List<NonceEntry> expired = new ArrayList<NonceEntry>();
+					while (expired.size() < batchSize && rs.next()) {
+						expired.add(new NonceEntry(rs.getString(1), rs.getLong(2), rs.getString(3)));
+					}
+					return expired;
+				}
+			});
+			if (batch.isEmpty()) {
+				break;
+			}
+			int[] updates = jdbcTemplate.batchUpdate(deleteNonceSql, new BatchPreparedStatementSetter() {
+				public void setValues(PreparedStatement ps, int i) throws SQLException {
+					NonceEntry entry = batch.get(i);
+					ps.setString(1, entry.consumerKey);
+					ps.setLong(2, entry.timestamp);
+					ps.setString(3, entry.nonce);
+				}
+
+				public int getBatchSize() {
+					return batch.size();
+				}
+			});
+			int deleted = 0;
+			for (int updated : updates) {
+				deleted += updated == PreparedStatement.SUCCESS_NO_INFO ? 1 : updated;
+			}
+			count += deleted;
+			// A batch that deletes nothing (e.g. a delete statement that does not match the select) would be selected
+			// again forever
+			if (batch.size() < batchSize || deleted == 0) {
+				break;
+			}
+		}
+		purgedNonceCount.addAndGet(count);
+		if (count > 0 && logger.isDebugEnabled()) {
+			logger.debug("Removed " + count + " expired nonces");
+		}
+		return count;
+	}
+
+	public void afterPropertiesSet() throws Exception {
+		if (purgeInterval > 0 && purger == null) {
+			purger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "JdbcNonceServices");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			purger.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						removeExpiredNonces();
+					}
+					catch (RuntimeException e) {
+						logger.error("Could not remove expired nonces", e);
+					}
+				}
+			}, purgeInterval, purgeInterval, TimeUnit.SECONDS);
+		}
+	}
+
+	public void destroy() throws Exception {
+		if (purger != null) {
+			purger.shutdownNow();
+			purger = null;
+		}
+	}
+
+	/**
+	 * @return the number of replayed nonces that were rejected (from the local cache or the database)
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * @return the number of replayed nonces that were rejected from the local cache, without a database query
+	 */
+	public long getLocalRejectedCount() {
+		return localRejectedCount.get();
+	}
+
+	/**
+	 * @return the number of nonces currently held in the local cache
+	 */
+	public int getLocalCacheCount() {
+		int count = 0;
+		for (Set<NonceEntry> bucket : localCache.values()) {
+			count += bucket.size();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the total number of expired nonces that have been removed from the database
+	 */
+	public long getPurgedNonceCount() {
+		return purgedNonceCount.get();
+	}
+
+	/**
+	 * @return the timestamp validity window (in seconds).
+	 */
+	public long getValidityWindowSeconds() {
+		return validityWindowSeconds;
+	}
+
+	/**
+	 * The timestamp validity window (in seconds, default 600).
+	 *
+	 * @param validityWindowSeconds the timestamp validity window (in seconds).
+	 */
+	public void setValidityWindowSeconds(long validityWindowSeconds) {
+		this.validityWindowSeconds = validityWindowSeconds;
+	}
+
+	/**
+	 * The maximum number of recently seen nonces to remember locally (default 10000). Zero disables the local cache.
+	 *
+	 * @param localCacheSize the local cache size to set
+	 */
+	public void setLocalCacheSize(int localCacheSize) {
+		this.localCacheSize = localCacheSize;
+	}
+
+	/**
+	 * The maximum number of nonces to delete in one statement batch (default 500).
+	 *
+	 * @param batchSize the batch size to set
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "Batch size must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * The interval in seconds between background purges of expired nonces (default 60). Zero means that there is no
+	 * background purge and {@link #removeExpiredNonces()} has to be called explicitly.
+	 *
+	 * @param purgeInterval the purge interval in seconds
+	 */
+	public void setPurgeInterval(int purgeInterval) {
+		this.purgeInterval = purgeInterval;
+	}
+
+	public void setInsertNonceSql(String insertNonceSql) {
+		this.insertNonceSql = insertNonceSql;
+	}
+
+	public void setSelectExpiredNoncesSql(String selectExpiredNoncesSql) {
+		this.selectExpiredNoncesSql = selectExpiredNoncesSql;
+	}
+
+	public void setDeleteNonceSql(String deleteNonceSql) {
+		this.deleteNonceSql = deleteNonceSql;
+	}
+
+	private static class NonceEntry {
+
+		private final String consumerKey;
+
+		private final long timestamp;
+
+		private final String nonce;
+
+		public NonceEntry(String consumerKey, long timestamp, String nonce) {
+			this.consumerKey = consumerKey;
+			this.timestamp = timestamp;
+			this.nonce = nonce;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * consumerKey.hashCode() + nonce.hashCode()) + (int) (timestamp ^ (timestamp >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == null || !(obj instanceof NonceEntry)) {
+				return false;
+			}
+			NonceEntry arg = (NonceEntry) obj;
+			return timestamp == arg.timestamp && consumerKey.equals(arg.consumerKey) && nonce.equals(arg.nonce);
+		}
+
+	}
+
+}
@@ -1,12 +1,16 @@
 package org.springframework.security.oauth.provider.verifier;
 
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.oauth.common.TokenValueGenerator;
 
 import java.security.SecureRandom;
 import java.util.Random;
 
 /**
  * Basic implementation of the verifier services that creates a random-value verifier and stores it in an in-memory map.
+ * Unless a {@link #setRandom(Random) random value generator} or a {@link #setVerifierGenerator(TokenValueGenerator)
+ * verifier generator} is provided, each thread uses its own {@link SecureRandom}, so that concurrent callers do not
+ * contend for a lock.
  *
  * @author Ryan Heaton
  */
@@ -14,16 +18,23 @@ public class RandomValueVerifierServices implements OAuthVerifierServices, Initi
 
   private static final char[] DEFAULT_CODEC = "1234567890ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
 
+  private final TokenValueGenerator defaultVerifierGenerator = new ThreadLocalVerifierGenerator(this);
+
   private Random random;
   private int verifierLengthBytes = 6;
+  private TokenValueGenerator verifierGenerator;
 
   public void afterPropertiesSet() throws Exception {
-    if (getRandom() == null) {
-      setRandom(new SecureRandom());
-    }
+    // Nothing to do: if no random value generator is set, each thread creates its own
   }
 
   public String createVerifier() {
+    if (getVerifierGenerator() != null) {
+      return getVerifierGenerator().generate();
+    }
+    if (getRandom() == null) {
+      return defaultVerifierGenerator.generate();
+    }
     byte[] verifierBytes = new byte[getVerifierLengthBytes()];
     getRandom().nextBytes(verifierBytes);
     return getVerifierString(verifierBytes);
@@ -45,7 +56,7 @@ public class RandomValueVerifierServices implements OAuthVerifierServices, Initi
   }
 
   /**
-   * The random value generator used to create token secrets.
+   * The random value generator used to create token secrets, or null to use one per thread.
    *
    * @return The random value generator used to create token secrets.
    */
@@ -79,4 +90,22 @@ public class RandomValueVerifierServices implements OAuthVerifierServices, Initi
   public void setVerifierLengthBytes(int verifierLengthBytes) {
     this.verifierLengthBytes = verifierLengthBytes;
   }
-}
\ No newline at end of file
+
+  /**
+   * A strategy for generating the verifiers, replacing the random bytes and the encoding of this class.
+   *
+   * @return The verifier generator, or null if not set.
+   */
+  public TokenValueGenerator getVerifierGenerator() {
+    return verifierGenerator;
+  }
+
+  /**
+   * A strategy for generating the verifiers, replacing the random bytes and the encoding of this class.
+   *
+   * @param verifierGenerator The verifier generator.
+   */
+  public void setVerifierGenerator(TokenValueGenerator verifierGenerator) {
+    this.verifierGenerator = verifierGenerator;
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.provider.verifier;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import org.springframework.security.oauth.common.TokenValueGenerator;
+
+/**
+ * The default verifier generator of {@link RandomValueVerifierServices}: random bytes from a {@link SecureRandom} that
+ * belongs to the calling thread, encoded by the verifier services.
+ */
+class ThreadLocalVerifierGenerator implements TokenValueGenerator {
+
+  private static final ThreadLocal<SecureRandom> RANDOM = new ThreadLocal<SecureRandom>() {
+    @Override
+    protected SecureRandom initialValue() {
+      SecureRandom random;
+      try {
+        // SHA1PRNG keeps its state per instance, so threads don't wait for each other
+        random = SecureRandom.getInstance("SHA1PRNG");
+      }
+      catch (NoSuchAlgorithmException e) {
+        random = new SecureRandom();
+      }
+      return random;
+    }
+  };
+
+  private final RandomValueVerifierServices verifierServices;
+
+  ThreadLocalVerifierGenerator(RandomValueVerifierServices verifierServices) {
+    this.verifierServices = verifierServices;
+  }
+
+  public String generate() {
+    byte[] verifierBytes = new byte[verifierServices.getVerifierLengthBytes()];
+    RANDOM.get().nextBytes(verifierBytes);
+    return verifierServices.getVerifierString(verifierBytes);
+  }
+
+}
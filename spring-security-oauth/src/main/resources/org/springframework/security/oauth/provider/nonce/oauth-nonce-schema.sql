@@ -0,0 +1,12 @@
+-- Recommended schema for JdbcNonceServices. The primary key is what detects a replayed nonce, so it must be unique
+-- on all three columns. Use a case sensitive collation for the nonce if your database does not default to one.
+
+create table oauth_nonce (
+  consumer_key VARCHAR(256) NOT NULL,
+  nonce_timestamp BIGINT NOT NULL,
+  nonce VARCHAR(256) NOT NULL,
+  PRIMARY KEY (consumer_key, nonce_timestamp, nonce)
+);
+
+-- JdbcNonceServices.removeExpiredNonces
+create index oauth_nonce_timestamp on oauth_nonce (nonce_timestamp);
@@ -17,6 +17,8 @@
 package org.springframework.security.oauth.common.signature;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -82,4 +84,65 @@ public class TestCoreOAuthSignatureMethodFactory {
 		assertEquals(keyPair.getPublic(), ((RSA_SHA1SignatureMethod) signatureMethod).getPublicKey());
 	}
 
+	@Test
+	public void testHmacSignatureMethodIsCachedBySecrets() throws Exception {
+		CoreOAuthSignatureMethodFactory factory = new CoreOAuthSignatureMethodFactory();
+		SharedConsumerSecret sharedSecret = new SharedConsumerSecret("consumer_secret");
+		OAuthSignatureMethod signatureMethod = factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME,
+				sharedSecret, "token_secret");
+		assertSame(signatureMethod, factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME,
+				new SharedConsumerSecret("consumer_secret"), "token_secret"));
+		assertNotSame(signatureMethod, factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME,
+				sharedSecret, "other_token_secret"));
+		// The pair is kept apart, so these have different keys even though the secrets concatenate the same way
+		OAuthSignatureMethod shifted = factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME,
+				new SharedConsumerSecret("consumer_secrettoken"), "_secret");
+		assertEquals("consumer_secrettoken&_secret",
+				new String(((HMAC_SHA1SignatureMethod) shifted).getSecretKey().getEncoded(), "UTF-8"));
+		// A null token secret is the same as an empty one
+		assertSame(factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret, null),
+				factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret, ""));
+	}
+
+	@Test
+	public void testHmacCacheIsBounded() throws Exception {
+		CoreOAuthSignatureMethodFactory factory = new CoreOAuthSignatureMethodFactory();
+		factory.setHmacCacheSize(2);
+		SharedConsumerSecret sharedSecret = new SharedConsumerSecret("consumer_secret");
+		OAuthSignatureMethod first = factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME,
+				sharedSecret, "one");
+		factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret, "two");
+		factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret, "three");
+		OAuthSignatureMethod again = factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME,
+				sharedSecret, "one");
+		assertNotSame(first, again);
+		assertTrue(Arrays.equals(((HMAC_SHA1SignatureMethod) first).getSecretKey().getEncoded(),
+				((HMAC_SHA1SignatureMethod) again).getSecretKey().getEncoded()));
+	}
+
+	@Test
+	public void testHmacCacheKeepsRecentlyUsedEntries() throws Exception {
+		CoreOAuthSignatureMethodFactory factory = new CoreOAuthSignatureMethodFactory();
+		factory.setHmacCacheSize(2);
+		SharedConsumerSecret sharedSecret = new SharedConsumerSecret("consumer_secret");
+		OAuthSignatureMethod one = factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret,
+				"one");
+		OAuthSignatureMethod two = factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret,
+				"two");
+		factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret, "one");
+		factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret, "three");
+		// "two" was the least recently used, so it is the one that was discarded
+		assertSame(one, factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret, "one"));
+		assertNotSame(two, factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret, "two"));
+	}
+
+	@Test
+	public void testHmacCacheDisabled() throws Exception {
+		CoreOAuthSignatureMethodFactory factory = new CoreOAuthSignatureMethodFactory();
+		factory.setHmacCacheSize(0);
+		SharedConsumerSecret sharedSecret = new SharedConsumerSecret("consumer_secret");
+		assertNotSame(factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret, "token"),
+				factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret, "token"));
+	}
+
 }
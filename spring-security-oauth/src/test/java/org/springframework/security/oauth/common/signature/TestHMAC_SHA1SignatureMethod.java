@@ -17,6 +17,15 @@
 package org.springframework.security.oauth.common.signature;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.crypto.spec.SecretKeySpec;
 
@@ -68,4 +77,50 @@ public class TestHMAC_SHA1SignatureMethod {
 		signatureMethod.verify(baseString, otherSignature);
 	}
 
+	@Test
+	public void testVerifyAfterInvalidSignature() throws Exception {
+		SecretKeySpec spec = new SecretKeySpec("xxxxxx&".getBytes("UTF-8"), HMAC_SHA1SignatureMethod.MAC_NAME);
+		HMAC_SHA1SignatureMethod signatureMethod = new HMAC_SHA1SignatureMethod(spec);
+		String baseString = "GET&http%3A%2F%2Flocalhost%3A8080%2Fgrailscrowd%2Foauth%2Frequest_token&oauth_consumer_key%3Dtonrconsumerkey%26oauth_nonce%3D1227967049787975000%26oauth_signature_method%3DHMAC-SHA1%26oauth_timestamp%3D1227967049%26oauth_version%3D1.0";
+		try {
+			signatureMethod.verify(baseString, "AAAAAAAAAAAAAAAAAAAAAAAAAAA=");
+			fail("Expected InvalidSignatureException");
+		}
+		catch (InvalidSignatureException e) {
+			// expected
+		}
+		// The MAC is reused, so it must have been left ready for the next signature
+		signatureMethod.verify(baseString, "4KaVKEnW6e1a+vwJTpz0VFqIaGU=");
+	}
+
+	@Test
+	public void testSignFromManyThreads() throws Exception {
+		SecretKeySpec spec = new SecretKeySpec("xxxxxx&".getBytes("UTF-8"), HMAC_SHA1SignatureMethod.MAC_NAME);
+		final HMAC_SHA1SignatureMethod signatureMethod = new HMAC_SHA1SignatureMethod(spec);
+		final String baseString = "GET&http%3A%2F%2Flocalhost%3A8080%2Fgrailscrowd%2Foauth%2Frequest_token&oauth_consumer_key%3Dtonrconsumerkey%26oauth_nonce%3D1227967049787975000%26oauth_signature_method%3DHMAC-SHA1%26oauth_timestamp%3D1227967049%26oauth_version%3D1.0";
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 100; i++) {
+				results.add(executor.submit(new Callable<String>() {
+					public String call() throws Exception {
+						String signature = null;
+						for (int j = 0; j < 50; j++) {
+							signature = signatureMethod.sign(baseString);
+							signatureMethod.verify(baseString, signature);
+						}
+						return signature;
+					}
+				}));
+			}
+			for (Future<String> result : results) {
+				assertEquals("4KaVKEnW6e1a+vwJTpz0VFqIaGU=", result.get());
+			}
+			assertTrue(signatureMethod.getPooledMacCount() <= 4);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.common.signature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.springframework.security.oauth.common.OAuthCodec;
+
+public class TestSignatureBaseStringBuilder {
+
+	@Test
+	public void testBuild() throws Exception {
+		String baseString = new SignatureBaseStringBuilder().addParameter("b", "2").addParameter("a", "3")
+				.addParameter("a", null).addParameter("a%", "1").build("get", "http://example.com/r v");
+		assertEquals("GET&http%3A%2F%2Fexample.com%2Fr%20v&a%3D%26a%3D3%26a%2525%3D1%26b%3D2", baseString);
+	}
+
+	@Test
+	public void testDuplicateParametersAreIncludedOnce() throws Exception {
+		String baseString = new SignatureBaseStringBuilder().addParameter("a", "1").addParameter("a", "1")
+				.addParameter("a", "2").build("GET", "http://example.com/");
+		assertEquals("GET&http%3A%2F%2Fexample.com%2F&a%3D1%26a%3D2", baseString);
+	}
+
+	@Test
+	public void testNoParameters() throws Exception {
+		assertEquals("GET&http%3A%2F%2Fexample.com%2F&",
+				new SignatureBaseStringBuilder().build("GET", "http://example.com/"));
+	}
+
+	@Test
+	public void testEncode() throws Exception {
+		assertEquals("caf%C3%A9%20%F0%9F%98%80%2A", SignatureBaseStringBuilder.encode("caf\u00e9 \ud83d\ude00*"));
+		assertEquals("", SignatureBaseStringBuilder.encode(null));
+		String unreserved = "AZaz09-._~";
+		assertSame(unreserved, SignatureBaseStringBuilder.encode(unreserved));
+	}
+
+	@Test
+	public void testEncodeIsSameAsOAuthCodec() throws Exception {
+		Random random = new Random(1);
+		for (int i = 0; i < 10000; i++) {
+			char[] chars = new char[random.nextInt(10)];
+			for (int j = 0; j < chars.length; j++) {
+				// Mostly ASCII, with some of everything else including unpaired surrogates
+				chars[j] = (char) (random.nextBoolean() ? random.nextInt(128) : random.nextInt(Character.MAX_VALUE + 1));
+			}
+			String value = new String(chars);
+			assertEquals(OAuthCodec.oauthEncode(value), SignatureBaseStringBuilder.encode(value));
+		}
+	}
+
+}
@@ -38,8 +38,10 @@ import java.net.Proxy;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLEncoder;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -445,6 +447,25 @@ public class TestCoreOAuthConsumerSupport {
 				baseString);
 	}
 
+	/**
+	 * tests that every value of the last parameter is separated, as on the provider.
+	 */
+	@Test
+	public void testGetSignatureBaseStringWithSeveralValues() throws Exception {
+		Map<String, Set<CharSequence>> oauthParams = new HashMap<String, Set<CharSequence>>();
+		oauthParams.put("oauth_consumer_key", Collections.singleton((CharSequence) "dpf43f3p2l4k3l03"));
+		oauthParams.put("size", new HashSet<CharSequence>(Arrays.asList((CharSequence) "original", "large")));
+		oauthParams.put("empty", Collections.<CharSequence> emptySet());
+
+		CoreOAuthConsumerSupport support = new CoreOAuthConsumerSupport();
+
+		String baseString = support.getSignatureBaseString(oauthParams, new URL("http://photos.example.net/photos"),
+				"GET");
+		assertEquals(
+				"GET&http%3A%2F%2Fphotos.example.net%2Fphotos&oauth_consumer_key%3Ddpf43f3p2l4k3l03%26size%3Dlarge%26size%3Doriginal",
+				baseString);
+	}
+
 	static class StreamHandlerForTestingPurposes extends Handler {
 
 		private final HttpURLConnectionForTestingPurposes connection;
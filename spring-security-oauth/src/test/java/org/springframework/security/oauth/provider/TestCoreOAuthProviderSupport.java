@@ -23,6 +23,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -32,6 +36,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.security.oauth.common.OAuthConsumerParameter;
 import org.springframework.security.oauth.provider.filter.CoreOAuthProviderSupport;
+import org.springframework.security.oauth.provider.filter.OAuthProviderProcessingFilter;
 
 /**
  * @author Ryan Heaton
@@ -102,4 +107,59 @@ public class TestCoreOAuthProviderSupport {
 				baseString);
 	}
 
+	/**
+	 * tests getting the signature base string from parameters that have already been parsed.
+	 */
+	@Test
+	public void testGetSignatureBaseStringWithParsedParameters() throws Exception {
+		when(request.getParameterNames()).thenReturn(Collections.enumeration(Arrays.asList("file", "oauth_signature")));
+		when(request.getParameterValues("file")).thenReturn(new String[] { "vacation.jpg", "vacation.jpg" });
+		when(request.getParameterValues("oauth_signature")).thenReturn(new String[] { "unimportantforthistest" });
+		when(request.getMethod()).thenReturn("POST");
+
+		Map<String, String> oauthParams = new HashMap<String, String>();
+		oauthParams.put("realm", "http://sp.example.com/");
+		oauthParams.put("oauth_consumer_key", "dpf43f3p2l4k3l03");
+		oauthParams.put("oauth_signature", "unimportantforthistest");
+		oauthParams.put("oauth_nonce", "kllo9940pd9333jh");
+		oauthParams.put("oauth_callback", "http://printer.example.com/ready?a=1&b= ~");
+
+		CoreOAuthProviderSupport support = new CoreOAuthProviderSupport();
+		support.setBaseUrl("http://photos.example.net");
+		when(request.getRequestURI()).thenReturn("/photos");
+
+		when(request.getAttribute(OAuthProviderProcessingFilter.OAUTH_PARAMETERS)).thenReturn(oauthParams);
+		String baseString = support.getSignatureBaseString(request);
+		assertEquals(
+				"POST&http%3A%2F%2Fphotos.example.net%2Fphotos&file%3Dvacation.jpg%26oauth_callback%3Dhttp%253A%252F%252Fprinter.example.com%252Fready%253Fa%253D1%2526b%253D%2520~%26oauth_consumer_key%3Ddpf43f3p2l4k3l03%26oauth_nonce%3Dkllo9940pd9333jh",
+				baseString);
+		assertEquals(5, oauthParams.size());
+	}
+
+	/**
+	 * tests that a subclass can build the signature base string from significant parameters that it loads itself.
+	 */
+	@Test
+	public void testGetSignatureBaseStringFromSignificantParameters() throws Exception {
+		when(request.getMethod()).thenReturn("GET");
+		when(request.getRequestURL()).thenReturn(new StringBuffer("http://photos.example.net/photos"));
+		when(request.getAttribute(OAuthProviderProcessingFilter.OAUTH_PARAMETERS)).thenReturn(
+				new HashMap<String, String>());
+
+		CoreOAuthProviderSupport support = new CoreOAuthProviderSupport() {
+			@Override
+			protected String getSignatureBaseString(HttpServletRequest request, Map<String, String> oauthParams) {
+				SortedMap<String, SortedSet<String>> significantParameters = new TreeMap<String, SortedSet<String>>();
+				significantParameters.put("oauth_consumer_key", new TreeSet<String>(Arrays.asList("dpf43f3p2l4k3l03")));
+				significantParameters.put("size", new TreeSet<String>(Arrays.asList("original", "large")));
+				return getSignatureBaseStringFromSignificantParameters(request, significantParameters);
+			}
+		};
+
+		String baseString = support.getSignatureBaseString(request);
+		assertEquals(
+				"GET&http%3A%2F%2Fphotos.example.net%2Fphotos&oauth_consumer_key%3Ddpf43f3p2l4k3l03%26size%3Dlarge%26size%3Doriginal",
+				baseString);
+	}
+
 }
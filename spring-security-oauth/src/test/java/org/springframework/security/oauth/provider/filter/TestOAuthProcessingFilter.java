@@ -180,6 +180,7 @@ public class TestOAuthProcessingFilter {
 		filter.doFilter(request, response, filterChain);
 
 		verify(filterChain).doFilter(null, null);
+		verify(request).setAttribute(OAuthProviderProcessingFilter.OAUTH_PARAMETERS, requestParams);
 		verify(request).setAttribute(OAuthProviderProcessingFilter.OAUTH_PROCESSING_HANDLED, Boolean.TRUE);
 		ConsumerAuthentication authentication = (ConsumerAuthentication) SecurityContextHolder.getContext()
 				.getAuthentication();
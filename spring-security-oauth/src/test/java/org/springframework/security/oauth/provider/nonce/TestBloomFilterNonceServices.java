@@ -0,0 +1,111 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.provider.nonce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.oauth.provider.BaseConsumerDetails;
+import org.springframework.security.oauth.provider.ConsumerDetails;
+import org.springframework.security.oauth.provider.InvalidOAuthParametersException;
+
+public class TestBloomFilterNonceServices {
+
+	private long now;
+
+	private final BloomFilterNonceServices nonceServices = new BloomFilterNonceServices();
+
+	@Before
+	public void setUp() throws Exception {
+		now = System.currentTimeMillis() / 1000;
+		nonceServices.setValidityWindowSeconds(10);
+		nonceServices.setGenerations(5);
+	}
+
+	@Test(expected = NonceAlreadyUsedException.class)
+	public void shouldRejectAlreadyUsedNonceWithSameTimestamp() {
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+	}
+
+	@Test
+	public void shouldAcceptSameNonceWithDifferentTimestampOrConsumer() {
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+		nonceServices.validateNonce(consumer("foo"), now + 5, nonce);
+		nonceServices.validateNonce(consumer("bar"), now, nonce);
+		assertEquals(3, nonceServices.getAcceptedCount());
+	}
+
+	@Test(expected = CredentialsExpiredException.class)
+	public void shouldRejectTooOldTimestamp() {
+		nonceServices.validateNonce(consumer("foo"), now - 11, nonce());
+	}
+
+	@Test(expected = InvalidOAuthParametersException.class)
+	public void shouldRejectTimestampTooFarInTheFuture() {
+		nonceServices.validateNonce(consumer("foo"), now + 11, nonce());
+	}
+
+	@Test
+	public void shouldAcceptFreshNonces() {
+		for (int i = 0; i < 1000; i++) {
+			nonceServices.validateNonce(consumer("foo"), now, nonce());
+		}
+		assertEquals(1000, nonceServices.getAcceptedCount());
+		assertEquals(0, nonceServices.getRejectedCount());
+	}
+
+	@Test
+	public void shouldCountRejections() {
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+		for (int i = 0; i < 3; i++) {
+			try {
+				nonceServices.validateNonce(consumer("foo"), now, nonce);
+			}
+			catch (NonceAlreadyUsedException e) {
+				// expected
+			}
+		}
+		assertEquals(3, nonceServices.getRejectedCount());
+	}
+
+	@Test
+	public void shouldUseFixedMemory() {
+		long memory = nonceServices.getMemoryBytes();
+		assertTrue(memory > 0);
+		for (int i = 0; i < 10; i++) {
+			nonceServices.validateNonce(consumer("foo"), now - i, nonce());
+		}
+		assertEquals(memory, nonceServices.getMemoryBytes());
+		assertEquals(20, nonceServices.getHashCount());
+	}
+
+	private String nonce() {
+		return UUID.randomUUID().toString();
+	}
+
+	private ConsumerDetails consumer(String name) {
+		BaseConsumerDetails details = new BaseConsumerDetails();
+		details.setConsumerKey(name);
+		return details;
+	}
+
+}
@@ -2,7 +2,14 @@ package org.springframework.security.oauth.provider.nonce;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -24,7 +31,6 @@ public class TestInMemoryNonceServices {
 		// seconds since epoch, reset for every test
 		now = System.currentTimeMillis() / 1000;
 		nonceServices.setValidityWindowSeconds(10);
-		InMemoryNonceServices.NONCES.clear();
 	}
 
 	@Test
@@ -32,7 +38,7 @@ public class TestInMemoryNonceServices {
 		String nonce = nonce();
 		nonceServices.validateNonce(consumer("foo"), now, nonce);
 		nonceServices.validateNonce(consumer("foo"), now+5, nonce);
-		assertEquals(2, InMemoryNonceServices.NONCES.size());
+		assertEquals(2, nonceServices.getNonceCount());
 	}
 
 	@Test(expected=NonceAlreadyUsedException.class)
@@ -52,19 +58,62 @@ public class TestInMemoryNonceServices {
 		String nonce = nonce();
 		nonceServices.validateNonce(consumer("foo"), now, nonce);
 		nonceServices.validateNonce(consumer("bar"), now, nonce);
-		assertEquals(2, InMemoryNonceServices.NONCES.size());
+		assertEquals(2, nonceServices.getNonceCount());
 	}
 
 	@Test
 	public void shouldRemoveOldNonces() {
 		// order should not matter
-		InMemoryNonceServices.NONCES.add(new InMemoryNonceServices.NonceEntry("foo", now-2, nonce()));
-		InMemoryNonceServices.NONCES.add(new InMemoryNonceServices.NonceEntry("foo", now-11, nonce()));
-		InMemoryNonceServices.NONCES.add(new InMemoryNonceServices.NonceEntry("foo", now+8, nonce()));
-		InMemoryNonceServices.NONCES.add(new InMemoryNonceServices.NonceEntry("foo", now-15, nonce()));
-		assertEquals(4, InMemoryNonceServices.NONCES.size());
+		nonceServices.add("foo", now-2, nonce());
+		nonceServices.add("foo", now-11, nonce());
+		nonceServices.add("foo", now+8, nonce());
+		nonceServices.add("foo", now-15, nonce());
+		assertEquals(4, nonceServices.getNonceCount());
 		nonceServices.validateNonce(consumer("foo"), now, nonce());
-		assertEquals("should have removed two from the original four nonces and added one",3, InMemoryNonceServices.NONCES.size());
+		assertEquals("should have removed two from the original four nonces and added one",3, nonceServices.getNonceCount());
+	}
+
+	@Test
+	public void shouldNotShareNoncesBetweenInstances() {
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+		new InMemoryNonceServices().validateNonce(consumer("foo"), now, nonce);
+	}
+
+	@Test
+	public void shouldAcceptEachNonceOnceFromConcurrentRequests() throws Exception {
+		nonceServices.setShards(4);
+		final String nonce = nonce();
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < threads; i++) {
+			results.add(executor.submit(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					start.await();
+					int accepted = 0;
+					for (int j = 0; j < 100; j++) {
+						try {
+							nonceServices.validateNonce(consumer("consumer" + j), now, nonce);
+							accepted++;
+						}
+						catch (NonceAlreadyUsedException e) {
+							// another thread got there first
+						}
+					}
+					return accepted;
+				}
+			}));
+		}
+		start.countDown();
+		int accepted = 0;
+		for (Future<Integer> result : results) {
+			accepted += result.get();
+		}
+		executor.shutdown();
+		assertEquals(100, accepted);
+		assertEquals(100, nonceServices.getNonceCount());
 	}
 
 	private String nonce() {
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.provider.nonce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.oauth.provider.BaseConsumerDetails;
+import org.springframework.security.oauth.provider.ConsumerDetails;
+
+public class TestJdbcNonceServices {
+
+	private long now;
+
+	private EmbeddedDatabase db;
+
+	private JdbcNonceServices nonceServices;
+
+	@Before
+	public void setUp() throws Exception {
+		now = System.currentTimeMillis() / 1000;
+		// creates a HSQL in-memory db populated from default scripts classpath:schema.sql and classpath:data.sql
+		db = new EmbeddedDatabaseBuilder().addDefaultScripts().build();
+		nonceServices = createNonceServices();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		nonceServices.destroy();
+		db.shutdown();
+	}
+
+	@Test(expected = NonceAlreadyUsedException.class)
+	public void shouldRejectAlreadyUsedNonceWithSameTimestamp() {
+		nonceServices.setLocalCacheSize(0);
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+	}
+
+	@Test
+	public void shouldAcceptSameNonceWithDifferentTimestampOrConsumer() {
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+		nonceServices.validateNonce(consumer("foo"), now + 5, nonce);
+		nonceServices.validateNonce(consumer("bar"), now, nonce);
+		assertEquals(3, countRows());
+	}
+
+	@Test(expected = CredentialsExpiredException.class)
+	public void shouldRejectTooOldTimestamp() {
+		nonceServices.validateNonce(consumer("foo"), now - 11, nonce());
+	}
+
+	@Test(expected = NonceAlreadyUsedException.class)
+	public void shouldRejectNonceUsedOnAnotherNode() throws Exception {
+		String nonce = nonce();
+		createNonceServices().validateNonce(consumer("foo"), now, nonce);
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+	}
+
+	@Test
+	public void shouldRejectReplayFromLocalCache() {
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+		for (int i = 0; i < 2; i++) {
+			try {
+				nonceServices.validateNonce(consumer("foo"), now, nonce);
+				fail("Expected NonceAlreadyUsedException");
+			}
+			catch (NonceAlreadyUsedException e) {
+				// expected
+			}
+		}
+		assertEquals(2, nonceServices.getRejectedCount());
+		assertEquals(2, nonceServices.getLocalRejectedCount());
+	}
+
+	@Test
+	public void shouldKeepLocalCacheBounded() {
+		nonceServices.setLocalCacheSize(3);
+		String nonce = null;
+		for (int i = 0; i < 10; i++) {
+			nonce = nonce();
+			nonceServices.validateNonce(consumer("foo"), now - 9 + i, nonce);
+		}
+		assertTrue(nonceServices.getLocalCacheCount() <= 3);
+		try {
+			nonceServices.validateNonce(consumer("foo"), now, nonce);
+			fail("Expected NonceAlreadyUsedException");
+		}
+		catch (NonceAlreadyUsedException e) {
+			// expected
+		}
+		assertEquals(1, nonceServices.getLocalRejectedCount());
+	}
+
+	@Test
+	public void shouldRemoveExpiredNonces() {
+		nonceServices.setBatchSize(2);
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(db);
+		for (int i = 0; i < 5; i++) {
+			jdbcTemplate.update("insert into oauth_nonce (consumer_key, nonce_timestamp, nonce) values (?, ?, ?)",
+					"foo", now - 20, nonce());
+		}
+		nonceServices.validateNonce(consumer("foo"), now, nonce());
+		assertEquals(5, nonceServices.removeExpiredNonces());
+		assertEquals(0, nonceServices.removeExpiredNonces());
+		assertEquals(1, countRows());
+		assertEquals(5, nonceServices.getPurgedNonceCount());
+	}
+
+	@Test(timeout = 10000)
+	public void shouldStopRemovingWhenBatchDeletesNothing() {
+		nonceServices.setBatchSize(2);
+		nonceServices.setDeleteNonceSql("delete from oauth_nonce where consumer_key = ? and nonce_timestamp = ? and nonce = ? and 1 = 0");
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(db);
+		for (int i = 0; i < 5; i++) {
+			jdbcTemplate.update("insert into oauth_nonce (consumer_key, nonce_timestamp, nonce) values (?, ?, ?)",
+					"foo", now - 20, nonce());
+		}
+		assertEquals(0, nonceServices.removeExpiredNonces());
+		assertEquals(5, countRows());
+	}
+
+	private JdbcNonceServices createNonceServices() throws Exception {
+		JdbcNonceServices nonceServices = new JdbcNonceServices(db);
+		nonceServices.setValidityWindowSeconds(10);
+		nonceServices.setPurgeInterval(0);
+		nonceServices.afterPropertiesSet();
+		return nonceServices;
+	}
+
+	private int countRows() {
+		return new JdbcTemplate(db).queryForInt("select count(*) from oauth_nonce");
+	}
+
+	private String nonce() {
+		return UUID.randomUUID().toString();
+	}
+
+	private ConsumerDetails consumer(String name) {
+		BaseConsumerDetails details = new BaseConsumerDetails();
+		details.setConsumerKey(name);
+		return details;
+	}
+
+}
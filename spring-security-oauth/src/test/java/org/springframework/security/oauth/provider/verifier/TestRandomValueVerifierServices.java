@@ -0,0 +1,53 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth.provider.verifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.springframework.security.oauth.common.TokenValueGenerator;
+
+public class TestRandomValueVerifierServices {
+
+	private final RandomValueVerifierServices verifierServices = new RandomValueVerifierServices();
+
+	@Test
+	public void testDefaultVerifier() {
+		verifierServices.setVerifierLengthBytes(10);
+		String verifier = verifierServices.createVerifier();
+		assertEquals(10, verifier.length());
+		assertTrue(verifier.matches("[0-9A-Za-z]+"));
+	}
+
+	@Test
+	public void testVerifierComesFromRandom() {
+		verifierServices.setRandom(new Random(1));
+		String verifier = verifierServices.createVerifier();
+		verifierServices.setRandom(new Random(1));
+		assertEquals(verifier, verifierServices.createVerifier());
+	}
+
+	@Test
+	public void testVerifierComesFromGenerator() {
+		verifierServices.setVerifierGenerator(new TokenValueGenerator() {
+			public String generate() {
+				return "generated";
+			}
+		});
+		assertEquals("generated", verifierServices.createVerifier());
+	}
+
+}
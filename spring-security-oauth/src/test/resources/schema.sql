@@ -24,3 +24,10 @@ create table oauth_refresh_token (
 create table oauth_code (
   code VARCHAR(256), authentication LONGVARBINARY
 );
+
+create table oauth_nonce (
+  consumer_key VARCHAR(256) NOT NULL,
+  nonce_timestamp BIGINT NOT NULL,
+  nonce VARCHAR(256) NOT NULL,
+  PRIMARY KEY (consumer_key, nonce_timestamp, nonce)
+);
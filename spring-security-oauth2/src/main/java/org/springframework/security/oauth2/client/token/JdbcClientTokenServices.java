@@ -15,7 +15,8 @@ import org.springframework.jdbc.core.support.SqlLobValue;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
-import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.common.util.CompactTokenSerializer;
+import org.springframework.security.oauth2.common.util.TokenSerializer;
 import org.springframework.util.Assert;
 
 /**
@@ -41,6 +42,8 @@ public class JdbcClientTokenServices implements ClientTokenServices {
 
 	private ClientKeyGenerator keyGenerator = new DefaultClientKeyGenerator();
 
+	private TokenSerializer tokenSerializer = new CompactTokenSerializer();
+
 	private final JdbcTemplate jdbcTemplate;
 
 	public JdbcClientTokenServices(DataSource dataSource) {
@@ -52,6 +55,16 @@ public class JdbcClientTokenServices implements ClientTokenServices {
 		this.keyGenerator = keyGenerator;
 	}
 
+	/**
+	 * The strategy used to encode tokens and authentications for storage. The default writes a compact binary format
+	 * and can still read values that were stored with plain Java serialization.
+	 * 
+	 * @param tokenSerializer the token serializer to set
+	 */
+	public void setTokenSerializer(TokenSerializer tokenSerializer) {
+		this.tokenSerializer = tokenSerializer;
+	}
+
 	public OAuth2AccessToken getAccessToken(OAuth2ProtectedResourceDetails resource, Authentication authentication) {
 
 		OAuth2AccessToken accessToken = null;
@@ -59,7 +72,7 @@ public class JdbcClientTokenServices implements ClientTokenServices {
 		try {
 			accessToken = jdbcTemplate.queryForObject(selectAccessTokenSql, new RowMapper<OAuth2AccessToken>() {
 				public OAuth2AccessToken mapRow(ResultSet rs, int rowNum) throws SQLException {
-					return SerializationUtils.deserialize(rs.getBytes(2));
+					return tokenSerializer.deserialize(rs.getBytes(2));
 				}
 			}, keyGenerator.extractKey(resource, authentication));
 		}
@@ -77,7 +90,7 @@ public class JdbcClientTokenServices implements ClientTokenServices {
 		removeAccessToken(resource, authentication);
 		jdbcTemplate.update(
 				insertAccessTokenSql,
-				new Object[] { accessToken.getValue(), new SqlLobValue(SerializationUtils.serialize(accessToken)),
+				new Object[] { accessToken.getValue(), new SqlLobValue(tokenSerializer.serialize(accessToken)),
 						keyGenerator.extractKey(resource, authentication), authentication.getName(),
 						resource.getClientId() }, new int[] { Types.VARCHAR, Types.BLOB, Types.VARCHAR, Types.VARCHAR,
 						Types.VARCHAR });
@@ -0,0 +1,462 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.common.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.AuthorizationRequest;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.code.AuthorizationRequestHolder;
+
+/**
+ * A {@link TokenSerializer} that writes a compact, versioned binary form for the standard token and authentication
+ * types, avoiding the cost (in CPU and bytes) of Java serialization on every token lookup. Parts of the object graph
+ * that are not known to this codec (e.g. a custom user principal or authentication details) are embedded as Java
+ * serialized values, and objects of unknown types are serialized entirely with Java serialization.
+ * <p>
+ * Data that was written with plain Java serialization (e.g. rows created before this serializer was introduced) is
+ * still readable: it is detected from the stream header and passed to {@link SerializationUtils}.
+ */
+public class CompactTokenSerializer implements TokenSerializer {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte MAGIC_0 = 'O';
+
+	private static final byte MAGIC_1 = 'T';
+
+	/**
+	 * The current version of the binary format. Readers reject versions they do not know.
+	 */
+	private static final byte VERSION = 1;
+
+	private static final byte NULL = 0;
+
+	private static final byte ACCESS_TOKEN = 1;
+
+	private static final byte REFRESH_TOKEN = 2;
+
+	private static final byte EXPIRING_REFRESH_TOKEN = 3;
+
+	private static final byte AUTHENTICATION = 4;
+
+	private static final byte AUTHORIZATION_REQUEST_HOLDER = 5;
+
+	private static final byte AUTHORIZATION_REQUEST = 6;
+
+	private static final byte USERNAME_PASSWORD_AUTHENTICATION = 7;
+
+	private static final byte STRING = 8;
+
+	private static final byte INTEGER = 9;
+
+	private static final byte LONG = 10;
+
+	private static final byte BOOLEAN = 11;
+
+	private static final byte DOUBLE = 12;
+
+	private static final byte DATE = 13;
+
+	private static final byte AUTHORITY = 14;
+
+	private static final byte SERIALIZED = 15;
+
+	public byte[] serialize(Object object) {
+		if (!isSupported(object)) {
+			return SerializationUtils.serialize(object);
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			DataOutputStream output = new DataOutputStream(bytes);
+			output.writeByte(MAGIC_0);
+			output.writeByte(MAGIC_1);
+			output.writeByte(VERSION);
+			writeObject(output, object);
+			output.flush();
+			return bytes.toByteArray();
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	public <T> T deserialize(byte[] bytes) {
+		if (bytes == null || bytes.length < 3 || bytes[0] != MAGIC_0 || bytes[1] != MAGIC_1) {
+			return SerializationUtils.<T> deserialize(bytes);
+		}
+		if (bytes[2] > VERSION) {
+			throw new IllegalArgumentException("Unsupported token encoding version: " + bytes[2]);
+		}
+		try {
+			DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes, 3, bytes.length - 3));
+			@SuppressWarnings("unchecked")
+			T result = (T) readObject(input);
+			return result;
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private boolean isSupported(Object object) {
+		if (object == null) {
+			return false;
+		}
+		Class<?> type = object.getClass();
+		return type == DefaultOAuth2AccessToken.class || type == DefaultOAuth2RefreshToken.class
+				|| type == DefaultExpiringOAuth2RefreshToken.class || type == OAuth2Authentication.class
+				|| type == AuthorizationRequestHolder.class;
+	}
+
+	private void writeObject(DataOutputStream output, Object object) throws IOException {
+		if (object == null) {
+			output.writeByte(NULL);
+		}
+		else if (object.getClass() == DefaultOAuth2AccessToken.class) {
+			output.writeByte(ACCESS_TOKEN);
+			writeAccessToken(output, (DefaultOAuth2AccessToken) object);
+		}
+		else if (object.getClass() == DefaultOAuth2RefreshToken.class) {
+			output.writeByte(REFRESH_TOKEN);
+			writeString(output, ((OAuth2RefreshToken) object).getValue());
+		}
+		else if (object.getClass() == DefaultExpiringOAuth2RefreshToken.class) {
+			DefaultExpiringOAuth2RefreshToken token = (DefaultExpiringOAuth2RefreshToken) object;
+			output.writeByte(EXPIRING_REFRESH_TOKEN);
+			writeString(output, token.getValue());
+			writeDate(output, token.getExpiration());
+		}
+		else if (object.getClass() == OAuth2Authentication.class) {
+			OAuth2Authentication authentication = (OAuth2Authentication) object;
+			output.writeByte(AUTHENTICATION);
+			writeObject(output, authentication.getAuthorizationRequest());
+			writeObject(output, authentication.getUserAuthentication());
+			writeObject(output, authentication.getDetails());
+		}
+		else if (object.getClass() == AuthorizationRequestHolder.class) {
+			AuthorizationRequestHolder holder = (AuthorizationRequestHolder) object;
+			output.writeByte(AUTHORIZATION_REQUEST_HOLDER);
+			writeObject(output, holder.getAuthenticationRequest());
+			writeObject(output, holder.getUserAuthentication());
+		}
+		else if (object.getClass() == DefaultAuthorizationRequest.class
+				&& isRestorable((DefaultAuthorizationRequest) object)) {
+			output.writeByte(AUTHORIZATION_REQUEST);
+			writeAuthorizationRequest(output, (DefaultAuthorizationRequest) object);
+		}
+		else if (object.getClass() == UsernamePasswordAuthenticationToken.class
+				&& isRestorable((UsernamePasswordAuthenticationToken) object)) {
+			UsernamePasswordAuthenticationToken authentication = (UsernamePasswordAuthenticationToken) object;
+			output.writeByte(USERNAME_PASSWORD_AUTHENTICATION);
+			writeString(output, (String) authentication.getPrincipal());
+			writeString(output, (String) authentication.getCredentials());
+			output.writeBoolean(authentication.isAuthenticated());
+			writeAuthorities(output, authentication.getAuthorities());
+			writeObject(output, authentication.getDetails());
+		}
+		else if (object instanceof String) {
+			output.writeByte(STRING);
+			writeString(output, (String) object);
+		}
+		else if (object.getClass() == Integer.class) {
+			output.writeByte(INTEGER);
+			output.writeInt((Integer) object);
+		}
+		else if (object.getClass() == Long.class) {
+			output.writeByte(LONG);
+			output.writeLong((Long) object);
+		}
+		else if (object.getClass() == Boolean.class) {
+			output.writeByte(BOOLEAN);
+			output.writeBoolean((Boolean) object);
+		}
+		else if (object.getClass() == Double.class) {
+			output.writeByte(DOUBLE);
+			output.writeDouble((Double) object);
+		}
+		else if (object.getClass() == Date.class) {
+			output.writeByte(DATE);
+			output.writeLong(((Date) object).getTime());
+		}
+		else if (object.getClass() == SimpleGrantedAuthority.class) {
+			output.writeByte(AUTHORITY);
+			writeString(output, ((GrantedAuthority) object).getAuthority());
+		}
+		else {
+			output.writeByte(SERIALIZED);
+			byte[] bytes = SerializationUtils.serialize(object);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	private Object readObject(DataInputStream input) throws IOException {
+		byte type = input.readByte();
+		switch (type) {
+		case NULL:
+			return null;
+		case ACCESS_TOKEN:
+			return readAccessToken(input);
+		case REFRESH_TOKEN:
+			return new DefaultOAuth2RefreshToken(readString(input));
+		case EXPIRING_REFRESH_TOKEN:
+			return new DefaultExpiringOAuth2RefreshToken(readString(input), readDate(input));
+		case AUTHENTICATION:
+			AuthorizationRequest authorizationRequest = (AuthorizationRequest) readObject(input);
+			Authentication userAuthentication = (Authentication) readObject(input);
+			OAuth2Authentication authentication = new OAuth2Authentication(authorizationRequest, userAuthentication);
+			authentication.setDetails(readObject(input));
+			return authentication;
+		case AUTHORIZATION_REQUEST_HOLDER:
+			return new AuthorizationRequestHolder((AuthorizationRequest) readObject(input),
+					(Authentication) readObject(input));
+		case AUTHORIZATION_REQUEST:
+			return readAuthorizationRequest(input);
+		case USERNAME_PASSWORD_AUTHENTICATION:
+			return readUsernamePasswordAuthentication(input);
+		case STRING:
+			return readString(input);
+		case INTEGER:
+			return input.readInt();
+		case LONG:
+			return input.readLong();
+		case BOOLEAN:
+			return input.readBoolean();
+		case DOUBLE:
+			return input.readDouble();
+		case DATE:
+			return new Date(input.readLong());
+		case AUTHORITY:
+			return new SimpleGrantedAuthority(readString(input));
+		case SERIALIZED:
+			byte[] bytes = new byte[input.readInt()];
+			input.readFully(bytes);
+			return SerializationUtils.deserialize(bytes);
+		default:
+			throw new IllegalArgumentException("Unknown token encoding type: " + type);
+		}
+	}
+
+	private void writeAccessToken(DataOutputStream output, DefaultOAuth2AccessToken token) throws IOException {
+		writeString(output, token.getValue());
+		writeDate(output, token.getExpiration());
+		writeString(output, token.getTokenType());
+		writeObject(output, token.getRefreshToken());
+		writeStrings(output, token.getScope());
+		Map<String, Object> additionalInformation = token.getAdditionalInformation();
+		output.writeInt(additionalInformation.size());
+		for (Map.Entry<String, Object> entry : additionalInformation.entrySet()) {
+			writeString(output, entry.getKey());
+			writeObject(output, entry.getValue());
+		}
+	}
+
+	private DefaultOAuth2AccessToken readAccessToken(DataInputStream input) throws IOException {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(readString(input));
+		token.setExpiration(readDate(input));
+		token.setTokenType(readString(input));
+		token.setRefreshToken((OAuth2RefreshToken) readObject(input));
+		token.setScope(readStrings(input));
+		int size = input.readInt();
+		Map<String, Object> additionalInformation = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < size; i++) {
+			String key = readString(input);
+			additionalInformation.put(key, readObject(input));
+		}
+		token.setAdditionalInformation(additionalInformation);
+		return token;
+	}
+
+	/**
+	 * The compact form is only used if the request can be re-created exactly from its public properties, otherwise
+	 * equality with the original (which the token stores rely on) would be lost.
+	 */
+	private boolean isRestorable(DefaultAuthorizationRequest request) {
+		Map<String, String> parameters = request.getAuthorizationParameters();
+		if (!parameters.containsKey(AuthorizationRequest.CLIENT_ID)
+				|| !parameters.containsKey(AuthorizationRequest.SCOPE)) {
+			return false;
+		}
+		String scope = parameters.get(AuthorizationRequest.SCOPE);
+		if (scope == null) {
+			return request.getScope().isEmpty();
+		}
+		return scope.equals(OAuth2Utils.formatParameterList(request.getScope()));
+	}
+
+	private void writeAuthorizationRequest(DataOutputStream output, DefaultAuthorizationRequest request)
+			throws IOException {
+		writeMap(output, request.getAuthorizationParameters());
+		writeMap(output, request.getApprovalParameters());
+		writeStrings(output, request.getScope());
+		writeStrings(output, request.getResourceIds());
+		writeAuthorities(output, request.getAuthorities());
+		output.writeBoolean(request.isApproved());
+	}
+
+	private DefaultAuthorizationRequest readAuthorizationRequest(DataInputStream input) throws IOException {
+		Map<String, String> authorizationParameters = readMap(input);
+		Map<String, String> approvalParameters = readMap(input);
+		Set<String> scope = readStrings(input);
+		if (authorizationParameters.get(AuthorizationRequest.SCOPE) == null) {
+			// Preserve a null scope parameter
+			scope = null;
+		}
+		DefaultAuthorizationRequest request = new DefaultAuthorizationRequest(authorizationParameters,
+				approvalParameters, authorizationParameters.get(AuthorizationRequest.CLIENT_ID), scope);
+		request.setResourceIds(readStrings(input));
+		request.setAuthorities(readAuthorities(input));
+		request.setApproved(input.readBoolean());
+		return request;
+	}
+
+	/**
+	 * The compact form is only used for simple string principals, and if the token can be re-created through its public
+	 * constructors.
+	 */
+	private boolean isRestorable(UsernamePasswordAuthenticationToken authentication) {
+		if (!(authentication.getPrincipal() instanceof String)) {
+			return false;
+		}
+		if (authentication.getCredentials() != null && !(authentication.getCredentials() instanceof String)) {
+			return false;
+		}
+		return authentication.isAuthenticated() || authentication.getAuthorities().isEmpty();
+	}
+
+	private UsernamePasswordAuthenticationToken readUsernamePasswordAuthentication(DataInputStream input)
+			throws IOException {
+		String principal = readString(input);
+		String credentials = readString(input);
+		boolean authenticated = input.readBoolean();
+		Collection<GrantedAuthority> authorities = readAuthorities(input);
+		UsernamePasswordAuthenticationToken authentication = authenticated ? new UsernamePasswordAuthenticationToken(
+				principal, credentials, authorities) : new UsernamePasswordAuthenticationToken(principal, credentials);
+		authentication.setDetails(readObject(input));
+		return authentication;
+	}
+
+	private void writeAuthorities(DataOutputStream output, Collection<? extends GrantedAuthority> authorities)
+			throws IOException {
+		output.writeInt(authorities.size());
+		for (GrantedAuthority authority : authorities) {
+			writeObject(output, authority);
+		}
+	}
+
+	private Collection<GrantedAuthority> readAuthorities(DataInputStream input) throws IOException {
+		int size = input.readInt();
+		List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>(size);
+		for (int i = 0; i < size; i++) {
+			authorities.add((GrantedAuthority) readObject(input));
+		}
+		return authorities;
+	}
+
+	private void writeMap(DataOutputStream output, Map<String, String> map) throws IOException {
+		output.writeInt(map.size());
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			writeString(output, entry.getKey());
+			writeString(output, entry.getValue());
+		}
+	}
+
+	private Map<String, String> readMap(DataInputStream input) throws IOException {
+		int size = input.readInt();
+		Map<String, String> map = new HashMap<String, String>();
+		for (int i = 0; i < size; i++) {
+			String key = readString(input);
+			map.put(key, readString(input));
+		}
+		return map;
+	}
+
+	private void writeStrings(DataOutputStream output, Collection<String> values) throws IOException {
+		if (values == null) {
+			output.writeInt(-1);
+			return;
+		}
+		output.writeInt(values.size());
+		for (String value : values) {
+			writeString(output, value);
+		}
+	}
+
+	private Set<String> readStrings(DataInputStream input) throws IOException {
+		int size = input.readInt();
+		if (size < 0) {
+			return null;
+		}
+		Set<String> values = new LinkedHashSet<String>();
+		for (int i = 0; i < size; i++) {
+			values.add(readString(input));
+		}
+		return values;
+	}
+
+	private void writeDate(DataOutputStream output, Date date) throws IOException {
+		output.writeBoolean(date != null);
+		if (date != null) {
+			output.writeLong(date.getTime());
+		}
+	}
+
+	private Date readDate(DataInputStream input) throws IOException {
+		return input.readBoolean() ? new Date(input.readLong()) : null;
+	}
+
+	private void writeString(DataOutputStream output, String value) throws IOException {
+		if (value == null) {
+			output.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private String readString(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+}
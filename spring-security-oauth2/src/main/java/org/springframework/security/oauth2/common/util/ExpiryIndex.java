@@ -0,0 +1,158 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.common.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A concurrent index of keys by expiry time, grouped into buckets of fixed width (one second by default). Adding and
+ * removing a key only touches its own bucket, and expiring keys drops whole buckets from the head of the index, so the
+ * cost of a sweep is proportional to the number of keys that actually expired.
+ *
+ * @param <K> the key type
+ */
+public class ExpiryIndex<K> {
+
+	private final ConcurrentSkipListMap<Long, Set<K>> buckets = new ConcurrentSkipListMap<Long, Set<K>>();
+
+	private final ConcurrentHashMap<K, Long> keys = new ConcurrentHashMap<K, Long>();
+
+	private final long resolution;
+
+	/**
+	 * Create an index with one second buckets.
+	 */
+	public ExpiryIndex() {
+		this(1000L);
+	}
+
+	/**
+	 * @param resolution the width of a bucket in milliseconds
+	 */
+	public ExpiryIndex(long resolution) {
+		this.resolution = resolution;
+	}
+
+	/**
+	 * Add a key, or move it if it is already present.
+	 *
+	 * @param key the key
+	 * @param expiry the time (in milliseconds since the epoch) after which the key expires
+	 */
+	public void put(K key, long expiry) {
+		Long bucket = expiry / resolution;
+		Long previous = keys.put(key, bucket);
+		if (previous != null && !previous.equals(bucket)) {
+			removeFromBucket(key, previous);
+		}
+		while (true) {
+			Set<K> set = buckets.get(bucket);
+			if (set == null) {
+				Set<K> created = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+				set = buckets.putIfAbsent(bucket, created);
+				if (set == null) {
+					set = created;
+				}
+			}
+			set.add(key);
+			if (buckets.get(bucket) == set) {
+				return;
+			}
+			// The bucket was swept concurrently (the key was already expired): try again so it is not lost
+		}
+	}
+
+	/**
+	 * @param key the key to remove
+	 */
+	public void remove(K key) {
+		Long bucket = keys.remove(key);
+		if (bucket != null) {
+			removeFromBucket(key, bucket);
+		}
+	}
+
+	/**
+	 * Remove and return all keys in buckets that ended at or before the time provided.
+	 *
+	 * @param now the current time in milliseconds
+	 * @return the expired keys
+	 */
+	public List<K> expire(long now) {
+		long limit = now / resolution;
+		List<K> expired = new ArrayList<K>();
+		Map.Entry<Long, Set<K>> entry = buckets.firstEntry();
+		while (entry != null && entry.getKey() < limit) {
+			if (buckets.remove(entry.getKey(), entry.getValue())) {
+				for (K key : entry.getValue()) {
+					// Only if it wasn't moved to another bucket in the meantime
+					if (keys.remove(key, entry.getKey())) {
+						expired.add(key);
+					}
+				}
+			}
+			entry = buckets.firstEntry();
+		}
+		return expired;
+	}
+
+	/**
+	 * Remove and return (at most) the given number of keys that expire soonest, e.g. to make room when a capacity
+	 * limit is reached. Keys in the same bucket are removed in no particular order. Buckets that are left empty are
+	 * dropped by the next call to {@link #expire(long)}.
+	 *
+	 * @param count the maximum number of keys to remove
+	 * @return the removed keys
+	 */
+	public List<K> removeEarliest(int count) {
+		List<K> removed = new ArrayList<K>();
+		for (Map.Entry<Long, Set<K>> entry : buckets.entrySet()) {
+			for (K key : entry.getValue()) {
+				if (removed.size() >= count) {
+					return removed;
+				}
+				if (keys.remove(key, entry.getKey())) {
+					entry.getValue().remove(key);
+					removed.add(key);
+				}
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @return the number of keys in the index
+	 */
+	public int size() {
+		return keys.size();
+	}
+
+	public void clear() {
+		keys.clear();
+		buckets.clear();
+	}
+
+	private void removeFromBucket(K key, Long bucket) {
+		Set<K> set = buckets.get(bucket);
+		if (set != null) {
+			set.remove(key);
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.common.util;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+/**
+ * Support for removing old rows (e.g. expired tokens) in batches, so that no single statement holds locks on a table
+ * for long.
+ */
+public abstract class JdbcBatchUtils {
+
+	/**
+	 * Delete the rows selected by a query, a batch at a time, until a batch is not full or deletes nothing. The second
+	 * condition stops the loop when the delete statement does not match what the query selects (e.g. rows with a null
+	 * id), which would otherwise be selected again forever.
+	 *
+	 * @param jdbcTemplate the JDBC template to use
+	 * @param selectSql a query for the ids of the rows to delete, with the timestamp as its only parameter
+	 * @param deleteSql a statement deleting one row, with its id and the timestamp as parameters
+	 * @param timestamp the timestamp to pass to both statements
+	 * @param batchSize the maximum number of rows to delete in one batch
+	 * @return the number of rows deleted
+	 * @throws DataAccessException if a statement fails
+	 */
+	public static int deleteInBatches(JdbcOperations jdbcTemplate, String selectSql, String deleteSql,
+			final Timestamp timestamp, final int batchSize) throws DataAccessException {
+		int count = 0;
+		while (true) {
+			final List<String> batch = jdbcTemplate.query(selectSql, new PreparedStatementSetter() {
+				public void setValues(PreparedStatement ps) throws SQLException {
+					ps.setTimestamp(1, timestamp);
+					ps.setMaxRows(batchSize);
+				}
+			}, new ResultSetExtractor<List<String>>() {
+				public List<String> extractData(ResultSet rs) throws SQLException {
+					List<String> ids = new ArrayList<String>();
+					while (ids.size() < batchSize && rs.next()) {
+						ids.add(rs.getString(1));
+					}
+					return ids;
+				}
+			});
+			if (batch.isEmpty()) {
+				return count;
+			}
+			int[] updates = jdbcTemplate.batchUpdate(deleteSql, new BatchPreparedStatementSetter() {
+				public void setValues(PreparedStatement ps, int i) throws SQLException {
+					ps.setString(1, batch.get(i));
+					ps.setTimestamp(2, timestamp);
+				}
+
+				public int getBatchSize() {
+					return batch.size();
+				}
+			});
+			int deleted = 0;
+			for (int updated : updates) {
+				// Some drivers only report that the statement succeeded
+				deleted += updated == PreparedStatement.SUCCESS_NO_INFO ? 1 : updated;
+			}
+			count += deleted;
+			if (batch.size() < batchSize || deleted == 0) {
+				return count;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.common.util;
+
+/**
+ * A {@link TokenSerializer} that uses plain Java serialization. Use this if you need to share a database with older
+ * versions that cannot read the format written by {@link CompactTokenSerializer}.
+ */
+public class JdkTokenSerializer implements TokenSerializer {
+
+	public byte[] serialize(Object object) {
+		return SerializationUtils.serialize(object);
+	}
+
+	public <T> T deserialize(byte[] bytes) {
+		return SerializationUtils.<T> deserialize(bytes);
+	}
+
+}
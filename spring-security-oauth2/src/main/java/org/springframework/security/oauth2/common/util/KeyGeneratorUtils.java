@@ -0,0 +1,167 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.common.util;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Support for the key generators that identify a token by user name, client id and scope. The key is the hex encoded
+ * MD5 digest of <code>{username=..., client_id=..., scope=...}</code> (the username and scope entries being optional,
+ * and null values written as <code>null</code>),
+ * which is what the key generators have always used, so keys already stored remain valid. The text is encoded straight
+ * into a per-thread buffer and digest, so no intermediate maps or strings are created.
+ */
+public abstract class KeyGeneratorUtils {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static final ThreadLocal<KeyDigest> DIGESTS = new ThreadLocal<KeyDigest>() {
+		@Override
+		protected KeyDigest initialValue() {
+			return new KeyDigest();
+		}
+	};
+
+	/**
+	 * @param includeUsername whether the key includes the user name (even if it is null)
+	 * @param username the user name
+	 * @param clientId the client id
+	 * @param scope the scope (or null if there is none)
+	 * @return a 32 character hex key
+	 */
+	public static String extractKey(boolean includeUsername, String username, String clientId,
+			Collection<String> scope) {
+		KeyDigest digest = DIGESTS.get();
+		digest.reset();
+		digest.append('{');
+		if (includeUsername) {
+			digest.append("username=");
+			digest.append(username);
+			digest.append(", ");
+		}
+		digest.append("client_id=");
+		digest.append(clientId);
+		if (scope != null) {
+			digest.append(", scope=");
+			for (Iterator<String> iterator = scope.iterator(); iterator.hasNext();) {
+				digest.append(iterator.next());
+				if (iterator.hasNext()) {
+					digest.append(' ');
+				}
+			}
+		}
+		digest.append('}');
+		return digest.digest();
+	}
+
+	private static class KeyDigest {
+
+		private final MessageDigest md5;
+
+		private final byte[] result = new byte[16];
+
+		private final char[] hex = new char[32];
+
+		private byte[] buffer = new byte[256];
+
+		private int length;
+
+		public KeyDigest() {
+			try {
+				md5 = MessageDigest.getInstance("MD5");
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("MD5 algorithm not available.  Fatal (should be in the JDK).");
+			}
+		}
+
+		public void reset() {
+			length = 0;
+		}
+
+		public void append(String value) {
+			if (value == null) {
+				value = "null";
+			}
+			int count = value.length();
+			for (int i = 0; i < count; i++) {
+				char c = value.charAt(i);
+				if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(value.charAt(i + 1))) {
+					appendCodePoint(Character.toCodePoint(c, value.charAt(++i)));
+				}
+				else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+					// Unpaired surrogates are replaced, as in String.getBytes("UTF-8")
+					append('?');
+				}
+				else {
+					appendCodePoint(c);
+				}
+			}
+		}
+
+		public void append(char c) {
+			appendCodePoint(c);
+		}
+
+		private void appendCodePoint(int codePoint) {
+			ensureCapacity(length + 4);
+			if (codePoint < 0x80) {
+				buffer[length++] = (byte) codePoint;
+			}
+			else if (codePoint < 0x800) {
+				buffer[length++] = (byte) (0xc0 | (codePoint >> 6));
+				buffer[length++] = (byte) (0x80 | (codePoint & 0x3f));
+			}
+			else if (codePoint < 0x10000) {
+				buffer[length++] = (byte) (0xe0 | (codePoint >> 12));
+				buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				buffer[length++] = (byte) (0x80 | (codePoint & 0x3f));
+			}
+			else {
+				buffer[length++] = (byte) (0xf0 | (codePoint >> 18));
+				buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+				buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				buffer[length++] = (byte) (0x80 | (codePoint & 0x3f));
+			}
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > buffer.length) {
+				byte[] expanded = new byte[Math.max(capacity, buffer.length * 2)];
+				System.arraycopy(buffer, 0, expanded, 0, length);
+				buffer = expanded;
+			}
+		}
+
+		public String digest() {
+			md5.update(buffer, 0, length);
+			try {
+				md5.digest(result, 0, result.length);
+			}
+			catch (DigestException e) {
+				throw new IllegalStateException("Cannot compute MD5 digest", e);
+			}
+			for (int i = 0; i < result.length; i++) {
+				hex[2 * i] = HEX[(result[i] >> 4) & 0xf];
+				hex[2 * i + 1] = HEX[result[i] & 0xf];
+			}
+			return new String(hex);
+		}
+
+	}
+
+}
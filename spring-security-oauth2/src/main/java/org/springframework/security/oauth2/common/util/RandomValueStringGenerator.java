@@ -1,20 +1,21 @@
 package org.springframework.security.oauth2.common.util;
 
-import java.security.SecureRandom;
 import java.util.Random;
 
 /**
- * Utility that generates a random-value ASCII string.
+ * Utility that generates a random-value ASCII string. Unless a {@link #setRandom(Random) random value generator} is
+ * provided, each thread uses its own {@link java.security.SecureRandom}, so that concurrent callers do not contend for
+ * a lock.
  * 
  * @author Ryan Heaton
  * @author Dave Syer
  */
-public class RandomValueStringGenerator {
+public class RandomValueStringGenerator implements TokenValueGenerator {
 
 	private static final char[] DEFAULT_CODEC = "1234567890ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"
 			.toCharArray();
 
-	private Random random = new SecureRandom();
+	private Random random;
 
 	private int length;
 
@@ -36,6 +37,7 @@ public class RandomValueStringGenerator {
 
 	public String generate() {
 		byte[] verifierBytes = new byte[length];
+		Random random = this.random != null ? this.random : ThreadLocalSecureRandom.current();
 		random.nextBytes(verifierBytes);
 		return getAuthorizationCodeString(verifierBytes);
 	}
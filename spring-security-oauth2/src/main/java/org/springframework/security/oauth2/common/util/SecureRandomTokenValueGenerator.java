@@ -0,0 +1,82 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.common.util;
+
+import org.springframework.util.Assert;
+
+/**
+ * Generates token values from a configurable number of bytes from a {@link java.security.SecureRandom}, encoded with
+ * the URL-safe Base64 alphabet (and no padding), so that values can be used in URLs and headers without escaping.
+ * Each thread has its own random number generator, so concurrent callers never wait for each other.
+ */
+public class SecureRandomTokenValueGenerator implements TokenValueGenerator {
+
+	private static final char[] URL_SAFE_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+			.toCharArray();
+
+	private int entropyBytes;
+
+	/**
+	 * Create a generator of values with 128 bits of entropy (22 characters).
+	 */
+	public SecureRandomTokenValueGenerator() {
+		this(16);
+	}
+
+	/**
+	 * @param entropyBytes the number of random bytes in each value
+	 */
+	public SecureRandomTokenValueGenerator(int entropyBytes) {
+		setEntropyBytes(entropyBytes);
+	}
+
+	/**
+	 * The number of random bytes in each value. Each byte adds 8 bits of entropy and 4/3 characters to the value.
+	 * 
+	 * @param entropyBytes the number of bytes to set
+	 */
+	public void setEntropyBytes(int entropyBytes) {
+		Assert.isTrue(entropyBytes > 0, "Entropy bytes must be positive");
+		this.entropyBytes = entropyBytes;
+	}
+
+	public String generate() {
+		byte[] bytes = new byte[entropyBytes];
+		ThreadLocalSecureRandom.current().nextBytes(bytes);
+		return encode(bytes);
+	}
+
+	private static String encode(byte[] bytes) {
+		char[] chars = new char[(bytes.length * 8 + 5) / 6];
+		int index = 0;
+		int i = 0;
+		for (; i + 2 < bytes.length; i += 3) {
+			int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+			chars[index++] = URL_SAFE_ALPHABET[bits >>> 18];
+			chars[index++] = URL_SAFE_ALPHABET[(bits >>> 12) & 0x3f];
+			chars[index++] = URL_SAFE_ALPHABET[(bits >>> 6) & 0x3f];
+			chars[index++] = URL_SAFE_ALPHABET[bits & 0x3f];
+		}
+		int remaining = bytes.length - i;
+		if (remaining > 0) {
+			int bits = (bytes[i] & 0xff) << 16 | (remaining == 2 ? (bytes[i + 1] & 0xff) << 8 : 0);
+			chars[index++] = URL_SAFE_ALPHABET[bits >>> 18];
+			chars[index++] = URL_SAFE_ALPHABET[(bits >>> 12) & 0x3f];
+			if (remaining == 2) {
+				chars[index++] = URL_SAFE_ALPHABET[(bits >>> 6) & 0x3f];
+			}
+		}
+		return new String(chars);
+	}
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.common.util;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Holds a separate {@link SecureRandom} for each thread, so that threads generating random values do not contend for
+ * the lock of a shared instance.
+ */
+final class ThreadLocalSecureRandom {
+
+	private static final ThreadLocal<SecureRandom> RANDOM = new ThreadLocal<SecureRandom>() {
+		@Override
+		protected SecureRandom initialValue() {
+			return create();
+		}
+	};
+
+	private ThreadLocalSecureRandom() {
+	}
+
+	/**
+	 * @return the random number generator of the current thread
+	 */
+	static SecureRandom current() {
+		return RANDOM.get();
+	}
+
+	private static SecureRandom create() {
+		SecureRandom random;
+		try {
+			// Instances of the platform default (e.g. NativePRNG) can share a single lock, this one has none
+			random = SecureRandom.getInstance("SHA1PRNG");
+		}
+		catch (NoSuchAlgorithmException e) {
+			random = new SecureRandom();
+		}
+		// Seed it from the system source now rather than on first use
+		random.nextBytes(new byte[1]);
+		return random;
+	}
+
+}
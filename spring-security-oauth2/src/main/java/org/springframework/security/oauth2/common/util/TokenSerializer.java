@@ -0,0 +1,35 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.common.util;
+
+/**
+ * Strategy for converting tokens, authentications and related state to and from the binary form that is persisted by
+ * the JDBC token stores.
+ */
+public interface TokenSerializer {
+
+	/**
+	 * @param object the object to encode (e.g. a token or an authentication)
+	 * @return the encoded form
+	 * @throws IllegalArgumentException if the object cannot be encoded
+	 */
+	byte[] serialize(Object object);
+
+	/**
+	 * @param bytes the encoded form, as previously created by {@link #serialize(Object)}
+	 * @return the decoded object
+	 * @throws IllegalArgumentException if the bytes cannot be decoded
+	 */
+	<T> T deserialize(byte[] bytes);
+
+}
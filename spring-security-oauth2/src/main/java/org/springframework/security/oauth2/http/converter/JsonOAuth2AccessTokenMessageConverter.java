@@ -0,0 +1,173 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.http.converter;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.io.SerializedString;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessTokenSerializer;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Converter that writes access tokens as JSON straight to the response stream, in exactly the format produced by
+ * {@link OAuth2AccessTokenSerializer}, but without going through the general purpose Jackson serialization machinery:
+ * the field names are encoded once, a single scope is written as it is, and the object mapper is only consulted for
+ * additional information values that are not plain strings. Register it ahead of the default JSON
+ * converter (e.g. in <code>&lt;mvc:message-converters/&gt;</code>) so that it is picked first for token endpoint
+ * responses. Tokens are read with the standard deserializer.
+ *
+ * @see OAuth2AccessTokenSerializer
+ */
+public class JsonOAuth2AccessTokenMessageConverter extends AbstractHttpMessageConverter<OAuth2AccessToken> {
+
+	public static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+	private static final SerializedString ACCESS_TOKEN = new SerializedString(OAuth2AccessToken.ACCESS_TOKEN);
+
+	private static final SerializedString TOKEN_TYPE = new SerializedString(OAuth2AccessToken.TOKEN_TYPE);
+
+	private static final SerializedString REFRESH_TOKEN = new SerializedString(OAuth2AccessToken.REFRESH_TOKEN);
+
+	private static final SerializedString EXPIRES_IN = new SerializedString(OAuth2AccessToken.EXPIRES_IN);
+
+	private static final SerializedString SCOPE = new SerializedString(OAuth2AccessToken.SCOPE);
+
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	public JsonOAuth2AccessTokenMessageConverter() {
+		super(new MediaType("application", "json", DEFAULT_CHARSET));
+	}
+
+	/**
+	 * The object mapper used to read tokens and to write additional information values that are not strings. The
+	 * default is a plain {@link ObjectMapper}, as in the Spring MVC default JSON converter.
+	 *
+	 * @param objectMapper the object mapper to set
+	 */
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		Assert.notNull(objectMapper, "ObjectMapper must not be null");
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return OAuth2AccessToken.class.isAssignableFrom(clazz);
+	}
+
+	@Override
+	protected OAuth2AccessToken readInternal(Class<? extends OAuth2AccessToken> clazz, HttpInputMessage inputMessage)
+			throws IOException, HttpMessageNotReadableException {
+		try {
+			return objectMapper.readValue(inputMessage.getBody(), OAuth2AccessToken.class);
+		}
+		catch (JsonProcessingException ex) {
+			throw new HttpMessageNotReadableException("Could not read JSON: " + ex.getMessage(), ex);
+		}
+	}
+
+	@Override
+	protected void writeInternal(OAuth2AccessToken token, HttpOutputMessage outputMessage) throws IOException,
+			HttpMessageNotWritableException {
+		JsonGenerator jgen = objectMapper.getJsonFactory().createJsonGenerator(outputMessage.getBody(),
+				JsonEncoding.UTF8);
+		try {
+			write(token, jgen);
+			jgen.flush();
+		}
+		catch (JsonProcessingException ex) {
+			throw new HttpMessageNotWritableException("Could not write JSON: " + ex.getMessage(), ex);
+		}
+		catch (IllegalArgumentException ex) {
+			throw new HttpMessageNotWritableException("Could not write JSON: " + ex.getMessage(), ex);
+		}
+	}
+
+	private void write(OAuth2AccessToken token, JsonGenerator jgen) throws IOException {
+		jgen.writeStartObject();
+		jgen.writeFieldName(ACCESS_TOKEN);
+		jgen.writeString(token.getValue());
+		jgen.writeFieldName(TOKEN_TYPE);
+		jgen.writeString(token.getTokenType());
+		OAuth2RefreshToken refreshToken = token.getRefreshToken();
+		if (refreshToken != null) {
+			jgen.writeFieldName(REFRESH_TOKEN);
+			jgen.writeString(refreshToken.getValue());
+		}
+		Date expiration = token.getExpiration();
+		if (expiration != null) {
+			long now = System.currentTimeMillis();
+			jgen.writeFieldName(EXPIRES_IN);
+			jgen.writeNumber((expiration.getTime() - now) / 1000);
+		}
+		Set<String> scope = token.getScope();
+		if (scope != null && !scope.isEmpty()) {
+			jgen.writeFieldName(SCOPE);
+			jgen.writeString(getScopeString(scope));
+		}
+		Map<String, Object> additionalInformation = token.getAdditionalInformation();
+		if (!additionalInformation.isEmpty()) {
+			for (Map.Entry<String, Object> entry : additionalInformation.entrySet()) {
+				jgen.writeFieldName(entry.getKey());
+				Object value = entry.getValue();
+				if (value instanceof String) {
+					jgen.writeString((String) value);
+				}
+				else {
+					jgen.writeObject(value);
+				}
+			}
+		}
+		jgen.writeEndObject();
+	}
+
+	private String getScopeString(Set<String> scope) {
+		if (scope.size() == 1) {
+			return checkScope(scope.iterator().next(), scope);
+		}
+		StringBuilder builder = new StringBuilder(scope.size() * 8);
+		for (Iterator<String> iterator = scope.iterator(); iterator.hasNext();) {
+			builder.append(checkScope(iterator.next(), scope));
+			if (iterator.hasNext()) {
+				builder.append(' ');
+			}
+		}
+		return builder.toString();
+	}
+
+	private String checkScope(String value, Set<String> scope) {
+		// Only build the message if it is needed
+		if (!StringUtils.hasLength(value)) {
+			throw new IllegalArgumentException("Scopes cannot be null or empty. Got " + scope);
+		}
+		return value;
+	}
+
+}
@@ -13,6 +13,8 @@
 package org.springframework.security.oauth2.http.converter.jaxb;
 
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -31,6 +33,10 @@ import org.springframework.http.converter.HttpMessageNotWritableException;
 import org.springframework.http.converter.xml.AbstractXmlHttpMessageConverter;
 
 /**
+ * Base class for converters that map an external (API) type to an internal JAXB annotated type. The
+ * {@link JAXBContext} is created once per internal type and shared, since it is thread safe and expensive to create.
+ * Marshallers and unmarshallers are not thread safe, so each thread gets its own, created on first use.
+ *
  * @author Rob Winch
  *
  * @param <I>
@@ -39,22 +45,23 @@ import org.springframework.http.converter.xml.AbstractXmlHttpMessageConverter;
 @SuppressWarnings("restriction")
 abstract class AbstractJaxbMessageConverter<I, E> extends AbstractXmlHttpMessageConverter<E> {
 
+	private static final ConcurrentMap<Class<?>, JAXBContext> contexts = new ConcurrentHashMap<Class<?>, JAXBContext>();
+
 	private final Class<I> internalClass;
 
 	private final Class<E> externalClass;
 
-	private final Unmarshaller unmarshaller;
+	private final JAXBContext context;
+
+	private final ThreadLocal<Unmarshaller> unmarshallers = new ThreadLocal<Unmarshaller>();
 
-	private final Marshaller marshaller;
+	private final ThreadLocal<Marshaller> marshallers = new ThreadLocal<Marshaller>();
 
 	public AbstractJaxbMessageConverter(Class<I> internalClass, Class<E> externalClass) {
 		this.internalClass = internalClass;
 		this.externalClass = externalClass;
 		try {
-			JAXBContext context = JAXBContext.newInstance(this.internalClass);
-			this.unmarshaller = context.createUnmarshaller();
-			this.marshaller = context.createMarshaller();
-			this.marshaller.setProperty("jaxb.fragment", Boolean.TRUE);
+			this.context = getContext(internalClass);
 		}
 		catch (JAXBException e) {
 			throw new RuntimeException(e);
@@ -64,7 +71,7 @@ abstract class AbstractJaxbMessageConverter<I, E> extends AbstractXmlHttpMessage
 	@Override
 	protected final E readFromSource(Class<? extends E> clazz, HttpHeaders headers, Source source) throws IOException {
 		try {
-			JAXBElement<? extends I> jaxbElement = unmarshaller.unmarshal(source, internalClass);
+			JAXBElement<? extends I> jaxbElement = getUnmarshaller().unmarshal(source, internalClass);
 			return convertToExternal(jaxbElement.getValue());
 		}
 		catch (UnmarshalException ex) {
@@ -79,7 +86,7 @@ abstract class AbstractJaxbMessageConverter<I, E> extends AbstractXmlHttpMessage
 	protected final void writeToResult(E accessToken, HttpHeaders headers, Result result) throws IOException {
 		I convertedAccessToken = convertToInternal(accessToken);
 		try {
-			marshaller.marshal(convertedAccessToken, result);
+			getMarshaller().marshal(convertedAccessToken, result);
 		}
 		catch (MarshalException ex) {
 			throw new HttpMessageNotWritableException("Could not marshal [" + accessToken + "]: " + ex.getMessage(), ex);
@@ -97,4 +104,35 @@ abstract class AbstractJaxbMessageConverter<I, E> extends AbstractXmlHttpMessage
 	protected abstract E convertToExternal(I internalValue);
 
 	protected abstract I convertToInternal(E externalValue);
+
+	private Unmarshaller getUnmarshaller() throws JAXBException {
+		Unmarshaller unmarshaller = unmarshallers.get();
+		if (unmarshaller == null) {
+			unmarshaller = context.createUnmarshaller();
+			unmarshallers.set(unmarshaller);
+		}
+		return unmarshaller;
+	}
+
+	private Marshaller getMarshaller() throws JAXBException {
+		Marshaller marshaller = marshallers.get();
+		if (marshaller == null) {
+			marshaller = context.createMarshaller();
+			marshaller.setProperty("jaxb.fragment", Boolean.TRUE);
+			marshallers.set(marshaller);
+		}
+		return marshaller;
+	}
+
+	private static JAXBContext getContext(Class<?> type) throws JAXBException {
+		JAXBContext context = contexts.get(type);
+		if (context == null) {
+			context = JAXBContext.newInstance(type);
+			JAXBContext existing = contexts.putIfAbsent(type, context);
+			if (existing != null) {
+				context = existing;
+			}
+		}
+		return context;
+	}
 }
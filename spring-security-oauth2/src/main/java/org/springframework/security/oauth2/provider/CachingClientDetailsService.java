@@ -0,0 +1,228 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.util.Assert;
+
+/**
+ * Read-through cache for a {@link ClientDetailsService}. A single token request loads the same client several times
+ * (to validate the request, create the authorization request, grant the token and look up the token validity), so
+ * caching the client saves a round trip to the store for all but the first.
+ * <p>
+ * The cache is bounded in size and entries expire after a configurable time to live. Registration changes made through
+ * this instance (if the delegate is a {@link ClientRegistrationService}) evict the client immediately (even if the
+ * delegate fails part way) and, once the delegate has accepted them, are reported to the
+ * {@link ClientDetailsChangeListener listener} if there is one, so that other nodes can call {@link #evict(String)} in
+ * turn. Changes that bypass all the caches are visible after at most the time to live.
+ */
+public class CachingClientDetailsService implements ClientDetailsService, ClientRegistrationService {
+
+	private static final int DEFAULT_MAX_SIZE = 1000;
+
+	private static final int DEFAULT_TIME_TO_LIVE_SECONDS = 60;
+
+	private final ClientDetailsService delegate;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	// Incremented on every eviction, so that a load that overlaps an eviction is not cached
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	private volatile int maxSize = DEFAULT_MAX_SIZE;
+
+	private int timeToLiveSeconds = DEFAULT_TIME_TO_LIVE_SECONDS;
+
+	private ClientDetailsChangeListener changeListener;
+
+	private final Map<String, CacheEntry> cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+			return size() > maxSize;
+		}
+	};
+
+	public CachingClientDetailsService(ClientDetailsService delegate) {
+		Assert.notNull(delegate, "Delegate client details service is required");
+		this.delegate = delegate;
+	}
+
+	/**
+	 * The maximum number of clients to cache (default 1000). The least recently used entries are discarded first.
+	 *
+	 * @param maxSize the maximum size to set
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * The maximum time in seconds to cache a client (default 60).
+	 *
+	 * @param timeToLiveSeconds the time to live to set
+	 */
+	public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+		this.timeToLiveSeconds = timeToLiveSeconds;
+	}
+
+	/**
+	 * A listener to notify when a client is added, updated or removed through this instance (e.g. to broadcast an
+	 * eviction to other nodes).
+	 *
+	 * @param changeListener the change listener to set
+	 */
+	public void setChangeListener(ClientDetailsChangeListener changeListener) {
+		this.changeListener = changeListener;
+	}
+
+	/**
+	 * @return the number of lookups that were served from the cache
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return the number of lookups that had to be passed to the delegate
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public ClientDetails loadClientByClientId(String clientId) throws OAuth2Exception {
+		long now = System.currentTimeMillis();
+		synchronized (cache) {
+			CacheEntry entry = cache.get(clientId);
+			if (entry != null) {
+				if (entry.expiry > now) {
+					hitCount.incrementAndGet();
+					return entry.clientDetails;
+				}
+				cache.remove(clientId);
+			}
+		}
+		missCount.incrementAndGet();
+		long evictions = evictionCount.get();
+		// Let the delegate throw an exception if the client is not found
+		ClientDetails clientDetails = delegate.loadClientByClientId(clientId);
+		if (clientDetails != null && maxSize > 0) {
+			synchronized (cache) {
+				if (evictionCount.get() == evictions) {
+					cache.put(clientId, new CacheEntry(clientDetails, now + timeToLiveSeconds * 1000L));
+				}
+			}
+		}
+		return clientDetails;
+	}
+
+	/**
+	 * Remove a client from the cache (but not from the underlying store), e.g. when it was changed on another node.
+	 *
+	 * @param clientId the id of the client to evict
+	 */
+	public void evict(String clientId) {
+		synchronized (cache) {
+			evictionCount.incrementAndGet();
+			cache.remove(clientId);
+		}
+	}
+
+	/**
+	 * Remove all clients from the cache.
+	 */
+	public void clear() {
+		synchronized (cache) {
+			evictionCount.incrementAndGet();
+			cache.clear();
+		}
+	}
+
+	public void addClientDetails(ClientDetails clientDetails) throws ClientAlreadyExistsException {
+		try {
+			getClientRegistrationService().addClientDetails(clientDetails);
+		}
+		finally {
+			evict(clientDetails.getClientId());
+		}
+		changed(clientDetails.getClientId());
+	}
+
+	public void updateClientDetails(ClientDetails clientDetails) throws NoSuchClientException {
+		try {
+			getClientRegistrationService().updateClientDetails(clientDetails);
+		}
+		finally {
+			evict(clientDetails.getClientId());
+		}
+		changed(clientDetails.getClientId());
+	}
+
+	public void updateClientSecret(String clientId, String secret) throws NoSuchClientException {
+		try {
+			getClientRegistrationService().updateClientSecret(clientId, secret);
+		}
+		finally {
+			evict(clientId);
+		}
+		changed(clientId);
+	}
+
+	public void removeClientDetails(String clientId) throws NoSuchClientException {
+		try {
+			getClientRegistrationService().removeClientDetails(clientId);
+		}
+		finally {
+			evict(clientId);
+		}
+		changed(clientId);
+	}
+
+	public List<ClientDetails> listClientDetails() {
+		return getClientRegistrationService().listClientDetails();
+	}
+
+	private void changed(String clientId) {
+		if (changeListener != null) {
+			changeListener.clientDetailsChanged(clientId);
+		}
+	}
+
+	private ClientRegistrationService getClientRegistrationService() {
+		Assert.state(delegate instanceof ClientRegistrationService, "Delegate client details service does not implement "
+				+ ClientRegistrationService.class.getSimpleName());
+		return (ClientRegistrationService) delegate;
+	}
+
+	private static class CacheEntry {
+
+		private final ClientDetails clientDetails;
+
+		private final long expiry;
+
+		public CacheEntry(ClientDetails clientDetails, long expiry) {
+			this.clientDetails = clientDetails;
+			this.expiry = expiry;
+		}
+
+	}
+
+}
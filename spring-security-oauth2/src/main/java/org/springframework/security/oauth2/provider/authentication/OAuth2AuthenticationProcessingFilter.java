@@ -33,9 +33,11 @@ import org.springframework.security.authentication.InsufficientAuthenticationExc
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.error.OAuth2AuthenticationEntryPoint;
+import org.springframework.security.oauth2.provider.token.RejectedTokenCache;
 import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
 import org.springframework.util.Assert;
@@ -58,6 +60,8 @@ public class OAuth2AuthenticationProcessingFilter implements Filter, Initializin
 
 	private AuthenticationDetailsSource<HttpServletRequest, ?> authenticationDetailsSource = new OAuth2AuthenticationDetailsSource();
 
+	private RejectedTokenCache rejectedTokenCache;
+
 	/**
 	 * @param authenticationEntryPoint the authentication entry point to set
 	 */
@@ -81,6 +85,16 @@ public class OAuth2AuthenticationProcessingFilter implements Filter, Initializin
         this.authenticationDetailsSource = authenticationDetailsSource;
     }
 
+	/**
+	 * Optional record of recently rejected token values. If set, requests carrying one of them are turned away without
+	 * calling the authentication manager, and tokens that the authentication manager finds invalid are added to it.
+	 * 
+	 * @param rejectedTokenCache the rejected token cache to set
+	 */
+	public void setRejectedTokenCache(RejectedTokenCache rejectedTokenCache) {
+		this.rejectedTokenCache = rejectedTokenCache;
+	}
+
 	public void afterPropertiesSet() {
 		Assert.state(authenticationManager != null, "AuthenticationManager is required");
 	}
@@ -101,11 +115,23 @@ public class OAuth2AuthenticationProcessingFilter implements Filter, Initializin
 				}
 			}
 			else {
+				if (rejectedTokenCache != null && rejectedTokenCache.isRejected(tokenValue)) {
+					throw new InvalidTokenException("Invalid access token: " + tokenValue);
+				}
 				PreAuthenticatedAuthenticationToken authentication = new PreAuthenticatedAuthenticationToken(
 						tokenValue, "");
 				request.setAttribute(OAuth2AuthenticationDetails.ACCESS_TOKEN_VALUE, tokenValue);
 				authentication.setDetails(authenticationDetailsSource.buildDetails(request));
-				Authentication authResult = authenticationManager.authenticate(authentication);
+				Authentication authResult;
+				try {
+					authResult = authenticationManager.authenticate(authentication);
+				}
+				catch (InvalidTokenException e) {
+					if (rejectedTokenCache != null) {
+						rejectedTokenCache.reject(tokenValue);
+					}
+					throw e;
+				}
 
 				if (debug) {
 					logger.debug("Authentication success: " + authResult);
@@ -1,26 +1,140 @@
 package org.springframework.security.oauth2.provider.code;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.security.oauth2.common.util.ExpiryIndex;
+import org.springframework.util.Assert;
 
 /**
- * Implementation of authorization code services that stores the codes and authentication in memory.
+ * Implementation of authorization code services that stores the codes and authentication in memory. Codes that are
+ * not redeemed within the {@link #setCodeValiditySeconds(int) validity period} expire (to within a second), and the
+ * number of codes held is capped, so that abandoned authorizations cannot fill up the heap. Expired codes are removed
+ * as a side effect of issuing and redeeming codes, in time proportional to the number that expired.
  * 
  * @author Ryan Heaton
  * @author Dave Syer
  */
 public class InMemoryAuthorizationCodeServices extends RandomValueAuthorizationCodeServices {
 
+	private static final int DEFAULT_CODE_VALIDITY_SECONDS = 600;
+
+	private static final int DEFAULT_MAX_CODES = 100000;
+
 	protected final ConcurrentHashMap<String, AuthorizationRequestHolder> authorizationCodeStore = new ConcurrentHashMap<String, AuthorizationRequestHolder>();
 
+	private final ExpiryIndex<String> expiryIndex = new ExpiryIndex<String>();
+
+	private int codeValiditySeconds = DEFAULT_CODE_VALIDITY_SECONDS;
+
+	private int maxCodes = DEFAULT_MAX_CODES;
+
+	private final AtomicLong issuedCodeCount = new AtomicLong();
+
+	private final AtomicLong redeemedCodeCount = new AtomicLong();
+
+	private final AtomicLong expiredCodeCount = new AtomicLong();
+
+	private final AtomicLong evictedCodeCount = new AtomicLong();
+
+	/**
+	 * The time in seconds for which an authorization code can be redeemed (default 600).
+	 * 
+	 * @param codeValiditySeconds the validity period to set
+	 */
+	public void setCodeValiditySeconds(int codeValiditySeconds) {
+		this.codeValiditySeconds = codeValiditySeconds;
+	}
+
+	/**
+	 * The maximum number of codes to hold (default 100000). When it is reached, the codes that would expire soonest are
+	 * discarded to make room for new ones.
+	 * 
+	 * @param maxCodes the maximum number of codes to set
+	 */
+	public void setMaxCodes(int maxCodes) {
+		Assert.isTrue(maxCodes > 0, "Maximum number of codes must be positive");
+		this.maxCodes = maxCodes;
+	}
+
+	/**
+	 * @return the number of codes currently held
+	 */
+	public int getCodeCount() {
+		return authorizationCodeStore.size();
+	}
+
+	/**
+	 * @return the number of codes that have been issued
+	 */
+	public long getIssuedCodeCount() {
+		return issuedCodeCount.get();
+	}
+
+	/**
+	 * @return the number of codes that have been redeemed
+	 */
+	public long getRedeemedCodeCount() {
+		return redeemedCodeCount.get();
+	}
+
+	/**
+	 * @return the number of codes that expired before they were redeemed
+	 */
+	public long getExpiredCodeCount() {
+		return expiredCodeCount.get();
+	}
+
+	/**
+	 * @return the number of codes that were discarded because the maximum number of codes was reached
+	 */
+	public long getEvictedCodeCount() {
+		return evictedCodeCount.get();
+	}
+
 	@Override
 	protected void store(String code, AuthorizationRequestHolder authentication) {
+		long now = System.currentTimeMillis();
+		removeExpiredCodes(now);
+		int excess = expiryIndex.size() + 1 - maxCodes;
+		if (excess > 0) {
+			for (String evicted : expiryIndex.removeEarliest(excess)) {
+				if (this.authorizationCodeStore.remove(evicted) != null) {
+					evictedCodeCount.incrementAndGet();
+				}
+			}
+		}
 		this.authorizationCodeStore.put(code, authentication);
+		expiryIndex.put(code, now + codeValiditySeconds * 1000L);
+		issuedCodeCount.incrementAndGet();
 	}
 
 	@Override
 	public AuthorizationRequestHolder remove(String code) {
+		removeExpiredCodes(System.currentTimeMillis());
 		AuthorizationRequestHolder auth = this.authorizationCodeStore.remove(code);
+		if (auth != null) {
+			expiryIndex.remove(code);
+			redeemedCodeCount.incrementAndGet();
+		}
 		return auth;
 	}
 
+	/**
+	 * Remove the codes that have expired. There is normally no need to call this, since it happens whenever a code is
+	 * issued or redeemed, but it can be used to release memory on a server that has become idle.
+	 */
+	public void removeExpiredCodes() {
+		removeExpiredCodes(System.currentTimeMillis());
+	}
+
+	private void removeExpiredCodes(long now) {
+		for (String code : expiryIndex.expire(now)) {
+			// Only if it has not been redeemed in the meantime
+			if (this.authorizationCodeStore.remove(code) != null) {
+				expiredCodeCount.incrementAndGet();
+			}
+		}
+	}
+
 }
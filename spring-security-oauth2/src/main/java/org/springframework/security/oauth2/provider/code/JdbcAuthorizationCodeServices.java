@@ -2,7 +2,10 @@ package org.springframework.security.oauth2.provider.code;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.Date;
+import java.util.List;
 
 import javax.sql.DataSource;
 
@@ -10,11 +13,17 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.support.SqlLobValue;
-import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.common.util.CompactTokenSerializer;
+import org.springframework.security.oauth2.common.util.JdbcBatchUtils;
+import org.springframework.security.oauth2.common.util.TokenSerializer;
 import org.springframework.util.Assert;
 
 /**
- * Implementation of authorization code services that stores the codes and authentication in a database.
+ * Implementation of authorization code services that stores the codes and authentication in a database. A code is
+ * consumed by deleting its row, and only the caller whose delete actually removed the row gets the authentication,
+ * so a code can never be redeemed twice, even by concurrent requests. If the table has a created column, set
+ * {@link #setStoreCreationTime(boolean) storeCreationTime} to store the creation time of each code, so that the ones
+ * that are never redeemed can be removed with {@link #removeUnredeemedCodes(Date)}.
  * 
  * @author Ken Dombeck
  * @author Dave Syer
@@ -23,14 +32,33 @@ public class JdbcAuthorizationCodeServices extends RandomValueAuthorizationCodeS
 
 	private static final String DEFAULT_SELECT_STATEMENT = "select code, authentication from oauth_code where code = ?";
 	private static final String DEFAULT_INSERT_STATEMENT = "insert into oauth_code (code, authentication) values (?, ?)";
+	private static final String DEFAULT_INSERT_WITH_CREATED_STATEMENT = "insert into oauth_code (code, authentication, created) values (?, ?, ?)";
 	private static final String DEFAULT_DELETE_STATEMENT = "delete from oauth_code where code = ?";
+	private static final String DEFAULT_SELECT_UNREDEEMED_STATEMENT = "select code from oauth_code where created < ?";
+	private static final String DEFAULT_DELETE_UNREDEEMED_STATEMENT = "delete from oauth_code where code = ? and created < ?";
+	private static final int DEFAULT_BATCH_SIZE = 500;
 
 	private String selectAuthenticationSql = DEFAULT_SELECT_STATEMENT;
 	private String insertAuthenticationSql = DEFAULT_INSERT_STATEMENT;
 	private String deleteAuthenticationSql = DEFAULT_DELETE_STATEMENT;
+	private String consumeAuthenticationSql;
+	private String selectUnredeemedCodesSql = DEFAULT_SELECT_UNREDEEMED_STATEMENT;
+	private String deleteUnredeemedCodeSql = DEFAULT_DELETE_UNREDEEMED_STATEMENT;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private boolean storeCreationTime = false;
+
+	private TokenSerializer tokenSerializer = new CompactTokenSerializer();
 
 	private final JdbcTemplate jdbcTemplate;
 
+	private final RowMapper<AuthorizationRequestHolder> authenticationMapper = new RowMapper<AuthorizationRequestHolder>() {
+		public AuthorizationRequestHolder mapRow(ResultSet rs, int rowNum) throws SQLException {
+			return tokenSerializer.deserialize(rs.getBytes("authentication"));
+		}
+	};
+
 	public JdbcAuthorizationCodeServices(DataSource dataSource) {
 		Assert.notNull(dataSource, "DataSource required");
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
@@ -38,33 +66,74 @@ public class JdbcAuthorizationCodeServices extends RandomValueAuthorizationCodeS
 
 	@Override
 	protected void store(String code, AuthorizationRequestHolder authentication) {
-		jdbcTemplate.update(insertAuthenticationSql,
-				new Object[] { code, new SqlLobValue(SerializationUtils.serialize(authentication)) }, new int[] {
-						Types.VARCHAR, Types.BLOB });
+		if (storeCreationTime) {
+			jdbcTemplate.update(insertAuthenticationSql,
+					new Object[] { code, new SqlLobValue(tokenSerializer.serialize(authentication)),
+							new Timestamp(System.currentTimeMillis()) }, new int[] { Types.VARCHAR, Types.BLOB,
+							Types.TIMESTAMP });
+		}
+		else {
+			jdbcTemplate.update(insertAuthenticationSql,
+					new Object[] { code, new SqlLobValue(tokenSerializer.serialize(authentication)) }, new int[] {
+							Types.VARCHAR, Types.BLOB });
+		}
 	}
 
 	public AuthorizationRequestHolder remove(String code) {
+		if (consumeAuthenticationSql != null) {
+			// The delete and the select are the same statement
+			List<AuthorizationRequestHolder> authentications = jdbcTemplate.query(consumeAuthenticationSql,
+					authenticationMapper, code);
+			return authentications.isEmpty() ? null : authentications.get(0);
+		}
+
 		AuthorizationRequestHolder authentication;
 
 		try {
-			authentication = jdbcTemplate.queryForObject(selectAuthenticationSql,
-					new RowMapper<AuthorizationRequestHolder>() {
-						public AuthorizationRequestHolder mapRow(ResultSet rs, int rowNum)
-								throws SQLException {
-							return SerializationUtils.deserialize(rs.getBytes("authentication"));
-						}
-					}, code);
+			authentication = jdbcTemplate.queryForObject(selectAuthenticationSql, authenticationMapper, code);
 		} catch (EmptyResultDataAccessException e) {
 			return null;
 		}
 
-		if (authentication != null) {
-			jdbcTemplate.update(deleteAuthenticationSql, code);
+		// If another request has deleted the code in the meantime, it has also redeemed it
+		if (authentication == null || jdbcTemplate.update(deleteAuthenticationSql, code) == 0) {
+			return null;
 		}
 
 		return authentication;
 	}
 
+	/**
+	 * Remove the codes that were created before the given time and have not been redeemed. Codes are deleted in batches
+	 * of {@link #setBatchSize(int) batch size}, so that no single statement holds locks on the table for long. Needs
+	 * the creation time of the codes, so {@link #setStoreCreationTime(boolean) storeCreationTime} must be set.
+	 * 
+	 * @param createdBefore the creation time before which codes are removed
+	 * @return the number of codes removed
+	 */
+	public int removeUnredeemedCodes(Date createdBefore) {
+		Assert.state(storeCreationTime, "Unredeemed codes can only be removed if their creation time is stored");
+		return JdbcBatchUtils.deleteInBatches(jdbcTemplate, selectUnredeemedCodesSql, deleteUnredeemedCodeSql,
+				new Timestamp(createdBefore.getTime()), batchSize);
+	}
+
+	/**
+	 * Flag to indicate that the creation time of each code should be stored in the created column of the code table
+	 * (default false, for tables without the column). Required by {@link #removeUnredeemedCodes(Date)}. If the insert
+	 * statement has not been customized it is switched to one that includes the column, otherwise a custom insert
+	 * statement needs the creation time as an extra last parameter.
+	 * 
+	 * @param storeCreationTime the flag value to set
+	 */
+	public void setStoreCreationTime(boolean storeCreationTime) {
+		this.storeCreationTime = storeCreationTime;
+		if (DEFAULT_INSERT_STATEMENT.equals(insertAuthenticationSql)
+				|| DEFAULT_INSERT_WITH_CREATED_STATEMENT.equals(insertAuthenticationSql)) {
+			insertAuthenticationSql = storeCreationTime ? DEFAULT_INSERT_WITH_CREATED_STATEMENT
+					: DEFAULT_INSERT_STATEMENT;
+		}
+	}
+
 	public void setSelectAuthenticationSql(String selectAuthenticationSql) {
 		this.selectAuthenticationSql = selectAuthenticationSql;
 	}
@@ -76,4 +145,43 @@ public class JdbcAuthorizationCodeServices extends RandomValueAuthorizationCodeS
 	public void setDeleteAuthenticationSql(String deleteAuthenticationSql) {
 		this.deleteAuthenticationSql = deleteAuthenticationSql;
 	}
+
+	/**
+	 * A single statement that deletes a code and returns its authentication column, for databases that support it,
+	 * e.g. <code>delete from oauth_code where code = ? returning authentication</code> in PostgreSQL. Saves a round
+	 * trip when a code is redeemed. If not set (the default) the code is read and then deleted.
+	 * 
+	 * @param consumeAuthenticationSql the statement to set
+	 */
+	public void setConsumeAuthenticationSql(String consumeAuthenticationSql) {
+		this.consumeAuthenticationSql = consumeAuthenticationSql;
+	}
+
+	public void setSelectUnredeemedCodesSql(String selectUnredeemedCodesSql) {
+		this.selectUnredeemedCodesSql = selectUnredeemedCodesSql;
+	}
+
+	public void setDeleteUnredeemedCodeSql(String deleteUnredeemedCodeSql) {
+		this.deleteUnredeemedCodeSql = deleteUnredeemedCodeSql;
+	}
+
+	/**
+	 * The maximum number of codes to delete in one statement batch when removing unredeemed codes (default 500).
+	 * 
+	 * @param batchSize the batch size to set
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "Batch size must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * The strategy used to encode authorization requests and authentications for storage. The default writes a compact binary format
+	 * and can still read values that were stored with plain Java serialization.
+	 * 
+	 * @param tokenSerializer the token serializer to set
+	 */
+	public void setTokenSerializer(TokenSerializer tokenSerializer) {
+		this.tokenSerializer = tokenSerializer;
+	}
 }
@@ -2,6 +2,7 @@ package org.springframework.security.oauth2.provider.code;
 
 import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
+import org.springframework.security.oauth2.common.util.TokenValueGenerator;
 
 /**
  * Base implementation for authorization code services that generates a random-value authorization code.
@@ -11,7 +12,7 @@ import org.springframework.security.oauth2.common.util.RandomValueStringGenerato
  */
 public abstract class RandomValueAuthorizationCodeServices implements AuthorizationCodeServices {
 
-	private RandomValueStringGenerator generator = new RandomValueStringGenerator();
+	private TokenValueGenerator generator = new RandomValueStringGenerator();
 
 	protected abstract void store(String code, AuthorizationRequestHolder authentication);
 
@@ -32,4 +33,13 @@ public abstract class RandomValueAuthorizationCodeServices implements Authorizat
 		return auth;
 	}
 
+	/**
+	 * The generator for the values of authorization codes. The default generates 6 alphanumeric characters.
+	 * 
+	 * @param generator the generator to set
+	 */
+	public void setTokenValueGenerator(TokenValueGenerator generator) {
+		this.generator = generator;
+	}
+
 }
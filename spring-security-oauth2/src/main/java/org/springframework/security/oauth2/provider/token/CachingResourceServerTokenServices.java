@@ -0,0 +1,242 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+
+/**
+ * Read-through cache for {@link ResourceServerTokenServices}. Successfully loaded authentications are kept (with their
+ * access tokens) in a bounded, least-recently-used cache, so that repeated requests with the same bearer token do not
+ * hit the token store. An entry lives for at most the configured time to live, and never beyond the expiry of its
+ * access token.
+ * <p>
+ * On a cache miss the access token is read along with the authentication, so that the entry never outlives the token.
+ * If the delegate implements {@link StoredAccessTokenLoader} (as {@link DefaultTokenServices} does) they are loaded
+ * together, and otherwise the authentication is loaded and then the access token is read.
+ * <p>
+ * Tokens revoked through this instance are evicted immediately. If tokens can be revoked elsewhere (e.g. on another
+ * node) then either call {@link #evict(String)} from there, or keep the time to live short: it is the longest period
+ * for which a revoked token may still be accepted.
+ */
+public class CachingResourceServerTokenServices implements ResourceServerTokenServices, ConsumerTokenServices {
+
+	private static final int DEFAULT_MAX_SIZE = 10000;
+
+	private static final int DEFAULT_TIME_TO_LIVE_SECONDS = 60;
+
+	private final ResourceServerTokenServices delegate;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private volatile int maxSize = DEFAULT_MAX_SIZE;
+
+	private int timeToLiveSeconds = DEFAULT_TIME_TO_LIVE_SECONDS;
+
+	private final Map<String, CacheEntry> cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+			return size() > maxSize;
+		}
+	};
+
+	public CachingResourceServerTokenServices(ResourceServerTokenServices delegate) {
+		Assert.notNull(delegate, "Delegate token services are required");
+		this.delegate = delegate;
+	}
+
+	/**
+	 * The maximum number of tokens to cache (default 10000). The least recently used entries are discarded first.
+	 *
+	 * @param maxSize the maximum size to set
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * The maximum time in seconds to cache an authentication (default 60). Entries are also discarded when their access
+	 * token expires.
+	 *
+	 * @param timeToLiveSeconds the time to live to set
+	 */
+	public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+		this.timeToLiveSeconds = timeToLiveSeconds;
+	}
+
+	/**
+	 * @return the number of lookups that were served from the cache
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return the number of lookups that had to be passed to the delegate
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return the number of cached tokens (including any that have expired but not yet been discarded)
+	 */
+	public int getSize() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException {
+		CacheEntry entry = getEntry(accessToken);
+		if (entry != null) {
+			return entry.authentication;
+		}
+		// Let the delegate throw an exception if the token is invalid
+		StoredAccessToken stored = loadAccessTokenAndAuthentication(accessToken);
+		if (stored.getAccessToken() != null && stored.getAuthentication() != null) {
+			OAuth2AccessToken token = stored.getAccessToken();
+			putEntry(accessToken, new CacheEntry(token, stored.getAuthentication(), getExpiry(token)));
+		}
+		return stored.getAuthentication();
+	}
+
+	public OAuth2AccessToken readAccessToken(String accessToken) {
+		CacheEntry entry = getEntry(accessToken);
+		if (entry != null) {
+			return entry.token;
+		}
+		return delegate.readAccessToken(accessToken);
+	}
+
+	/**
+	 * Remove a token from the cache (but not from the underlying store).
+	 *
+	 * @param tokenValue the token value to evict
+	 */
+	public void evict(String tokenValue) {
+		synchronized (cache) {
+			cache.remove(tokenValue);
+		}
+	}
+
+	/**
+	 * Remove all tokens from the cache.
+	 */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	public boolean revokeToken(String tokenValue) {
+		evict(tokenValue);
+		return getConsumerTokenServices().revokeToken(tokenValue);
+	}
+
+	public Collection<OAuth2AccessToken> findTokensByUserName(String userName) {
+		return getConsumerTokenServices().findTokensByUserName(userName);
+	}
+
+	public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+		return getConsumerTokenServices().findTokensByClientId(clientId);
+	}
+
+	public String getClientId(String tokenValue) {
+		CacheEntry entry = getEntry(tokenValue);
+		if (entry != null && entry.authentication.getAuthorizationRequest() != null) {
+			return entry.authentication.getAuthorizationRequest().getClientId();
+		}
+		return getConsumerTokenServices().getClientId(tokenValue);
+	}
+
+	private ConsumerTokenServices getConsumerTokenServices() {
+		Assert.state(delegate instanceof ConsumerTokenServices, "Delegate token services do not implement "
+				+ ConsumerTokenServices.class.getSimpleName());
+		return (ConsumerTokenServices) delegate;
+	}
+
+	private StoredAccessToken loadAccessTokenAndAuthentication(String accessToken) {
+		if (delegate instanceof StoredAccessTokenLoader) {
+			return ((StoredAccessTokenLoader) delegate).loadAccessTokenAndAuthentication(accessToken);
+		}
+		OAuth2Authentication authentication = delegate.loadAuthentication(accessToken);
+		if (authentication == null) {
+			return new StoredAccessToken(null, null);
+		}
+		return new StoredAccessToken(delegate.readAccessToken(accessToken), authentication);
+	}
+
+	private long getExpiry(OAuth2AccessToken token) {
+		long expiry = System.currentTimeMillis() + timeToLiveSeconds * 1000L;
+		if (token.getExpiration() != null) {
+			expiry = Math.min(expiry, token.getExpiration().getTime());
+		}
+		return expiry;
+	}
+
+	private CacheEntry getEntry(String tokenValue) {
+		CacheEntry entry;
+		synchronized (cache) {
+			entry = cache.get(tokenValue);
+			if (entry != null && entry.expiry <= System.currentTimeMillis()) {
+				cache.remove(tokenValue);
+				entry = null;
+			}
+		}
+		if (entry != null) {
+			hitCount.incrementAndGet();
+		}
+		else {
+			missCount.incrementAndGet();
+		}
+		return entry;
+	}
+
+	private void putEntry(String tokenValue, CacheEntry entry) {
+		if (maxSize <= 0 || entry.expiry <= System.currentTimeMillis()) {
+			return;
+		}
+		synchronized (cache) {
+			cache.put(tokenValue, entry);
+		}
+	}
+
+	private static class CacheEntry {
+
+		private final OAuth2AccessToken token;
+
+		private final OAuth2Authentication authentication;
+
+		private final long expiry;
+
+		public CacheEntry(OAuth2AccessToken token, OAuth2Authentication authentication, long expiry) {
+			this.token = token;
+			this.authentication = authentication;
+			this.expiry = expiry;
+		}
+
+	}
+
+}
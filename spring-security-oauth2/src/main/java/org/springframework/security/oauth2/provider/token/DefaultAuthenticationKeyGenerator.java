@@ -12,14 +12,7 @@
  */
 package org.springframework.security.oauth2.provider.token;
 
-import java.io.UnsupportedEncodingException;
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.LinkedHashMap;
-import java.util.Map;
-
-import org.springframework.security.oauth2.common.util.OAuth2Utils;
+import org.springframework.security.oauth2.common.util.KeyGeneratorUtils;
 import org.springframework.security.oauth2.provider.AuthorizationRequest;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 
@@ -32,37 +25,10 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
  */
 public class DefaultAuthenticationKeyGenerator implements AuthenticationKeyGenerator {
 
-	private static final String CLIENT_ID = "client_id";
-
-	private static final String SCOPE = "scope";
-
-	private static final String USERNAME = "username";
-
 	public String extractKey(OAuth2Authentication authentication) {
-		Map<String, String> values = new LinkedHashMap<String, String>();
 		AuthorizationRequest authorizationRequest = authentication.getAuthorizationRequest();
-		if (!authentication.isClientOnly()) {
-			values.put(USERNAME, authentication.getName());
-		}
-		values.put(CLIENT_ID, authorizationRequest.getClientId());
-		if (authorizationRequest.getScope() != null) {
-			values.put(SCOPE, OAuth2Utils.formatParameterList(authorizationRequest.getScope()));
-		}
-		MessageDigest digest;
-		try {
-			digest = MessageDigest.getInstance("MD5");
-		}
-		catch (NoSuchAlgorithmException e) {
-			throw new IllegalStateException("MD5 algorithm not available.  Fatal (should be in the JDK).");
-		}
-
-		try {
-			byte[] bytes = digest.digest(values.toString().getBytes("UTF-8"));
-			return String.format("%032x", new BigInteger(1, bytes));
-		}
-		catch (UnsupportedEncodingException e) {
-			throw new IllegalStateException("UTF-8 encoding not available.  Fatal (should be in the JDK).");
-		}
+		return KeyGeneratorUtils.extractKey(!authentication.isClientOnly(), authentication.getName(),
+				authorizationRequest.getClientId(), authorizationRequest.getScope());
 	}
 
 }
@@ -19,7 +19,6 @@ package org.springframework.security.oauth2.provider.token;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Set;
-import java.util.UUID;
 
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.security.core.AuthenticationException;
@@ -31,6 +30,8 @@ import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
 import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.SecureRandomTokenValueGenerator;
+import org.springframework.security.oauth2.common.util.TokenValueGenerator;
 import org.springframework.security.oauth2.provider.AuthorizationRequest;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
@@ -38,19 +39,24 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.util.Assert;
 
 /**
- * Base implementation for token services using random UUID values for the access token and refresh token values. The
+ * Base implementation for token services using random values for the access token and refresh token values. The
  * main extension point for customizations is the {@link TokenEnhancer} which will be called after the access and
  * refresh tokens have been generated but before they are stored.
  * <p>
  * Persistence is delegated to a {@code TokenStore} implementation and customization of the access token to a
  * {@link TokenEnhancer}.
+ * <p>
+ * Concurrent requests for a token for the same authentication (e.g. from a client that retries aggressively) are
+ * handled one at a time, so that they all get the same token instead of each storing a new one. The requests are
+ * matched by the key that the {@link #setAuthenticationKeyGenerator(AuthenticationKeyGenerator) authentication key
+ * generator} extracts, within this instance only.
  * 
  * @author Ryan Heaton
  * @author Luke Taylor
  * @author Dave Syer
  */
 public class DefaultTokenServices implements AuthorizationServerTokenServices, ResourceServerTokenServices,
-		ConsumerTokenServices, InitializingBean {
+		StoredAccessTokenLoader, ConsumerTokenServices, InitializingBean {
 
 	private int refreshTokenValiditySeconds = 60 * 60 * 24 * 30; // default 30 days.
 
@@ -66,6 +72,15 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 
 	private TokenEnhancer accessTokenEnhancer;
 
+	private TokenValueGenerator tokenValueGenerator = new SecureRandomTokenValueGenerator();
+
+	private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+
+	private RejectedTokenCache rejectedTokenCache;
+
+	// Striped, so that memory is bounded and unrelated authentications rarely wait for each other
+	private Object[] locks = createLocks(256);
+
 	/**
 	 * Initialize these token services. If no random generator is set, one will be created.
 	 */
@@ -74,6 +89,13 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 	}
 
 	public OAuth2AccessToken createAccessToken(OAuth2Authentication authentication) throws AuthenticationException {
+		// Callers that arrive while a token is being created for the same key find that token when they get the lock
+		synchronized (getLock(authenticationKeyGenerator.extractKey(authentication))) {
+			return doCreateAccessToken(authentication);
+		}
+	}
+
+	private OAuth2AccessToken doCreateAccessToken(OAuth2Authentication authentication) {
 
 		OAuth2AccessToken existingAccessToken = tokenStore.getAccessToken(authentication);
 		OAuth2RefreshToken refreshToken = null;
@@ -186,17 +208,41 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 	}
 
 	public OAuth2Authentication loadAuthentication(String accessTokenValue) throws AuthenticationException {
-		OAuth2AccessToken accessToken = tokenStore.readAccessToken(accessTokenValue);
-		if (accessToken == null) {
+		return loadAccessTokenAndAuthentication(accessTokenValue).getAuthentication();
+	}
+
+	/**
+	 * Load a valid access token together with its authentication, with a single token store lookup if the store
+	 * supports it (see {@link StoredAccessTokenReader}). {@link #loadAuthentication(String)} is implemented with this
+	 * method, so a subclass that changes how tokens are checked should override this one.
+	 * 
+	 * @param accessTokenValue The token value.
+	 * @return The access token and its authentication.
+	 * @throws AuthenticationException If the token is invalid or expired.
+	 */
+	public StoredAccessToken loadAccessTokenAndAuthentication(String accessTokenValue) throws AuthenticationException {
+		StoredAccessToken stored = readAccessTokenAndAuthentication(accessTokenValue);
+		if (stored == null) {
 			throw new InvalidTokenException("Invalid access token: " + accessTokenValue);
 		}
-		else if (accessToken.isExpired()) {
+		OAuth2AccessToken accessToken = stored.getAccessToken();
+		if (accessToken.isExpired()) {
 			tokenStore.removeAccessToken(accessToken);
 			throw new InvalidTokenException("Access token expired: " + accessTokenValue);
 		}
 
-		OAuth2Authentication result = tokenStore.readAuthentication(accessToken);
-		return result;
+		return stored;
+	}
+
+	private StoredAccessToken readAccessTokenAndAuthentication(String accessTokenValue) {
+		if (tokenStore instanceof StoredAccessTokenReader) {
+			return ((StoredAccessTokenReader) tokenStore).readAccessTokenAndAuthentication(accessTokenValue);
+		}
+		OAuth2AccessToken accessToken = tokenStore.readAccessToken(accessTokenValue);
+		if (accessToken == null) {
+			return null;
+		}
+		return new StoredAccessToken(accessToken, tokenStore.readAuthentication(accessToken));
 	}
 
 	public String getClientId(String tokenValue) {
@@ -228,21 +274,36 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 			tokenStore.removeRefreshToken(accessToken.getRefreshToken());
 		}
 		tokenStore.removeAccessToken(accessToken);
+		if (rejectedTokenCache != null) {
+			rejectedTokenCache.reject(tokenValue);
+		}
 		return true;
 	}
 
+	private Object getLock(String key) {
+		return locks[(key.hashCode() & Integer.MAX_VALUE) % locks.length];
+	}
+
+	private static Object[] createLocks(int stripes) {
+		Object[] locks = new Object[stripes];
+		for (int i = 0; i < stripes; i++) {
+			locks[i] = new Object();
+		}
+		return locks;
+	}
+
 	private ExpiringOAuth2RefreshToken createRefreshToken(OAuth2Authentication authentication) {
 		if (!supportRefreshToken) {
 			return null;
 		}
 		int validitySeconds = getRefreshTokenValiditySeconds(authentication.getAuthorizationRequest());
-		ExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken(UUID.randomUUID().toString(),
+		ExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken(tokenValueGenerator.generate(),
 				new Date(System.currentTimeMillis() + (validitySeconds * 1000L)));
 		return refreshToken;
 	}
 
 	private OAuth2AccessToken createAccessToken(OAuth2Authentication authentication, OAuth2RefreshToken refreshToken) {
-		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(tokenValueGenerator.generate());
 		int validitySeconds = getAccessTokenValiditySeconds(authentication.getAuthorizationRequest());
 		if (validitySeconds > 0) {
 			token.setExpiration(new Date(System.currentTimeMillis() + (validitySeconds * 1000L)));
@@ -294,6 +355,48 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 		this.accessTokenEnhancer = accessTokenEnhancer;
 	}
 
+	/**
+	 * The generator for the values of new access and refresh tokens. The default generates 128 bits of randomness,
+	 * encoded as 22 URL-safe characters.
+	 * 
+	 * @param tokenValueGenerator the token value generator to set
+	 */
+	public void setTokenValueGenerator(TokenValueGenerator tokenValueGenerator) {
+		this.tokenValueGenerator = tokenValueGenerator;
+	}
+
+	/**
+	 * The strategy used to decide which token requests are for the same authentication, so that concurrent ones can
+	 * share a single token. It should be the same as the one used by the token store.
+	 * 
+	 * @param authenticationKeyGenerator the authentication key generator to set
+	 */
+	public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
+		this.authenticationKeyGenerator = authenticationKeyGenerator;
+	}
+
+	/**
+	 * The number of locks used to serialize token requests for the same authentication (default 256). More locks mean
+	 * fewer requests for different authentications waiting for each other by chance.
+	 * 
+	 * @param lockStripes the number of locks
+	 */
+	public void setLockStripes(int lockStripes) {
+		Assert.isTrue(lockStripes > 0, "Number of lock stripes must be positive");
+		this.locks = createLocks(lockStripes);
+	}
+
+	/**
+	 * Optional record of recently rejected token values, into which revoked tokens are pushed. Share it with the
+	 * {@link org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationProcessingFilter} on the
+	 * resource server so that requests with a revoked token are turned away without a trip to the token store.
+	 * 
+	 * @param rejectedTokenCache the rejected token cache to set
+	 */
+	public void setRejectedTokenCache(RejectedTokenCache rejectedTokenCache) {
+		this.rejectedTokenCache = rejectedTokenCache;
+	}
+
 	/**
 	 * The validity (in seconds) of the refresh token.
 	 * 
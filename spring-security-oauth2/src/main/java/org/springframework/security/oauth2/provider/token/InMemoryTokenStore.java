@@ -1,55 +1,80 @@
 package org.springframework.security.oauth2.provider.token;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
-import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.ExpiryIndex;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.util.Assert;
 
 /**
  * Implementation of token services that stores tokens in memory.
+ * <p>
+ * Expired access and refresh tokens are removed in bulk, either every {@link #setFlushInterval(int) few writes} (the
+ * default), or in the background if an {@link #setExpirySweepInterval(int) expiry sweep interval} is set, in which
+ * case no work is done on the request path.
  * 
  * @author Ryan Heaton
  * @author Luke Taylor
  * @author Dave Syer
  */
-public class InMemoryTokenStore implements TokenStore {
+public class InMemoryTokenStore implements TokenStore, StoredAccessTokenReader, InitializingBean, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(InMemoryTokenStore.class);
 
 	private static final int DEFAULT_FLUSH_INTERVAL = 1000;
 
-	private final ConcurrentHashMap<String, OAuth2AccessToken> accessTokenStore = new ConcurrentHashMap<String, OAuth2AccessToken>();
+	private final ConcurrentHashMap<String, StoredAccessToken> accessTokenStore = new ConcurrentHashMap<String, StoredAccessToken>();
 
 	private final ConcurrentHashMap<String, OAuth2AccessToken> authenticationToAccessTokenStore = new ConcurrentHashMap<String, OAuth2AccessToken>();
 
-	private final ConcurrentHashMap<String, Collection<OAuth2AccessToken>> userNameToAccessTokenStore = new ConcurrentHashMap<String, Collection<OAuth2AccessToken>>();
+	private final ConcurrentHashMap<String, Set<String>> userNameToAccessTokenStore = new ConcurrentHashMap<String, Set<String>>();
 
-	private final ConcurrentHashMap<String, Collection<OAuth2AccessToken>> clientIdToAccessTokenStore = new ConcurrentHashMap<String, Collection<OAuth2AccessToken>>();
+	private final ConcurrentHashMap<String, Set<String>> clientIdToAccessTokenStore = new ConcurrentHashMap<String, Set<String>>();
 
 	private final ConcurrentHashMap<String, OAuth2RefreshToken> refreshTokenStore = new ConcurrentHashMap<String, OAuth2RefreshToken>();
 
 	private final ConcurrentHashMap<String, String> accessTokenToRefreshTokenStore = new ConcurrentHashMap<String, String>();
 
-	private final ConcurrentHashMap<String, OAuth2Authentication> authenticationStore = new ConcurrentHashMap<String, OAuth2Authentication>();
-
 	private final ConcurrentHashMap<String, OAuth2Authentication> refreshTokenAuthenticationStore = new ConcurrentHashMap<String, OAuth2Authentication>();
 
 	private final ConcurrentHashMap<String, String> refreshTokenToAcessTokenStore = new ConcurrentHashMap<String, String>();
 
-	private final DelayQueue<TokenExpiry> expiryQueue = new DelayQueue<TokenExpiry>();
+	private final ExpiryIndex<String> accessTokenExpiry = new ExpiryIndex<String>();
+
+	private final ExpiryIndex<String> refreshTokenExpiry = new ExpiryIndex<String>();
+
+	private final AtomicLong sweepCount = new AtomicLong();
+
+	private final AtomicLong expiredTokenCount = new AtomicLong();
+
+	private final AtomicLong totalSweepTime = new AtomicLong();
 
-	private final ConcurrentHashMap<String, TokenExpiry> expiryMap = new ConcurrentHashMap<String, TokenExpiry>();
+	private volatile long lastSweepTime;
 
 	private int flushInterval = DEFAULT_FLUSH_INTERVAL;
 
+	private int expirySweepInterval = 0;
+
+	private ScheduledExecutorService sweeper;
+
 	private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
 
 	private AtomicInteger flushCounter = new AtomicInteger(0);
@@ -72,6 +97,46 @@ public class InMemoryTokenStore implements TokenStore {
 		return flushInterval;
 	}
 
+	/**
+	 * The interval in seconds between background sweeps for expired access and refresh tokens. Default 0, meaning
+	 * that there is no background sweep, and expired tokens are flushed on write instead (see
+	 * {@link #setFlushInterval(int)}).
+	 * 
+	 * @param expirySweepInterval the sweep interval in seconds
+	 */
+	public void setExpirySweepInterval(int expirySweepInterval) {
+		this.expirySweepInterval = expirySweepInterval;
+	}
+
+	public void afterPropertiesSet() throws Exception {
+		if (expirySweepInterval > 0 && sweeper == null) {
+			sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "InMemoryTokenStore-expiry");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			sweeper.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						flush();
+					}
+					catch (RuntimeException e) {
+						logger.error("Could not remove expired tokens", e);
+					}
+				}
+			}, expirySweepInterval, expirySweepInterval, TimeUnit.SECONDS);
+		}
+	}
+
+	public void destroy() throws Exception {
+		if (sweeper != null) {
+			sweeper.shutdownNow();
+			sweeper = null;
+		}
+	}
+
 	/**
 	 * Convenience method for super admin users to remove all tokens (useful for testing, not really in production)
 	 */
@@ -82,10 +147,10 @@ public class InMemoryTokenStore implements TokenStore {
 		clientIdToAccessTokenStore.clear();
 		refreshTokenStore.clear();
 		accessTokenToRefreshTokenStore.clear();
-		authenticationStore.clear();
 		refreshTokenAuthenticationStore.clear();
 		refreshTokenToAcessTokenStore.clear();
-		expiryQueue.clear();
+		accessTokenExpiry.clear();
+		refreshTokenExpiry.clear();
 	}
 
 	public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
@@ -97,7 +162,6 @@ public class InMemoryTokenStore implements TokenStore {
 				"Too many refresh tokens");
 		Assert.state(accessTokenStore.size() == authenticationToAccessTokenStore.size(),
 				"Inconsistent token store state");
-		Assert.state(accessTokenStore.size() <= authenticationStore.size(), "Inconsistent authentication store state");
 		return accessTokenStore.size();
 	}
 
@@ -108,7 +172,42 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	public int getExpiryTokenCount() {
-		return expiryQueue.size();
+		return accessTokenExpiry.size();
+	}
+
+	/**
+	 * @return the number of user names and client ids that have tokens in the indexes
+	 */
+	public int getIndexKeyCount() {
+		return userNameToAccessTokenStore.size() + clientIdToAccessTokenStore.size();
+	}
+
+	/**
+	 * @return the number of times expired tokens have been swept (on write or in the background)
+	 */
+	public long getSweepCount() {
+		return sweepCount.get();
+	}
+
+	/**
+	 * @return the total number of expired access and refresh tokens that have been removed by sweeps
+	 */
+	public long getExpiredTokenCount() {
+		return expiredTokenCount.get();
+	}
+
+	/**
+	 * @return the duration of the last sweep in milliseconds
+	 */
+	public long getLastSweepTime() {
+		return lastSweepTime;
+	}
+
+	/**
+	 * @return the total duration of all sweeps in milliseconds
+	 */
+	public long getTotalSweepTime() {
+		return totalSweepTime.get();
 	}
 
 	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
@@ -127,7 +226,8 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	public OAuth2Authentication readAuthentication(String token) {
-		return this.authenticationStore.get(token);
+		StoredAccessToken stored = this.accessTokenStore.get(token);
+		return stored != null ? stored.getAuthentication() : null;
 	}
 
 	public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
@@ -139,22 +239,24 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
-		if (this.flushCounter.incrementAndGet() >= this.flushInterval) {
+		if (this.sweeper == null && this.flushCounter.incrementAndGet() >= this.flushInterval) {
 			flush();
 			this.flushCounter.set(0);
 		}
-		this.accessTokenStore.put(token.getValue(), token);
-		this.authenticationStore.put(token.getValue(), authentication);
+		StoredAccessToken previous = this.accessTokenStore.put(token.getValue(), new StoredAccessToken(token,
+				authentication));
+		if (previous != null) {
+			// The token is being re-stored, maybe with a different authentication
+			removeFromIndexes(previous, authentication);
+		}
 		this.authenticationToAccessTokenStore.put(authenticationKeyGenerator.extractKey(authentication), token);
 		if (!authentication.isClientOnly()) {
-			addToCollection(this.userNameToAccessTokenStore, authentication.getName(), token);
+			addToIndex(this.userNameToAccessTokenStore, authentication.getName(), token.getValue());
 		}
-		addToCollection(this.clientIdToAccessTokenStore, authentication.getAuthorizationRequest().getClientId(), token);
+		addToIndex(this.clientIdToAccessTokenStore, authentication.getAuthorizationRequest().getClientId(),
+				token.getValue());
 		if (token.getExpiration() != null) {
-			TokenExpiry expiry = new TokenExpiry(token.getValue(), token.getExpiration());
-			// Remove existing expiry for this token if present
-			expiryQueue.remove(expiryMap.put(token.getValue(), expiry));
-			this.expiryQueue.put(expiry);
+			this.accessTokenExpiry.put(token.getValue(), token.getExpiration().getTime());
 		}
 		if (token.getRefreshToken() != null && token.getRefreshToken().getValue() != null) {
 			this.refreshTokenToAcessTokenStore.put(token.getRefreshToken().getValue(), token.getValue());
@@ -162,16 +264,72 @@ public class InMemoryTokenStore implements TokenStore {
 		}
 	}
 
-	private void addToCollection(ConcurrentHashMap<String, Collection<OAuth2AccessToken>> store, String key,
-			OAuth2AccessToken token) {
-		if (!store.containsKey(key)) {
-			synchronized (store) {
-				if (!store.containsKey(key)) {
-					store.put(key, new HashSet<OAuth2AccessToken>());
+	private void addToIndex(ConcurrentHashMap<String, Set<String>> index, String key, String tokenValue) {
+		while (true) {
+			Set<String> values = index.get(key);
+			if (values == null) {
+				Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+				values = index.putIfAbsent(key, created);
+				if (values == null) {
+					values = created;
+				}
+			}
+			synchronized (values) {
+				// An empty bucket may have been removed since we looked it up, in which case try again
+				if (index.get(key) == values) {
+					values.add(tokenValue);
+					return;
+				}
+			}
+		}
+	}
+
+	private void removeFromIndex(ConcurrentHashMap<String, Set<String>> index, String key, String tokenValue) {
+		Set<String> values = index.get(key);
+		if (values != null) {
+			synchronized (values) {
+				values.remove(tokenValue);
+				if (values.isEmpty()) {
+					index.remove(key, values);
 				}
 			}
 		}
-		store.get(key).add(token);
+	}
+
+	/**
+	 * Remove the index entries of a stored token, except those that it shares with the authentication provided (if
+	 * any).
+	 */
+	private void removeFromIndexes(StoredAccessToken stored, OAuth2Authentication current) {
+		String tokenValue = stored.getAccessToken().getValue();
+		OAuth2Authentication authentication = stored.getAuthentication();
+		String key = authenticationKeyGenerator.extractKey(authentication);
+		if (current == null || !key.equals(authenticationKeyGenerator.extractKey(current))) {
+			this.authenticationToAccessTokenStore.remove(key, stored.getAccessToken());
+		}
+		if (!authentication.isClientOnly()
+				&& (current == null || current.isClientOnly() || !authentication.getName().equals(current.getName()))) {
+			removeFromIndex(this.userNameToAccessTokenStore, authentication.getName(), tokenValue);
+		}
+		String clientId = authentication.getAuthorizationRequest().getClientId();
+		if (current == null || !clientId.equals(current.getAuthorizationRequest().getClientId())) {
+			removeFromIndex(this.clientIdToAccessTokenStore, clientId, tokenValue);
+		}
+	}
+
+	private Collection<OAuth2AccessToken> findTokens(ConcurrentHashMap<String, Set<String>> index, String key) {
+		Set<String> values = index.get(key);
+		if (values == null) {
+			return Collections.<OAuth2AccessToken> emptySet();
+		}
+		List<OAuth2AccessToken> result = new ArrayList<OAuth2AccessToken>(values.size());
+		for (String value : values) {
+			StoredAccessToken stored = this.accessTokenStore.get(value);
+			if (stored != null) {
+				result.add(stored.getAccessToken());
+			}
+		}
+		return Collections.unmodifiableCollection(result);
 	}
 
 	public void removeAccessToken(OAuth2AccessToken accessToken) {
@@ -179,35 +337,36 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	public OAuth2AccessToken readAccessToken(String tokenValue) {
+		StoredAccessToken stored = this.accessTokenStore.get(tokenValue);
+		return stored != null ? stored.getAccessToken() : null;
+	}
+
+	public StoredAccessToken readAccessTokenAndAuthentication(String tokenValue) {
 		return this.accessTokenStore.get(tokenValue);
 	}
 
 	public void removeAccessToken(String tokenValue) {
-		OAuth2AccessToken removed = this.accessTokenStore.remove(tokenValue);
+		StoredAccessToken stored = this.accessTokenStore.remove(tokenValue);
+		this.accessTokenExpiry.remove(tokenValue);
 		String refresh = this.accessTokenToRefreshTokenStore.remove(tokenValue);
 		if (refresh != null) {
 			// Don't remove the refresh token itself - it's up to the caller to do that
-			this.refreshTokenToAcessTokenStore.remove(tokenValue);
+			this.refreshTokenToAcessTokenStore.remove(refresh, tokenValue);
 		}
-		OAuth2Authentication authentication = this.authenticationStore.remove(tokenValue);
-		if (authentication != null) {
-			this.authenticationToAccessTokenStore.remove(authenticationKeyGenerator.extractKey(authentication));
-			Collection<OAuth2AccessToken> tokens;
-			tokens = this.userNameToAccessTokenStore.get(authentication.getName());
-			if (tokens != null) {
-				tokens.remove(removed);
-			}
-			tokens = this.clientIdToAccessTokenStore.get(authentication.getName());
-			if (tokens != null) {
-				tokens.remove(removed);
-			}
-			this.authenticationToAccessTokenStore.remove(authenticationKeyGenerator.extractKey(authentication));
+		if (stored != null) {
+			removeFromIndexes(stored, null);
 		}
 	}
 
 	public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
 		this.refreshTokenStore.put(refreshToken.getValue(), refreshToken);
 		this.refreshTokenAuthenticationStore.put(refreshToken.getValue(), authentication);
+		if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+			ExpiringOAuth2RefreshToken expiring = (ExpiringOAuth2RefreshToken) refreshToken;
+			if (expiring.getExpiration() != null) {
+				this.refreshTokenExpiry.put(refreshToken.getValue(), expiring.getExpiration().getTime());
+			}
+		}
 	}
 
 	public OAuth2RefreshToken readRefreshToken(String tokenValue) {
@@ -220,6 +379,7 @@ public class InMemoryTokenStore implements TokenStore {
 
 	public void removeRefreshToken(String tokenValue) {
 		this.refreshTokenStore.remove(tokenValue);
+		this.refreshTokenExpiry.remove(tokenValue);
 		this.refreshTokenAuthenticationStore.remove(tokenValue);
 		this.refreshTokenToAcessTokenStore.remove(tokenValue);
 	}
@@ -235,53 +395,44 @@ public class InMemoryTokenStore implements TokenStore {
 		}
 	}
 
+	/**
+	 * @param clientId the client id
+	 * @return a snapshot of the access tokens issued to the client
+	 */
 	public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
-		Collection<OAuth2AccessToken> result = clientIdToAccessTokenStore.get(clientId);
-		return result != null ? Collections.<OAuth2AccessToken> unmodifiableCollection(result) : Collections
-				.<OAuth2AccessToken> emptySet();
+		return findTokens(clientIdToAccessTokenStore, clientId);
 	}
 
+	/**
+	 * @param userName the user name
+	 * @return a snapshot of the access tokens issued to the user
+	 */
 	public Collection<OAuth2AccessToken> findTokensByUserName(String userName) {
-		Collection<OAuth2AccessToken> result = userNameToAccessTokenStore.get(userName);
-		return result != null ? Collections.<OAuth2AccessToken> unmodifiableCollection(result) : Collections
-				.<OAuth2AccessToken> emptySet();
+		return findTokens(userNameToAccessTokenStore, userName);
 	}
 
-	private void flush() {
-		TokenExpiry expiry = expiryQueue.poll();
-		while (expiry != null) {
-			removeAccessToken(expiry.getValue());
-			expiry = expiryQueue.poll();
-		}
-	}
-
-	private static class TokenExpiry implements Delayed {
-
-		private final long expiry;
-
-		private final String value;
-
-		public TokenExpiry(String value, Date date) {
-			this.value = value;
-			this.expiry = date.getTime();
-		}
-
-		public int compareTo(Delayed other) {
-			if (this == other) {
-				return 0;
-			}
-			long diff = getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
-			return (diff == 0 ? 0 : ((diff < 0) ? -1 : 1));
+	/**
+	 * Remove all expired access and refresh tokens now.
+	 */
+	public void flush() {
+		long start = System.currentTimeMillis();
+		int count = 0;
+		for (String value : accessTokenExpiry.expire(start)) {
+			removeAccessToken(value);
+			count++;
 		}
-
-		public long getDelay(TimeUnit unit) {
-			return expiry - System.currentTimeMillis();
+		for (String value : refreshTokenExpiry.expire(start)) {
+			removeRefreshToken(value);
+			count++;
 		}
-
-		public String getValue() {
-			return value;
+		long duration = System.currentTimeMillis() - start;
+		sweepCount.incrementAndGet();
+		expiredTokenCount.addAndGet(count);
+		totalSweepTime.addAndGet(duration);
+		lastSweepTime = duration;
+		if (count > 0 && logger.isDebugEnabled()) {
+			logger.debug("Removed " + count + " expired tokens in " + duration + "ms");
 		}
-
 	}
 
 }
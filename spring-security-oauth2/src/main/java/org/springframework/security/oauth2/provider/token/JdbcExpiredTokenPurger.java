@@ -0,0 +1,201 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.sql.Timestamp;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.oauth2.common.util.JdbcBatchUtils;
+import org.springframework.util.Assert;
+
+/**
+ * Removes expired access and refresh tokens from the tables of a {@link JdbcTokenStore}. Expired rows are found
+ * through the (indexed) expiration column and deleted by primary key in batches of bounded size, each in its own
+ * statement, so that no long-running delete holds locks on the tables. Tokens without an expiry time are never
+ * removed, so the token tables need the expiration column and the store has to be configured to fill it (see
+ * {@link JdbcTokenStore#setStoreExpiration(boolean)}).
+ * <p>
+ * Call {@link #purge()} from an existing scheduler, or set a {@link #setPurgeInterval(int) purge interval} to have
+ * this bean run it in the background.
+ */
+public class JdbcExpiredTokenPurger implements InitializingBean, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(JdbcExpiredTokenPurger.class);
+
+	private static final String DEFAULT_EXPIRED_ACCESS_TOKENS_SELECT_STATEMENT = "select token_id from oauth_access_token where expiration < ?";
+
+	private static final String DEFAULT_ACCESS_TOKEN_DELETE_STATEMENT = "delete from oauth_access_token where token_id = ? and expiration < ?";
+
+	private static final String DEFAULT_EXPIRED_REFRESH_TOKENS_SELECT_STATEMENT = "select token_id from oauth_refresh_token where expiration < ?";
+
+	private static final String DEFAULT_REFRESH_TOKEN_DELETE_STATEMENT = "delete from oauth_refresh_token where token_id = ? and expiration < ?";
+
+	private static final int DEFAULT_BATCH_SIZE = 500;
+
+	private String selectExpiredAccessTokensSql = DEFAULT_EXPIRED_ACCESS_TOKENS_SELECT_STATEMENT;
+
+	private String deleteAccessTokenSql = DEFAULT_ACCESS_TOKEN_DELETE_STATEMENT;
+
+	private String selectExpiredRefreshTokensSql = DEFAULT_EXPIRED_REFRESH_TOKENS_SELECT_STATEMENT;
+
+	private String deleteRefreshTokenSql = DEFAULT_REFRESH_TOKEN_DELETE_STATEMENT;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private int purgeInterval = 0;
+
+	private ScheduledExecutorService purger;
+
+	private final AtomicLong purgeCount = new AtomicLong();
+
+	private final AtomicLong purgedTokenCount = new AtomicLong();
+
+	private final AtomicLong totalPurgeTime = new AtomicLong();
+
+	private volatile long lastPurgeTime;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public JdbcExpiredTokenPurger(DataSource dataSource) {
+		Assert.notNull(dataSource, "DataSource required");
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	/**
+	 * The maximum number of tokens to delete in one statement batch (default 500).
+	 *
+	 * @param batchSize the batch size to set
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "Batch size must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * The interval in seconds between background purges. Default 0, meaning that there is no background purge and
+	 * {@link #purge()} has to be called explicitly.
+	 *
+	 * @param purgeInterval the purge interval in seconds
+	 */
+	public void setPurgeInterval(int purgeInterval) {
+		this.purgeInterval = purgeInterval;
+	}
+
+	public void afterPropertiesSet() throws Exception {
+		if (purgeInterval > 0 && purger == null) {
+			purger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "JdbcExpiredTokenPurger");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			purger.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						purge();
+					}
+					catch (RuntimeException e) {
+						logger.error("Could not remove expired tokens", e);
+					}
+				}
+			}, purgeInterval, purgeInterval, TimeUnit.SECONDS);
+		}
+	}
+
+	public void destroy() throws Exception {
+		if (purger != null) {
+			purger.shutdownNow();
+			purger = null;
+		}
+	}
+
+	/**
+	 * @return the number of purges that have run
+	 */
+	public long getPurgeCount() {
+		return purgeCount.get();
+	}
+
+	/**
+	 * @return the total number of expired access and refresh tokens that have been removed
+	 */
+	public long getPurgedTokenCount() {
+		return purgedTokenCount.get();
+	}
+
+	/**
+	 * @return the duration of the last purge in milliseconds
+	 */
+	public long getLastPurgeTime() {
+		return lastPurgeTime;
+	}
+
+	/**
+	 * @return the total duration of all purges in milliseconds
+	 */
+	public long getTotalPurgeTime() {
+		return totalPurgeTime.get();
+	}
+
+	/**
+	 * Remove all access and refresh tokens that have expired.
+	 *
+	 * @return the number of tokens removed
+	 */
+	public int purge() {
+		long start = System.currentTimeMillis();
+		Timestamp now = new Timestamp(start);
+		int count = JdbcBatchUtils.deleteInBatches(jdbcTemplate, selectExpiredAccessTokensSql, deleteAccessTokenSql, now,
+				batchSize);
+		count += JdbcBatchUtils.deleteInBatches(jdbcTemplate, selectExpiredRefreshTokensSql, deleteRefreshTokenSql, now,
+				batchSize);
+		long duration = System.currentTimeMillis() - start;
+		purgeCount.incrementAndGet();
+		purgedTokenCount.addAndGet(count);
+		totalPurgeTime.addAndGet(duration);
+		lastPurgeTime = duration;
+		if (count > 0 && logger.isDebugEnabled()) {
+			logger.debug("Removed " + count + " expired tokens in " + duration + "ms");
+		}
+		return count;
+	}
+
+	public void setSelectExpiredAccessTokensSql(String selectExpiredAccessTokensSql) {
+		this.selectExpiredAccessTokensSql = selectExpiredAccessTokensSql;
+	}
+
+	public void setDeleteAccessTokenSql(String deleteAccessTokenSql) {
+		this.deleteAccessTokenSql = deleteAccessTokenSql;
+	}
+
+	public void setSelectExpiredRefreshTokensSql(String selectExpiredRefreshTokensSql) {
+		this.selectExpiredRefreshTokensSql = selectExpiredRefreshTokensSql;
+	}
+
+	public void setDeleteRefreshTokenSql(String deleteRefreshTokenSql) {
+		this.deleteRefreshTokenSql = deleteRefreshTokenSql;
+	}
+
+}
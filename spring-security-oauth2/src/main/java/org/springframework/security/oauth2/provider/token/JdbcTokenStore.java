@@ -2,9 +2,12 @@ package org.springframework.security.oauth2.provider.token;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 
 import javax.sql.DataSource;
 
@@ -15,28 +18,37 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.support.SqlLobValue;
 import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
-import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.common.util.CompactTokenSerializer;
+import org.springframework.security.oauth2.common.util.TokenSerializer;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.util.Assert;
 
 /**
- * Implementation of token services that stores tokens in a database.
+ * Implementation of token services that stores tokens in a database. The recommended schema (with the indexes used by
+ * the lookups) is in <code>oauth2-token-schema.sql</code> in this package. If the tables have an expiration column,
+ * set {@link #setStoreExpiration(boolean) storeExpiration} to store the expiry time of each token, so that expired
+ * tokens can be removed with a {@link JdbcExpiredTokenPurger}.
  * 
  * @author Ken Dombeck
  * @author Luke Taylor
  */
-public class JdbcTokenStore implements TokenStore {
+public class JdbcTokenStore implements TokenStore, StoredAccessTokenReader {
 
 	private static final Log LOG = LogFactory.getLog(JdbcTokenStore.class);
 
 	private static final String DEFAULT_ACCESS_TOKEN_INSERT_STATEMENT = "insert into oauth_access_token (token_id, token, authentication_id, user_name, client_id, authentication, refresh_token) values (?, ?, ?, ?, ?, ?, ?)";
 
+	private static final String DEFAULT_ACCESS_TOKEN_WITH_EXPIRATION_INSERT_STATEMENT = "insert into oauth_access_token (token_id, token, authentication_id, user_name, client_id, authentication, refresh_token, expiration) values (?, ?, ?, ?, ?, ?, ?, ?)";
+
 	private static final String DEFAULT_ACCESS_TOKEN_SELECT_STATEMENT = "select token_id, token from oauth_access_token where token_id = ?";
 
 	private static final String DEFAULT_ACCESS_TOKEN_AUTHENTICATION_SELECT_STATEMENT = "select token_id, authentication from oauth_access_token where token_id = ?";
 
+	private static final String DEFAULT_ACCESS_TOKEN_AND_AUTHENTICATION_SELECT_STATEMENT = "select token_id, token, authentication from oauth_access_token where token_id = ?";
+
 	private static final String DEFAULT_ACCESS_TOKEN_FROM_AUTHENTICATION_SELECT_STATEMENT = "select token_id, token from oauth_access_token where authentication_id = ?";
 
 	private static final String DEFAULT_ACCESS_TOKENS_FROM_USERNAME_SELECT_STATEMENT = "select token_id, token from oauth_access_token where user_name = ?";
@@ -49,6 +61,8 @@ public class JdbcTokenStore implements TokenStore {
 
 	private static final String DEFAULT_REFRESH_TOKEN_INSERT_STATEMENT = "insert into oauth_refresh_token (token_id, token, authentication) values (?, ?, ?)";
 
+	private static final String DEFAULT_REFRESH_TOKEN_WITH_EXPIRATION_INSERT_STATEMENT = "insert into oauth_refresh_token (token_id, token, authentication, expiration) values (?, ?, ?, ?)";
+
 	private static final String DEFAULT_REFRESH_TOKEN_SELECT_STATEMENT = "select token_id, token from oauth_refresh_token where token_id = ?";
 
 	private static final String DEFAULT_REFRESH_TOKEN_AUTHENTICATION_SELECT_STATEMENT = "select token_id, authentication from oauth_refresh_token where token_id = ?";
@@ -61,6 +75,8 @@ public class JdbcTokenStore implements TokenStore {
 
 	private String selectAccessTokenAuthenticationSql = DEFAULT_ACCESS_TOKEN_AUTHENTICATION_SELECT_STATEMENT;
 
+	private String selectAccessTokenAndAuthenticationSql = DEFAULT_ACCESS_TOKEN_AND_AUTHENTICATION_SELECT_STATEMENT;
+
 	private String selectAccessTokenFromAuthenticationSql = DEFAULT_ACCESS_TOKEN_FROM_AUTHENTICATION_SELECT_STATEMENT;
 
 	private String selectAccessTokensFromUserNameSql = DEFAULT_ACCESS_TOKENS_FROM_USERNAME_SELECT_STATEMENT;
@@ -81,6 +97,10 @@ public class JdbcTokenStore implements TokenStore {
 
 	private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
 
+	private TokenSerializer tokenSerializer = new CompactTokenSerializer();
+
+	private boolean storeExpiration = false;
+
 	private final JdbcTemplate jdbcTemplate;
 
 	public JdbcTokenStore(DataSource dataSource) {
@@ -92,6 +112,38 @@ public class JdbcTokenStore implements TokenStore {
 		this.authenticationKeyGenerator = authenticationKeyGenerator;
 	}
 
+	/**
+	 * The strategy used to encode tokens and authentications for storage. The default writes a compact binary format
+	 * and can still read values that were stored with plain Java serialization.
+	 * 
+	 * @param tokenSerializer the token serializer to set
+	 */
+	public void setTokenSerializer(TokenSerializer tokenSerializer) {
+		this.tokenSerializer = tokenSerializer;
+	}
+
+	/**
+	 * Flag to indicate that the expiry time of each token should be stored in the expiration column of the token
+	 * tables (default false, for tables without the column). Required by {@link JdbcExpiredTokenPurger}. If the insert
+	 * statements have not been customized they are switched to ones that include the column, otherwise custom insert
+	 * statements need the expiration as an extra last parameter.
+	 * 
+	 * @param storeExpiration the flag value to set
+	 */
+	public void setStoreExpiration(boolean storeExpiration) {
+		this.storeExpiration = storeExpiration;
+		if (DEFAULT_ACCESS_TOKEN_INSERT_STATEMENT.equals(insertAccessTokenSql)
+				|| DEFAULT_ACCESS_TOKEN_WITH_EXPIRATION_INSERT_STATEMENT.equals(insertAccessTokenSql)) {
+			insertAccessTokenSql = storeExpiration ? DEFAULT_ACCESS_TOKEN_WITH_EXPIRATION_INSERT_STATEMENT
+					: DEFAULT_ACCESS_TOKEN_INSERT_STATEMENT;
+		}
+		if (DEFAULT_REFRESH_TOKEN_INSERT_STATEMENT.equals(insertRefreshTokenSql)
+				|| DEFAULT_REFRESH_TOKEN_WITH_EXPIRATION_INSERT_STATEMENT.equals(insertRefreshTokenSql)) {
+			insertRefreshTokenSql = storeExpiration ? DEFAULT_REFRESH_TOKEN_WITH_EXPIRATION_INSERT_STATEMENT
+					: DEFAULT_REFRESH_TOKEN_INSERT_STATEMENT;
+		}
+	}
+
 	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
 		OAuth2AccessToken accessToken = null;
 
@@ -99,12 +151,12 @@ public class JdbcTokenStore implements TokenStore {
 			accessToken = jdbcTemplate.queryForObject(selectAccessTokenFromAuthenticationSql,
 					new RowMapper<OAuth2AccessToken>() {
 						public OAuth2AccessToken mapRow(ResultSet rs, int rowNum) throws SQLException {
-							return SerializationUtils.deserialize(rs.getBytes(2));
+							return tokenSerializer.deserialize(rs.getBytes(2));
 						}
 					}, authenticationKeyGenerator.extractKey(authentication));
 		}
 		catch (EmptyResultDataAccessException e) {
-			if (LOG.isInfoEnabled()) {
+			if (LOG.isDebugEnabled()) {
 				LOG.debug("Failed to find access token for authentication " + authentication);
 			}
 		}
@@ -124,15 +176,19 @@ public class JdbcTokenStore implements TokenStore {
 			refreshToken = token.getRefreshToken().getValue();
 		}
 
-		jdbcTemplate.update(
-				insertAccessTokenSql,
-				new Object[] { token.getValue(), new SqlLobValue(SerializationUtils.serialize(token)),
-						authenticationKeyGenerator.extractKey(authentication),
-						authentication.isClientOnly() ? null : authentication.getName(),
-						authentication.getAuthorizationRequest().getClientId(),
-						new SqlLobValue(SerializationUtils.serialize(authentication)), refreshToken }, new int[] {
-						Types.VARCHAR, Types.BLOB, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB,
-						Types.VARCHAR });
+		Object[] args = new Object[] { token.getValue(), new SqlLobValue(tokenSerializer.serialize(token)),
+				authenticationKeyGenerator.extractKey(authentication),
+				authentication.isClientOnly() ? null : authentication.getName(),
+				authentication.getAuthorizationRequest().getClientId(),
+				new SqlLobValue(tokenSerializer.serialize(authentication)), refreshToken };
+		int[] argTypes = new int[] { Types.VARCHAR, Types.BLOB, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB,
+				Types.VARCHAR };
+		if (storeExpiration) {
+			update(insertAccessTokenSql, withExpiration(args, token.getExpiration()), withExpiration(argTypes));
+		}
+		else {
+			update(insertAccessTokenSql, args, argTypes);
+		}
 	}
 
 	public OAuth2AccessToken readAccessToken(String tokenValue) {
@@ -141,25 +197,47 @@ public class JdbcTokenStore implements TokenStore {
 		try {
 			accessToken = jdbcTemplate.queryForObject(selectAccessTokenSql, new RowMapper<OAuth2AccessToken>() {
 				public OAuth2AccessToken mapRow(ResultSet rs, int rowNum) throws SQLException {
-					return SerializationUtils.deserialize(rs.getBytes(2));
+					return tokenSerializer.deserialize(rs.getBytes(2));
 				}
 			}, tokenValue);
 		}
 		catch (EmptyResultDataAccessException e) {
-			if (LOG.isInfoEnabled()) {
-				LOG.info("Failed to find access token for token " + tokenValue);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Failed to find access token for token " + tokenValue);
 			}
 		}
 
 		return accessToken;
 	}
 
+	public StoredAccessToken readAccessTokenAndAuthentication(String tokenValue) {
+		StoredAccessToken stored = null;
+
+		try {
+			stored = jdbcTemplate.queryForObject(selectAccessTokenAndAuthenticationSql,
+					new RowMapper<StoredAccessToken>() {
+						public StoredAccessToken mapRow(ResultSet rs, int rowNum) throws SQLException {
+							OAuth2AccessToken accessToken = tokenSerializer.deserialize(rs.getBytes(2));
+							OAuth2Authentication authentication = tokenSerializer.deserialize(rs.getBytes(3));
+							return new StoredAccessToken(accessToken, authentication);
+						}
+					}, tokenValue);
+		}
+		catch (EmptyResultDataAccessException e) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Failed to find access token for token " + tokenValue);
+			}
+		}
+
+		return stored;
+	}
+
 	public void removeAccessToken(OAuth2AccessToken token) {
 	  removeAccessToken(token.getValue());
 	}
 	
 	public void removeAccessToken(String tokenValue) {
-		jdbcTemplate.update(deleteAccessTokenSql, tokenValue);
+		update(deleteAccessTokenSql, new Object[] { tokenValue }, new int[] { Types.VARCHAR });
 	}
 
   public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
@@ -173,13 +251,13 @@ public class JdbcTokenStore implements TokenStore {
 			authentication = jdbcTemplate.queryForObject(selectAccessTokenAuthenticationSql,
 					new RowMapper<OAuth2Authentication>() {
 						public OAuth2Authentication mapRow(ResultSet rs, int rowNum) throws SQLException {
-							return SerializationUtils.deserialize(rs.getBytes(2));
+							return tokenSerializer.deserialize(rs.getBytes(2));
 						}
 					}, token);
 		}
 		catch (EmptyResultDataAccessException e) {
-			if (LOG.isInfoEnabled()) {
-				LOG.info("Failed to find access token for token " + token);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Failed to find access token for token " + token);
 			}
 		}
 
@@ -187,10 +265,19 @@ public class JdbcTokenStore implements TokenStore {
 	}
 
 	public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
-		jdbcTemplate.update(insertRefreshTokenSql,
-				new Object[] { refreshToken.getValue(), new SqlLobValue(SerializationUtils.serialize(refreshToken)),
-						new SqlLobValue(SerializationUtils.serialize(authentication)) }, new int[] { Types.VARCHAR,
-						Types.BLOB, Types.BLOB });
+		Object[] args = new Object[] { refreshToken.getValue(), new SqlLobValue(tokenSerializer.serialize(refreshToken)),
+				new SqlLobValue(tokenSerializer.serialize(authentication)) };
+		int[] argTypes = new int[] { Types.VARCHAR, Types.BLOB, Types.BLOB };
+		if (storeExpiration) {
+			Date expiration = null;
+			if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+				expiration = ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration();
+			}
+			update(insertRefreshTokenSql, withExpiration(args, expiration), withExpiration(argTypes));
+		}
+		else {
+			update(insertRefreshTokenSql, args, argTypes);
+		}
 	}
 
 	public OAuth2RefreshToken readRefreshToken(String token) {
@@ -200,13 +287,13 @@ public class JdbcTokenStore implements TokenStore {
 			refreshToken = jdbcTemplate.queryForObject(selectRefreshTokenSql,
 					new RowMapper<OAuth2RefreshToken>() {
 						public DefaultOAuth2RefreshToken mapRow(ResultSet rs, int rowNum) throws SQLException {
-							return SerializationUtils.deserialize(rs.getBytes(2));
+							return tokenSerializer.deserialize(rs.getBytes(2));
 						}
 					}, token);
 		}
 		catch (EmptyResultDataAccessException e) {
-			if (LOG.isInfoEnabled()) {
-				LOG.info("Failed to find refresh token for token " + token);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Failed to find refresh token for token " + token);
 			}
 		}
 
@@ -218,7 +305,7 @@ public class JdbcTokenStore implements TokenStore {
 	}
 	
 	public void removeRefreshToken(String token) {
-		jdbcTemplate.update(deleteRefreshTokenSql, token);
+		update(deleteRefreshTokenSql, new Object[] { token }, new int[] { Types.VARCHAR });
 	}
 
   public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
@@ -232,13 +319,13 @@ public class JdbcTokenStore implements TokenStore {
 			authentication = jdbcTemplate.queryForObject(selectRefreshTokenAuthenticationSql,
 					new RowMapper<OAuth2Authentication>() {
 						public OAuth2Authentication mapRow(ResultSet rs, int rowNum) throws SQLException {
-							return SerializationUtils.deserialize(rs.getBytes(2));
+							return tokenSerializer.deserialize(rs.getBytes(2));
 						}
 					}, value);
 		}
 		catch (EmptyResultDataAccessException e) {
-			if (LOG.isInfoEnabled()) {
-				LOG.info("Failed to find access token for token " + value);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Failed to find access token for token " + value);
 			}
 		}
 
@@ -250,7 +337,7 @@ public class JdbcTokenStore implements TokenStore {
   }
 
 	public void removeAccessTokenUsingRefreshToken(String refreshToken) {
-		jdbcTemplate.update(deleteAccessTokenFromRefreshTokenSql, new Object[] { refreshToken },
+		update(deleteAccessTokenFromRefreshTokenSql, new Object[] { refreshToken },
 				new int[] { Types.VARCHAR });
 	}
 
@@ -260,7 +347,7 @@ public class JdbcTokenStore implements TokenStore {
 		try {
 			accessTokens = jdbcTemplate.query(selectAccessTokensFromClientIdSql, new RowMapper<OAuth2AccessToken>() {
 				public OAuth2AccessToken mapRow(ResultSet rs, int rowNum) throws SQLException {
-					return SerializationUtils.deserialize(rs.getBytes(2));
+					return tokenSerializer.deserialize(rs.getBytes(2));
 				}
 			}, clientId);
 		}
@@ -279,7 +366,7 @@ public class JdbcTokenStore implements TokenStore {
 		try {
 			accessTokens = jdbcTemplate.query(selectAccessTokensFromUserNameSql, new RowMapper<OAuth2AccessToken>() {
 				public OAuth2AccessToken mapRow(ResultSet rs, int rowNum) throws SQLException {
-					return SerializationUtils.deserialize(rs.getBytes(2));
+					return tokenSerializer.deserialize(rs.getBytes(2));
 				}
 			}, userName);
 		}
@@ -292,6 +379,30 @@ public class JdbcTokenStore implements TokenStore {
 		return accessTokens;
 	}
 
+	/**
+	 * Execute a statement that changes the contents of the store. All inserts and deletes go through here, so
+	 * subclasses can override it to defer or batch them.
+	 * 
+	 * @param sql the SQL statement
+	 * @param args the arguments for the statement
+	 * @param argTypes the SQL types of the arguments
+	 */
+	protected void update(String sql, Object[] args, int[] argTypes) {
+		jdbcTemplate.update(sql, args, argTypes);
+	}
+
+	private Object[] withExpiration(Object[] args, Date expiration) {
+		Object[] result = Arrays.copyOf(args, args.length + 1);
+		result[args.length] = expiration == null ? null : new Timestamp(expiration.getTime());
+		return result;
+	}
+
+	private int[] withExpiration(int[] argTypes) {
+		int[] result = Arrays.copyOf(argTypes, argTypes.length + 1);
+		result[argTypes.length] = Types.TIMESTAMP;
+		return result;
+	}
+
 	public void setInsertAccessTokenSql(String insertAccessTokenSql) {
 		this.insertAccessTokenSql = insertAccessTokenSql;
 	}
@@ -320,6 +431,10 @@ public class JdbcTokenStore implements TokenStore {
 		this.selectAccessTokenAuthenticationSql = selectAccessTokenAuthenticationSql;
 	}
 
+	public void setSelectAccessTokenAndAuthenticationSql(String selectAccessTokenAndAuthenticationSql) {
+		this.selectAccessTokenAndAuthenticationSql = selectAccessTokenAndAuthenticationSql;
+	}
+
 	public void setSelectRefreshTokenAuthenticationSql(String selectRefreshTokenAuthenticationSql) {
 		this.selectRefreshTokenAuthenticationSql = selectRefreshTokenAuthenticationSql;
 	}
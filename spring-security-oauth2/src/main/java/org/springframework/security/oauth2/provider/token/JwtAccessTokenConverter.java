@@ -0,0 +1,281 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.jwt.Jwt;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.springframework.security.jwt.crypto.sign.RsaSigner;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+import org.springframework.security.jwt.crypto.sign.Signer;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
+import org.springframework.security.oauth2.provider.AuthorizationRequest;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+
+/**
+ * Token enhancer that replaces the value of an access token with a signed JWT carrying the details of the
+ * authentication (client id, user name, scope, authorities, resource ids and expiry), so that a resource server can
+ * validate it without access to the token store (see {@link JwtTokenServices}).
+ * <p>
+ * Tokens are signed with HMAC SHA-256 using a shared secret by default, or with RSA if the signing key is a PEM encoded
+ * RSA private key, in which case resource servers only need the public key (see {@link #setVerifierKey(String)}). If no
+ * key is set a random one is generated, which is only useful if tokens are created and used in the same process.
+ */
+public class JwtAccessTokenConverter implements TokenEnhancer {
+
+	public static final String TOKEN_ID = "jti";
+
+	public static final String CLIENT_ID = AuthorizationRequest.CLIENT_ID;
+
+	public static final String USER_NAME = "user_name";
+
+	public static final String SCOPE = OAuth2AccessToken.SCOPE;
+
+	public static final String AUTHORITIES = "authorities";
+
+	public static final String AUD = "aud";
+
+	public static final String EXP = "exp";
+
+	private static final String RSA_KEY_PREFIX = "-----BEGIN";
+
+	private static final String SSH_KEY_PREFIX = "ssh-rsa ";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private Signer signer;
+
+	private SignatureVerifier verifier;
+
+	public JwtAccessTokenConverter() {
+		setSigningKey(new RandomValueStringGenerator(32).generate());
+	}
+
+	/**
+	 * The key used to sign tokens: either a PEM encoded RSA private key, or a shared secret for HMAC SHA-256. Also sets
+	 * the verifier key (for RSA the public key is extracted from the private key).
+	 *
+	 * @param key the signing key to set
+	 */
+	public void setSigningKey(String key) {
+		Assert.hasText(key, "Signing key must not be empty");
+		key = key.trim();
+		if (key.startsWith(RSA_KEY_PREFIX)) {
+			this.signer = new RsaSigner(key);
+			this.verifier = new RsaVerifier(key);
+		}
+		else {
+			MacSigner macSigner = new MacSigner(key);
+			this.signer = macSigner;
+			this.verifier = macSigner;
+		}
+	}
+
+	/**
+	 * The key used to verify tokens: either an RSA public key (PEM encoded "PUBLIC KEY" or "RSA PUBLIC KEY", or SSH
+	 * encoded), a PEM encoded RSA private key, or a shared secret for HMAC SHA-256. Resource servers that only decode
+	 * tokens need nothing else.
+	 *
+	 * @param key the verifier key to set
+	 */
+	public void setVerifierKey(String key) {
+		Assert.hasText(key, "Verifier key must not be empty");
+		key = key.trim();
+		if (key.startsWith(RSA_KEY_PREFIX) || key.startsWith(SSH_KEY_PREFIX)) {
+			this.verifier = new RsaVerifier(key);
+		}
+		else {
+			this.verifier = new MacSigner(key);
+		}
+	}
+
+	/**
+	 * @param signer the signer to set (overrides the signing key)
+	 */
+	public void setSigner(Signer signer) {
+		this.signer = signer;
+	}
+
+	/**
+	 * @param verifier the verifier to set (overrides the verifier key)
+	 */
+	public void setVerifier(SignatureVerifier verifier) {
+		this.verifier = verifier;
+	}
+
+	public OAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+		DefaultOAuth2AccessToken result = new DefaultOAuth2AccessToken(accessToken);
+		result.setValue(encode(convertAccessToken(accessToken, authentication)));
+		return result;
+	}
+
+	/**
+	 * Extract the claims to be encoded in the JWT for an access token.
+	 *
+	 * @param token an access token
+	 * @param authentication the current authentication
+	 * @return a map of claims
+	 */
+	protected Map<String, Object> convertAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+		Map<String, Object> claims = new LinkedHashMap<String, Object>();
+		AuthorizationRequest authorizationRequest = authentication.getAuthorizationRequest();
+		claims.put(TOKEN_ID, token.getValue());
+		claims.put(CLIENT_ID, authorizationRequest.getClientId());
+		if (!authentication.isClientOnly()) {
+			claims.put(USER_NAME, authentication.getUserAuthentication().getName());
+		}
+		if (token.getScope() != null) {
+			claims.put(SCOPE, token.getScope());
+		}
+		if (authentication.getAuthorities() != null && !authentication.getAuthorities().isEmpty()) {
+			claims.put(AUTHORITIES, AuthorityUtils.authorityListToSet(authentication.getAuthorities()));
+		}
+		if (authorizationRequest.getResourceIds() != null && !authorizationRequest.getResourceIds().isEmpty()) {
+			claims.put(AUD, authorizationRequest.getResourceIds());
+		}
+		if (token.getExpiration() != null) {
+			claims.put(EXP, token.getExpiration().getTime() / 1000);
+		}
+		return claims;
+	}
+
+	/**
+	 * Recreate an access token from its value and decoded claims.
+	 *
+	 * @param value the token value (the encoded JWT)
+	 * @param claims the claims decoded from the token
+	 * @return an access token
+	 */
+	public OAuth2AccessToken extractAccessToken(String value, Map<String, ?> claims) {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(value);
+		Object exp = claims.get(EXP);
+		if (exp instanceof Number) {
+			token.setExpiration(new Date(((Number) exp).longValue() * 1000L));
+		}
+		token.setScope(getStrings(claims, SCOPE));
+		return token;
+	}
+
+	/**
+	 * Recreate an authentication from the claims decoded from a token.
+	 *
+	 * @param claims the claims decoded from a token
+	 * @return an authentication
+	 */
+	public OAuth2Authentication extractAuthentication(Map<String, ?> claims) {
+		Object clientId = claims.get(CLIENT_ID);
+		if (!(clientId instanceof String)) {
+			throw new InvalidTokenException("Access token has no client id");
+		}
+		DefaultAuthorizationRequest authorizationRequest = new DefaultAuthorizationRequest((String) clientId,
+				getStrings(claims, SCOPE));
+		authorizationRequest.setResourceIds(getStrings(claims, AUD));
+		authorizationRequest.setApproved(true);
+		Set<String> authorityNames = getStrings(claims, AUTHORITIES);
+		Collection<GrantedAuthority> authorities = AuthorityUtils.createAuthorityList(authorityNames
+				.toArray(new String[authorityNames.size()]));
+		Authentication user = null;
+		Object userName = claims.get(USER_NAME);
+		if (userName instanceof String) {
+			user = new UsernamePasswordAuthenticationToken(userName, "N/A", authorities);
+		}
+		else {
+			authorizationRequest.setAuthorities(authorities);
+		}
+		return new OAuth2Authentication(authorizationRequest, user);
+	}
+
+	/**
+	 * Verify the signature of a token and decode its claims.
+	 *
+	 * @param token the token value
+	 * @return the claims in the token
+	 * @throws InvalidTokenException if the token cannot be decoded or its signature is not valid
+	 */
+	public Map<String, Object> decode(String token) {
+		Assert.state(verifier != null, "No verifier key has been set");
+		try {
+			Jwt jwt = JwtHelper.decodeAndVerify(token, verifier);
+			@SuppressWarnings("unchecked")
+			Map<String, Object> claims = objectMapper.readValue(jwt.getClaims(), Map.class);
+			return claims;
+		}
+		catch (InvalidSignatureException e) {
+			throw new InvalidTokenException("Invalid access token (bad signature): " + token, e);
+		}
+		catch (IllegalArgumentException e) {
+			throw new InvalidTokenException("Invalid access token (cannot decode): " + token, e);
+		}
+		catch (IOException e) {
+			throw new InvalidTokenException("Invalid access token (cannot read claims): " + token, e);
+		}
+	}
+
+	/**
+	 * Sign and encode a map of claims.
+	 *
+	 * @param claims the claims to encode
+	 * @return the encoded JWT
+	 */
+	protected String encode(Map<String, Object> claims) {
+		Assert.state(signer != null, "No signing key has been set");
+		String content;
+		try {
+			content = objectMapper.writeValueAsString(claims);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot convert access token to JSON", e);
+		}
+		return JwtHelper.encode(content, signer).getEncoded();
+	}
+
+	private Set<String> getStrings(Map<String, ?> claims, String name) {
+		Object value = claims.get(name);
+		if (value == null) {
+			return Collections.emptySet();
+		}
+		Set<String> result = new LinkedHashSet<String>();
+		if (value instanceof List) {
+			for (Object item : (List<?>) value) {
+				result.add(String.valueOf(item));
+			}
+		}
+		else {
+			result.add(String.valueOf(value));
+		}
+		return result;
+	}
+
+}
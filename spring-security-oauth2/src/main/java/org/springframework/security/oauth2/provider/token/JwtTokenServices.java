@@ -0,0 +1,49 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.Map;
+
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+
+/**
+ * Resource server token services for access tokens created by a {@link JwtAccessTokenConverter}. The token is
+ * verified and decoded locally, so no token store is needed. The flip side is that a token cannot be revoked before it
+ * expires, so it is a good idea to keep access tokens short lived.
+ */
+public class JwtTokenServices implements ResourceServerTokenServices {
+
+	private final JwtAccessTokenConverter converter;
+
+	public JwtTokenServices(JwtAccessTokenConverter converter) {
+		Assert.notNull(converter, "Access token converter is required");
+		this.converter = converter;
+	}
+
+	public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException {
+		Map<String, Object> claims = converter.decode(accessToken);
+		if (converter.extractAccessToken(accessToken, claims).isExpired()) {
+			throw new InvalidTokenException("Access token expired: " + accessToken);
+		}
+		return converter.extractAuthentication(claims);
+	}
+
+	public OAuth2AccessToken readAccessToken(String accessToken) {
+		return converter.extractAccessToken(accessToken, converter.decode(accessToken));
+	}
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.security.oauth2.common.util.ExpiryIndex;
+import org.springframework.util.Assert;
+
+/**
+ * A bounded, short lived record of access token values that were recently rejected (because they were unknown,
+ * expired or revoked), so that a client retrying a dead token can be turned away without a trip to the token store.
+ * Checking a value is a single concurrent map lookup. Values are recorded exactly (there are no false positives), for
+ * at most the configured time to live, and when the maximum size is reached the entries that would expire soonest are
+ * discarded.
+ * <p>
+ * A value is only ever rejected for the time to live, so keep it short if a token can be looked up before it is
+ * visible in the store (e.g. with a write-behind store shared by several nodes).
+ *
+ * @see org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationProcessingFilter#setRejectedTokenCache(RejectedTokenCache)
+ * @see DefaultTokenServices#setRejectedTokenCache(RejectedTokenCache)
+ */
+public class RejectedTokenCache {
+
+	private static final int DEFAULT_MAX_SIZE = 10000;
+
+	private static final int DEFAULT_TIME_TO_LIVE_SECONDS = 30;
+
+	private final ConcurrentHashMap<String, Long> rejected = new ConcurrentHashMap<String, Long>();
+
+	private final ExpiryIndex<String> expiryIndex = new ExpiryIndex<String>();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private int maxSize = DEFAULT_MAX_SIZE;
+
+	private int timeToLiveSeconds = DEFAULT_TIME_TO_LIVE_SECONDS;
+
+	/**
+	 * The maximum number of token values to remember (default 10000).
+	 *
+	 * @param maxSize the maximum size to set
+	 */
+	public void setMaxSize(int maxSize) {
+		Assert.isTrue(maxSize > 0, "Maximum size must be positive");
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * The time in seconds for which a token value is rejected after it is recorded (default 30).
+	 *
+	 * @param timeToLiveSeconds the time to live to set
+	 */
+	public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+		this.timeToLiveSeconds = timeToLiveSeconds;
+	}
+
+	/**
+	 * @return the number of lookups that found a rejected token
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return the number of token values currently remembered (including any that have expired but not yet been
+	 * discarded)
+	 */
+	public int getSize() {
+		return rejected.size();
+	}
+
+	/**
+	 * @param tokenValue a token value
+	 * @return true if the token value was recently rejected
+	 */
+	public boolean isRejected(String tokenValue) {
+		Long expiry = rejected.get(tokenValue);
+		if (expiry == null) {
+			return false;
+		}
+		if (expiry <= System.currentTimeMillis()) {
+			if (rejected.remove(tokenValue, expiry)) {
+				expiryIndex.remove(tokenValue);
+			}
+			return false;
+		}
+		hitCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Record a token value as rejected, e.g. because the token store does not know it, or because it has just been
+	 * revoked (possibly on another node).
+	 *
+	 * @param tokenValue the token value to reject
+	 */
+	public void reject(String tokenValue) {
+		long now = System.currentTimeMillis();
+		for (String expired : expiryIndex.expire(now)) {
+			rejected.remove(expired);
+		}
+		int excess = expiryIndex.size() + 1 - maxSize;
+		if (excess > 0) {
+			for (String evicted : expiryIndex.removeEarliest(excess)) {
+				rejected.remove(evicted);
+			}
+		}
+		long expiry = now + timeToLiveSeconds * 1000L;
+		rejected.put(tokenValue, expiry);
+		expiryIndex.put(tokenValue, expiry);
+	}
+
+	/**
+	 * Forget all rejected token values.
+	 */
+	public void clear() {
+		rejected.clear();
+		expiryIndex.clear();
+	}
+
+}
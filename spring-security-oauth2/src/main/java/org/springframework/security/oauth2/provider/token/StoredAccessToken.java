@@ -0,0 +1,49 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * An access token together with the authentication it was stored against, as returned from a single
+ * {@link TokenStore} lookup.
+ *
+ * @see StoredAccessTokenReader
+ */
+public class StoredAccessToken {
+
+	private final OAuth2AccessToken accessToken;
+
+	private final OAuth2Authentication authentication;
+
+	public StoredAccessToken(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+		this.accessToken = accessToken;
+		this.authentication = authentication;
+	}
+
+	/**
+	 * @return the access token
+	 */
+	public OAuth2AccessToken getAccessToken() {
+		return accessToken;
+	}
+
+	/**
+	 * @return the authentication stored with the access token
+	 */
+	public OAuth2Authentication getAuthentication() {
+		return authentication;
+	}
+
+}
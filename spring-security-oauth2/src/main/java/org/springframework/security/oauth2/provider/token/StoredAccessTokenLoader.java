@@ -0,0 +1,34 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import org.springframework.security.core.AuthenticationException;
+
+/**
+ * Optional interface for {@link ResourceServerTokenServices} that can load a valid access token and its
+ * authentication together. {@link CachingResourceServerTokenServices} uses it on a cache miss when the delegate
+ * implements it, and otherwise loads the authentication and then reads the access token.
+ */
+public interface StoredAccessTokenLoader {
+
+	/**
+	 * Load a valid access token together with its authentication. Implementations must apply the same checks as
+	 * {@link ResourceServerTokenServices#loadAuthentication(String)}.
+	 * 
+	 * @param accessTokenValue The token value.
+	 * @return The access token and its authentication.
+	 * @throws AuthenticationException If the token is invalid or expired.
+	 */
+	StoredAccessToken loadAccessTokenAndAuthentication(String accessTokenValue) throws AuthenticationException;
+
+}
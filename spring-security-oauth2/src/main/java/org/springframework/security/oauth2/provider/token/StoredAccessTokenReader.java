@@ -0,0 +1,30 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+/**
+ * Optional interface for a {@link TokenStore} that can read an access token and the authentication it was stored
+ * against in one lookup. {@link DefaultTokenServices} uses it when the token store implements it, and otherwise reads
+ * the token and the authentication separately.
+ */
+public interface StoredAccessTokenReader {
+
+	/**
+	 * Read an access token and the authentication it was stored against in one lookup.
+	 * 
+	 * @param tokenValue The token value.
+	 * @return The access token and its authentication, or null if there is no such token.
+	 */
+	StoredAccessToken readAccessTokenAndAuthentication(String tokenValue);
+
+}
@@ -0,0 +1,625 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link JdbcTokenStore} that queues its inserts and deletes and writes them in the background, so that issuing a
+ * token does not wait for a database commit. The queue is flushed by a background thread after every
+ * {@link #setFlushInterval(long) flush interval}, with consecutive statements of the same kind grouped into JDBC
+ * batches and all of them committed in a single transaction. Until a change has been written, lookups through this
+ * instance see it anyway, but other nodes sharing the database do not.
+ * <p>
+ * The trade-off between durability and latency is controlled by the flush interval (changes that are still queued
+ * are lost if the process dies), the {@link #setMaxQueueSize(int) maximum queue size} (beyond which callers flush the
+ * queue themselves) and whether {@link #setSynchronousRemoval(boolean) removals} are written immediately. Queries
+ * that can only be answered by the database (by user name, by client id, and removal by refresh token) always flush
+ * the queue first.
+ * <p>
+ * Unlike a synchronous store, a failed write is not reported to the caller that made the change. If the database
+ * cannot be reached, the changes go back on the queue (and stay visible through this instance) until a later flush
+ * succeeds, but only up to the maximum queue size: the oldest changes beyond that are discarded. A change that the
+ * database rejects (e.g. a duplicate key) is discarded straight away. Discarded changes are logged and counted in
+ * {@link #getFailedUpdateCount()}.
+ */
+public class WriteBehindJdbcTokenStore extends JdbcTokenStore implements InitializingBean, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(WriteBehindJdbcTokenStore.class);
+
+	private static final long DEFAULT_FLUSH_INTERVAL = 50;
+
+	private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+	private static final int DEFAULT_MAX_QUEUE_SIZE = 1000;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+
+	private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+	private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+	private int maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+
+	private boolean synchronousRemoval = true;
+
+	private ScheduledExecutorService flusher;
+
+	// Guards the queue and the pending changes, but is never held while talking to the database
+	private final Object monitor = new Object();
+
+	private final Object flushMonitor = new Object();
+
+	// Collects the statements of a change that is being prepared outside the monitor
+	private final ThreadLocal<List<PendingUpdate>> preparing = new ThreadLocal<List<PendingUpdate>>();
+
+	private List<PendingUpdate> queue = new ArrayList<PendingUpdate>();
+
+	private long sequence;
+
+	private final Map<String, Pending<OAuth2AccessToken>> accessTokens = new HashMap<String, Pending<OAuth2AccessToken>>();
+
+	private final Map<String, Pending<String>> authenticationToAccessToken = new HashMap<String, Pending<String>>();
+
+	private final Map<String, Pending<OAuth2RefreshToken>> refreshTokens = new HashMap<String, Pending<OAuth2RefreshToken>>();
+
+	private final AtomicLong flushCount = new AtomicLong();
+
+	private final AtomicLong flushedUpdateCount = new AtomicLong();
+
+	private final AtomicLong failedUpdateCount = new AtomicLong();
+
+	private final AtomicLong totalFlushTime = new AtomicLong();
+
+	private volatile long lastFlushTime;
+
+	public WriteBehindJdbcTokenStore(DataSource dataSource) {
+		super(dataSource);
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+	}
+
+	@Override
+	public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
+		super.setAuthenticationKeyGenerator(authenticationKeyGenerator);
+		this.authenticationKeyGenerator = authenticationKeyGenerator;
+	}
+
+	/**
+	 * The maximum time in milliseconds that a change waits in the queue before it is written (default 50). This is
+	 * also the window in which changes are grouped into a single commit.
+	 *
+	 * @param flushInterval the flush interval to set
+	 */
+	public void setFlushInterval(long flushInterval) {
+		Assert.isTrue(flushInterval > 0, "Flush interval must be positive");
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * The maximum number of statements in one JDBC batch (default 100).
+	 *
+	 * @param maxBatchSize the maximum batch size to set
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		Assert.isTrue(maxBatchSize > 0, "Maximum batch size must be positive");
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * The number of queued changes at which the caller flushes the queue instead of leaving it to the background
+	 * thread (default 1000). This bounds the memory used by the queue and the number of changes that can be lost.
+	 *
+	 * @param maxQueueSize the maximum queue size to set
+	 */
+	public void setMaxQueueSize(int maxQueueSize) {
+		Assert.isTrue(maxQueueSize > 0, "Maximum queue size must be positive");
+		this.maxQueueSize = maxQueueSize;
+	}
+
+	/**
+	 * Flag to indicate that removing a token writes the queue immediately (default true), so that a revoked token is
+	 * rejected by all nodes straight away. If false, removals are queued like any other change.
+	 *
+	 * @param synchronousRemoval the flag value to set
+	 */
+	public void setSynchronousRemoval(boolean synchronousRemoval) {
+		this.synchronousRemoval = synchronousRemoval;
+	}
+
+	public void afterPropertiesSet() throws Exception {
+		if (flusher == null) {
+			flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "WriteBehindJdbcTokenStore-flush");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			flusher.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						flush();
+					}
+					catch (RuntimeException e) {
+						logger.error("Could not flush token store updates", e);
+					}
+				}
+			}, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stop the background thread and write any changes that are still queued.
+	 */
+	public void destroy() throws Exception {
+		if (flusher != null) {
+			flusher.shutdown();
+			flusher = null;
+		}
+		flush();
+	}
+
+	/**
+	 * @return the number of changes waiting to be written
+	 */
+	public int getQueueDepth() {
+		synchronized (monitor) {
+			return queue.size();
+		}
+	}
+
+	/**
+	 * @return the number of times the queue has been written
+	 */
+	public long getFlushCount() {
+		return flushCount.get();
+	}
+
+	/**
+	 * @return the total number of changes that have been written (or failed)
+	 */
+	public long getFlushedUpdateCount() {
+		return flushedUpdateCount.get();
+	}
+
+	/**
+	 * @return the number of changes that could not be written
+	 */
+	public long getFailedUpdateCount() {
+		return failedUpdateCount.get();
+	}
+
+	/**
+	 * @return the duration of the last flush in milliseconds
+	 */
+	public long getLastFlushTime() {
+		return lastFlushTime;
+	}
+
+	/**
+	 * @return the total duration of all flushes in milliseconds
+	 */
+	public long getTotalFlushTime() {
+		return totalFlushTime.get();
+	}
+
+	@Override
+	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+		Pending<String> pending = getPending(authenticationToAccessToken,
+				authenticationKeyGenerator.extractKey(authentication));
+		if (pending == null) {
+			OAuth2AccessToken accessToken = super.getAccessToken(authentication);
+			if (accessToken != null && isRemoved(accessTokens, accessToken.getValue())) {
+				return null;
+			}
+			return accessToken;
+		}
+		OAuth2AccessToken accessToken = readAccessToken(pending.value);
+		if (accessToken != null && !authentication.equals(readAuthentication(accessToken.getValue()))) {
+			removeAccessToken(accessToken.getValue());
+			storeAccessToken(accessToken, authentication);
+		}
+		return accessToken;
+	}
+
+	@Override
+	public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+		String key = authenticationKeyGenerator.extractKey(authentication);
+		List<PendingUpdate> prepared = startPreparing();
+		try {
+			super.storeAccessToken(token, authentication);
+		}
+		finally {
+			preparing.remove();
+		}
+		synchronized (monitor) {
+			enqueue(prepared);
+			accessTokens.put(token.getValue(), new Pending<OAuth2AccessToken>(token, authentication, sequence));
+			authenticationToAccessToken.put(key, new Pending<String>(token.getValue(), null, sequence));
+		}
+		flushIfFull();
+	}
+
+	@Override
+	public OAuth2AccessToken readAccessToken(String tokenValue) {
+		Pending<OAuth2AccessToken> pending = getPending(accessTokens, tokenValue);
+		if (pending != null) {
+			return pending.value;
+		}
+		return super.readAccessToken(tokenValue);
+	}
+
+	@Override
+	public StoredAccessToken readAccessTokenAndAuthentication(String tokenValue) {
+		Pending<OAuth2AccessToken> pending = getPending(accessTokens, tokenValue);
+		if (pending != null) {
+			return pending.value == null ? null : new StoredAccessToken(pending.value, pending.authentication);
+		}
+		return super.readAccessTokenAndAuthentication(tokenValue);
+	}
+
+	@Override
+	public OAuth2Authentication readAuthentication(String token) {
+		Pending<OAuth2AccessToken> pending = getPending(accessTokens, token);
+		if (pending != null) {
+			return pending.authentication;
+		}
+		return super.readAuthentication(token);
+	}
+
+	@Override
+	public void removeAccessToken(String tokenValue) {
+		synchronized (monitor) {
+			super.removeAccessToken(tokenValue);
+			accessTokens.put(tokenValue, new Pending<OAuth2AccessToken>(null, null, sequence));
+		}
+		flushAfterRemoval();
+	}
+
+	@Override
+	public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+		List<PendingUpdate> prepared = startPreparing();
+		try {
+			super.storeRefreshToken(refreshToken, authentication);
+		}
+		finally {
+			preparing.remove();
+		}
+		synchronized (monitor) {
+			enqueue(prepared);
+			refreshTokens.put(refreshToken.getValue(), new Pending<OAuth2RefreshToken>(refreshToken, authentication,
+					sequence));
+		}
+		flushIfFull();
+	}
+
+	@Override
+	public OAuth2RefreshToken readRefreshToken(String token) {
+		Pending<OAuth2RefreshToken> pending = getPending(refreshTokens, token);
+		if (pending != null) {
+			return pending.value;
+		}
+		return super.readRefreshToken(token);
+	}
+
+	@Override
+	public OAuth2Authentication readAuthenticationForRefreshToken(String value) {
+		Pending<OAuth2RefreshToken> pending = getPending(refreshTokens, value);
+		if (pending != null) {
+			return pending.authentication;
+		}
+		return super.readAuthenticationForRefreshToken(value);
+	}
+
+	@Override
+	public void removeRefreshToken(String token) {
+		synchronized (monitor) {
+			super.removeRefreshToken(token);
+			refreshTokens.put(token, new Pending<OAuth2RefreshToken>(null, null, sequence));
+		}
+		flushAfterRemoval();
+	}
+
+	@Override
+	public void removeAccessTokenUsingRefreshToken(String refreshToken) {
+		synchronized (monitor) {
+			super.removeAccessTokenUsingRefreshToken(refreshToken);
+			for (Map.Entry<String, Pending<OAuth2AccessToken>> entry : accessTokens.entrySet()) {
+				OAuth2AccessToken accessToken = entry.getValue().value;
+				if (accessToken != null && accessToken.getRefreshToken() != null
+						&& refreshToken.equals(accessToken.getRefreshToken().getValue())) {
+					entry.setValue(new Pending<OAuth2AccessToken>(null, null, sequence));
+				}
+			}
+		}
+		// Access tokens that were already written can only be found by the database
+		flush();
+	}
+
+	@Override
+	public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+		flush();
+		return super.findTokensByClientId(clientId);
+	}
+
+	@Override
+	public Collection<OAuth2AccessToken> findTokensByUserName(String userName) {
+		flush();
+		return super.findTokensByUserName(userName);
+	}
+
+	/**
+	 * Queue the change instead of executing it.
+	 */
+	@Override
+	protected void update(String sql, Object[] args, int[] argTypes) {
+		PendingUpdate update = new PendingUpdate(sql, args, argTypes);
+		List<PendingUpdate> prepared = preparing.get();
+		if (prepared != null) {
+			// Queued by the caller, together with its pending changes
+			prepared.add(update);
+			return;
+		}
+		synchronized (monitor) {
+			enqueue(Collections.singletonList(update));
+		}
+	}
+
+	/**
+	 * Write all queued changes to the database in one transaction and wait for the commit.
+	 */
+	public void flush() {
+		synchronized (flushMonitor) {
+			List<PendingUpdate> updates;
+			long flushedSequence;
+			synchronized (monitor) {
+				if (queue.isEmpty()) {
+					return;
+				}
+				updates = queue;
+				queue = new ArrayList<PendingUpdate>();
+				flushedSequence = sequence;
+			}
+			long start = System.currentTimeMillis();
+			List<PendingUpdate> unwritten;
+			try {
+				unwritten = write(updates);
+			}
+			catch (RuntimeException e) {
+				// Nothing was committed, so keep all of them
+				logger.error("Could not write " + updates.size() + " token store updates, keeping them for the next flush",
+						e);
+				unwritten = updates;
+			}
+			synchronized (monitor) {
+				if (unwritten.isEmpty()) {
+					// The database is now up to date with (or has rejected) these changes
+					release(accessTokens, flushedSequence);
+					release(authenticationToAccessToken, flushedSequence);
+					release(refreshTokens, flushedSequence);
+				}
+				else {
+					requeue(unwritten);
+				}
+			}
+			long duration = System.currentTimeMillis() - start;
+			flushCount.incrementAndGet();
+			flushedUpdateCount.addAndGet(updates.size() - unwritten.size());
+			totalFlushTime.addAndGet(duration);
+			lastFlushTime = duration;
+			if (logger.isDebugEnabled()) {
+				logger.debug("Wrote " + updates.size() + " token store updates in " + duration + "ms");
+			}
+		}
+	}
+
+	/**
+	 * Write the changes in one transaction, or one by one if the database rejects some of them.
+	 *
+	 * @return the changes that could not be written because of a (presumably transient) failure of the database
+	 */
+	private List<PendingUpdate> write(final List<PendingUpdate> updates) {
+		try {
+			transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					int start = 0;
+					while (start < updates.size()) {
+						PendingUpdate first = updates.get(start);
+						int end = start + 1;
+						while (end < updates.size() && end - start < maxBatchSize
+								&& updates.get(end).sql.equals(first.sql)) {
+							end++;
+						}
+						if (end - start == 1) {
+							jdbcTemplate.update(first.sql, first.args, first.argTypes);
+						}
+						else {
+							List<Object[]> batchArgs = new ArrayList<Object[]>(end - start);
+							for (int i = start; i < end; i++) {
+								batchArgs.add(updates.get(i).args);
+							}
+							jdbcTemplate.batchUpdate(first.sql, batchArgs, first.argTypes);
+						}
+						start = end;
+					}
+				}
+			});
+			return Collections.emptyList();
+		}
+		catch (DataIntegrityViolationException e) {
+			// Find out which changes cannot be written and keep the rest
+			logger.warn("Could not write " + updates.size() + " token store updates in one batch, retrying one by one",
+					e);
+		}
+		catch (DataAccessException e) {
+			logger.warn("Could not write " + updates.size() + " token store updates, keeping them for the next flush", e);
+			return updates;
+		}
+		catch (TransactionException e) {
+			logger.warn("Could not write " + updates.size() + " token store updates, keeping them for the next flush", e);
+			return updates;
+		}
+		for (int i = 0; i < updates.size(); i++) {
+			PendingUpdate update = updates.get(i);
+			try {
+				jdbcTemplate.update(update.sql, update.args, update.argTypes);
+			}
+			catch (DataIntegrityViolationException e) {
+				failedUpdateCount.incrementAndGet();
+				logger.error("Discarding token store update rejected by the database: " + update.sql, e);
+			}
+			catch (DataAccessException e) {
+				logger.warn("Could not write " + (updates.size() - i)
+						+ " token store updates, keeping them for the next flush", e);
+				return new ArrayList<PendingUpdate>(updates.subList(i, updates.size()));
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Put changes that could not be written back at the head of the queue, discarding the oldest if the queue would
+	 * grow beyond its maximum size. Must be called with the monitor held.
+	 */
+	private void requeue(List<PendingUpdate> unwritten) {
+		int discard = Math.min(unwritten.size(), unwritten.size() + queue.size() - maxQueueSize);
+		if (discard > 0) {
+			failedUpdateCount.addAndGet(discard);
+			logger.error("Discarding " + discard + " token store updates that could not be written");
+		}
+		List<PendingUpdate> requeued = new ArrayList<PendingUpdate>(unwritten.size() + queue.size());
+		requeued.addAll(unwritten.subList(Math.max(discard, 0), unwritten.size()));
+		requeued.addAll(queue);
+		queue = requeued;
+	}
+
+	private List<PendingUpdate> startPreparing() {
+		List<PendingUpdate> prepared = new ArrayList<PendingUpdate>(1);
+		preparing.set(prepared);
+		return prepared;
+	}
+
+	/**
+	 * Add changes to the end of the queue. Must be called with the monitor held.
+	 */
+	private void enqueue(List<PendingUpdate> updates) {
+		queue.addAll(updates);
+		sequence += updates.size();
+	}
+
+	private void flushIfFull() {
+		if (getQueueDepth() >= maxQueueSize) {
+			flush();
+		}
+	}
+
+	private void flushAfterRemoval() {
+		if (synchronousRemoval) {
+			flush();
+		}
+		else {
+			flushIfFull();
+		}
+	}
+
+	private <T> Pending<T> getPending(Map<String, Pending<T>> pending, String key) {
+		synchronized (monitor) {
+			return pending.get(key);
+		}
+	}
+
+	private <T> boolean isRemoved(Map<String, Pending<T>> pending, String key) {
+		Pending<T> value = getPending(pending, key);
+		return value != null && value.value == null;
+	}
+
+	private <T> void release(Map<String, Pending<T>> pending, long flushedSequence) {
+		for (Iterator<Pending<T>> iterator = pending.values().iterator(); iterator.hasNext();) {
+			if (iterator.next().sequence <= flushedSequence) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private static class PendingUpdate {
+
+		private final String sql;
+
+		private final Object[] args;
+
+		private final int[] argTypes;
+
+		public PendingUpdate(String sql, Object[] args, int[] argTypes) {
+			this.sql = sql;
+			this.args = args;
+			this.argTypes = argTypes;
+		}
+
+	}
+
+	/**
+	 * A change that has been queued but not yet written. A null value means that the token has been removed.
+	 */
+	private static class Pending<T> {
+
+		private final T value;
+
+		private final OAuth2Authentication authentication;
+
+		private final long sequence;
+
+		public Pending(T value, OAuth2Authentication authentication, long sequence) {
+			this.value = value;
+			this.authentication = authentication;
+			this.sequence = sequence;
+		}
+
+	}
+
+}
@@ -0,0 +1,61 @@
+-- Recommended schema for JdbcTokenStore and JdbcAuthorizationCodeServices. Binary columns are declared as
+-- LONGVARBINARY: use the binary type of your database instead if it is different (e.g. BLOB, BYTEA or VARBINARY(MAX)).
+--
+-- The expiration columns are only written if JdbcTokenStore.storeExpiration is set (they are needed by
+-- JdbcExpiredTokenPurger). Upgrading from a schema without them:
+--   alter table oauth_access_token add column expiration TIMESTAMP;
+--   alter table oauth_refresh_token add column expiration TIMESTAMP;
+-- (plus the indexes below). Existing rows keep a null expiration and are not purged.
+--
+-- The token_id columns are primary keys. Older schemas had no key and may contain duplicate rows for the same token
+-- (e.g. from a retried insert): remove the duplicates before adding the keys, e.g.
+--   alter table oauth_access_token add primary key (token_id);
+--   alter table oauth_refresh_token add primary key (token_id);
+-- The same applies to the code column of oauth_code:
+--   alter table oauth_code add primary key (code);
+--
+-- The code creation time is only written if JdbcAuthorizationCodeServices.storeCreationTime is set (it is needed by
+-- removeUnredeemedCodes). Upgrading from a schema without it:
+--   alter table oauth_code add column created TIMESTAMP;
+-- (plus the index below). Existing codes keep a null creation time and are not purged.
+
+create table oauth_access_token (
+  token_id VARCHAR(256) PRIMARY KEY,
+  token LONGVARBINARY,
+  authentication_id VARCHAR(256),
+  user_name VARCHAR(256),
+  client_id VARCHAR(256),
+  authentication LONGVARBINARY,
+  refresh_token VARCHAR(256),
+  expiration TIMESTAMP
+);
+
+-- getAccessToken(authentication)
+create index oauth_access_token_authentication_id on oauth_access_token (authentication_id);
+-- findTokensByUserName
+create index oauth_access_token_user_name on oauth_access_token (user_name);
+-- findTokensByClientId
+create index oauth_access_token_client_id on oauth_access_token (client_id);
+-- removeAccessTokenUsingRefreshToken
+create index oauth_access_token_refresh_token on oauth_access_token (refresh_token);
+-- JdbcExpiredTokenPurger
+create index oauth_access_token_expiration on oauth_access_token (expiration);
+
+create table oauth_refresh_token (
+  token_id VARCHAR(256) PRIMARY KEY,
+  token LONGVARBINARY,
+  authentication LONGVARBINARY,
+  expiration TIMESTAMP
+);
+
+-- JdbcExpiredTokenPurger
+create index oauth_refresh_token_expiration on oauth_refresh_token (expiration);
+
+create table oauth_code (
+  code VARCHAR(256) PRIMARY KEY,
+  authentication LONGVARBINARY,
+  created TIMESTAMP
+);
+
+-- JdbcAuthorizationCodeServices.removeUnredeemedCodes
+create index oauth_code_created on oauth_code (created);
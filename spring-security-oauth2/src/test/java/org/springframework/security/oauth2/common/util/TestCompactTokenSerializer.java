@@ -0,0 +1,121 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.code.AuthorizationRequestHolder;
+
+public class TestCompactTokenSerializer {
+
+	private CompactTokenSerializer serializer = new CompactTokenSerializer();
+
+	@Test
+	public void testAccessTokenRoundTrip() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() + 10000));
+		token.setRefreshToken(new DefaultExpiringOAuth2RefreshToken("BAR", new Date()));
+		token.setScope(new HashSet<String>(Arrays.asList("read", "write")));
+		Map<String, Object> info = new LinkedHashMap<String, Object>();
+		info.put("foo", "bar");
+		info.put("count", 3);
+		info.put("list", Arrays.asList("spam"));
+		token.setAdditionalInformation(info);
+		OAuth2AccessToken result = serializer.deserialize(serializer.serialize(token));
+		assertEquals(token, result);
+		assertEquals(token.getExpiration(), result.getExpiration());
+		assertEquals(token.getTokenType(), result.getTokenType());
+		assertEquals(token.getScope(), result.getScope());
+		assertEquals(token.getRefreshToken(), result.getRefreshToken());
+		assertEquals(((DefaultExpiringOAuth2RefreshToken) token.getRefreshToken()).getExpiration(),
+				((DefaultExpiringOAuth2RefreshToken) result.getRefreshToken()).getExpiration());
+		assertEquals(info, result.getAdditionalInformation());
+	}
+
+	@Test
+	public void testAuthenticationRoundTrip() {
+		DefaultAuthorizationRequest request = new DefaultAuthorizationRequest("id", Arrays.asList("read"));
+		request.setResourceIds(Collections.singleton("sparklr"));
+		request.setAuthorities(AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_CLIENT"));
+		request.setApproved(true);
+		OAuth2Authentication authentication = new OAuth2Authentication(request,
+				new UsernamePasswordAuthenticationToken("foo", "bar", Collections.singleton(new SimpleGrantedAuthority(
+						"ROLE_USER"))));
+		OAuth2Authentication result = serializer.deserialize(serializer.serialize(authentication));
+		assertEquals(authentication, result);
+		assertEquals(request, result.getAuthorizationRequest());
+	}
+
+	@Test
+	public void testClientOnlyAuthenticationWithNullScopeRoundTrip() {
+		OAuth2Authentication authentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id", null),
+				null);
+		OAuth2Authentication result = serializer.deserialize(serializer.serialize(authentication));
+		assertEquals(authentication, result);
+		assertEquals(authentication.getAuthorizationRequest(), result.getAuthorizationRequest());
+	}
+
+	@Test
+	public void testAuthorizationRequestHolderRoundTrip() {
+		AuthorizationRequestHolder holder = new AuthorizationRequestHolder(new DefaultAuthorizationRequest("id",
+				Arrays.asList("read")), new UsernamePasswordAuthenticationToken("foo", "bar"));
+		AuthorizationRequestHolder result = serializer.deserialize(serializer.serialize(holder));
+		assertEquals(holder, result);
+	}
+
+	@Test
+	public void testCompactFormIsSmaller() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		assertTrue(serializer.serialize(token).length < SerializationUtils.serialize(token).length);
+	}
+
+	@Test
+	public void testReadLegacyJavaSerialization() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		OAuth2AccessToken result = serializer.deserialize(SerializationUtils.serialize(token));
+		assertEquals(token, result);
+	}
+
+	@Test
+	public void testUnknownTypeUsesJavaSerialization() {
+		Date date = new Date();
+		byte[] bytes = serializer.serialize(date);
+		assertEquals(date, SerializationUtils.deserialize(bytes));
+		assertEquals(date, serializer.deserialize(bytes));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedVersion() {
+		byte[] bytes = serializer.serialize(new DefaultOAuth2AccessToken("FOO"));
+		bytes[2] = 99;
+		serializer.deserialize(bytes);
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.common.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestKeyGeneratorUtils {
+
+	@Test
+	public void testUserAndScope() throws Exception {
+		assertSameKey(true, "marissa", "my-client", Arrays.asList("read", "write"));
+	}
+
+	@Test
+	public void testClientOnly() throws Exception {
+		assertSameKey(false, null, "my-client", Arrays.asList("read"));
+	}
+
+	@Test
+	public void testNullUserName() throws Exception {
+		// An authentication without a name has always been keyed as username=null
+		assertSameKey(true, null, "my-client", Arrays.asList("read"));
+	}
+
+	@Test
+	public void testNoScope() throws Exception {
+		assertSameKey(true, "marissa", "my-client", null);
+		assertSameKey(true, "marissa", "my-client", Collections.<String> emptySet());
+	}
+
+	@Test
+	public void testNullClientId() throws Exception {
+		assertSameKey(true, "marissa", null, Arrays.asList("read"));
+	}
+
+	@Test
+	public void testNonAscii() throws Exception {
+		assertSameKey(true, "Jürgen 中文 😀", "clienté", Arrays.asList("réad", "\ud83d"));
+	}
+
+	@Test
+	public void testLongValues() throws Exception {
+		char[] chars = new char[1000];
+		Arrays.fill(chars, 'é');
+		assertSameKey(true, new String(chars), "client", Arrays.asList("read"));
+		// And a short one again on the same thread
+		assertSameKey(true, "a", "b", null);
+	}
+
+	private void assertSameKey(boolean includeUsername, String username, String clientId, Collection<String> scope)
+			throws Exception {
+		assertEquals(legacyKey(includeUsername, username, clientId, scope),
+				KeyGeneratorUtils.extractKey(includeUsername, username, clientId, scope));
+	}
+
+	/**
+	 * The algorithm that was used before (and has to be matched).
+	 */
+	private String legacyKey(boolean includeUsername, String username, String clientId, Collection<String> scope)
+			throws Exception {
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		if (includeUsername) {
+			values.put("username", username);
+		}
+		values.put("client_id", clientId);
+		if (scope != null) {
+			values.put("scope", OAuth2Utils.formatParameterList(scope));
+		}
+		MessageDigest digest = MessageDigest.getInstance("MD5");
+		byte[] bytes = digest.digest(values.toString().getBytes("UTF-8"));
+		return String.format("%032x", new BigInteger(1, bytes));
+	}
+
+}
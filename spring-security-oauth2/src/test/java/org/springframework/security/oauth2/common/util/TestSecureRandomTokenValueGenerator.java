@@ -0,0 +1,54 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestSecureRandomTokenValueGenerator {
+
+	@Test
+	public void testDefaultLength() {
+		assertEquals(22, new SecureRandomTokenValueGenerator().generate().length());
+	}
+
+	@Test
+	public void testLengthWithPartialBlocks() {
+		assertEquals(2, new SecureRandomTokenValueGenerator(1).generate().length());
+		assertEquals(3, new SecureRandomTokenValueGenerator(2).generate().length());
+		assertEquals(4, new SecureRandomTokenValueGenerator(3).generate().length());
+	}
+
+	@Test
+	public void testValuesAreUrlSafeAndUnique() {
+		SecureRandomTokenValueGenerator generator = new SecureRandomTokenValueGenerator();
+		Set<String> values = new HashSet<String>();
+		for (int i = 0; i < 1000; i++) {
+			String value = generator.generate();
+			assertTrue(value, value.matches("[A-Za-z0-9_-]+"));
+			values.add(value);
+		}
+		assertEquals(1000, values.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoEntropy() {
+		new SecureRandomTokenValueGenerator(0);
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.http.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessTokenSerializer;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ System.class, OAuth2AccessTokenSerializer.class, JsonOAuth2AccessTokenMessageConverter.class })
+public class TestJsonOAuth2AccessTokenMessageConverter {
+
+	private JsonOAuth2AccessTokenMessageConverter converter = new JsonOAuth2AccessTokenMessageConverter();
+
+	private ObjectMapper mapper = new ObjectMapper();
+
+	private DefaultOAuth2AccessToken accessToken;
+
+	@Before
+	public void setUp() {
+		mockStatic(System.class);
+		long now = 1323123715041L;
+		when(System.currentTimeMillis()).thenReturn(now);
+		accessToken = new DefaultOAuth2AccessToken("token-value");
+		accessToken.setExpiration(new Date(now + 10000));
+		accessToken.setRefreshToken(new DefaultOAuth2RefreshToken("refresh-value"));
+		accessToken.setScope(new TreeSet<String>(Collections.singleton("read")));
+	}
+
+	@Test
+	public void testWriteSingleScope() throws Exception {
+		assertEquals(
+				"{\"access_token\":\"token-value\",\"token_type\":\"bearer\",\"refresh_token\":\"refresh-value\",\"expires_in\":10,\"scope\":\"read\"}",
+				write(accessToken));
+		assertEquals(mapper.writeValueAsString(accessToken), write(accessToken));
+	}
+
+	@Test
+	public void testWriteMultipleScopes() throws Exception {
+		accessToken.getScope().add("write");
+		accessToken.getScope().add("\"");
+		assertEquals(mapper.writeValueAsString(accessToken), write(accessToken));
+	}
+
+	@Test
+	public void testWriteMinimalToken() throws Exception {
+		accessToken.setRefreshToken(null);
+		accessToken.setExpiration(null);
+		accessToken.setScope(null);
+		assertEquals("{\"access_token\":\"token-value\",\"token_type\":\"bearer\"}", write(accessToken));
+	}
+
+	@Test
+	public void testWriteAdditionalInformation() throws Exception {
+		Map<String, Object> additionalInformation = new LinkedHashMap<String, Object>();
+		additionalInformation.put("one", "two");
+		additionalInformation.put("three", 4);
+		additionalInformation.put("five", Collections.singletonMap("six", 7));
+		additionalInformation.put("eight", null);
+		accessToken.setAdditionalInformation(additionalInformation);
+		assertEquals(mapper.writeValueAsString(accessToken), write(accessToken));
+	}
+
+	@Test(expected = HttpMessageNotWritableException.class)
+	public void testWriteEmptyScope() throws Exception {
+		accessToken.getScope().add("");
+		write(accessToken);
+	}
+
+	@Test
+	public void testRead() throws Exception {
+		final InputStream body = new ByteArrayInputStream(write(accessToken).getBytes("UTF-8"));
+		OAuth2AccessToken token = converter.read(OAuth2AccessToken.class, new HttpInputMessage() {
+			public HttpHeaders getHeaders() {
+				return new HttpHeaders();
+			}
+
+			public InputStream getBody() throws IOException {
+				return body;
+			}
+		});
+		assertEquals("token-value", token.getValue());
+		assertEquals("refresh-value", token.getRefreshToken().getValue());
+		assertEquals(accessToken.getScope(), token.getScope());
+	}
+
+	private String write(OAuth2AccessToken token) throws IOException {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final HttpHeaders headers = new HttpHeaders();
+		converter.write(token, MediaType.APPLICATION_JSON, new HttpOutputMessage() {
+			public HttpHeaders getHeaders() {
+				return headers;
+			}
+
+			public OutputStream getBody() throws IOException {
+				return output;
+			}
+		});
+		return output.toString("UTF-8");
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.http.converter.jaxb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+
+public class TestJaxbMessageConverterConcurrency {
+
+	private JaxbOAuth2AccessTokenMessageConverter converter = new JaxbOAuth2AccessTokenMessageConverter();
+
+	@Test
+	public void testConcurrentWrites() throws Exception {
+		int threads = 8;
+		final int writes = 200;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < threads; i++) {
+			final int thread = i;
+			results.add(executor.submit(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					start.await();
+					for (int j = 0; j < writes; j++) {
+						String value = "token-" + thread + "-" + j;
+						assertEquals("<oauth><access_token>" + value + "</access_token></oauth>", write(value));
+					}
+					return writes;
+				}
+			}));
+		}
+		start.countDown();
+		int count = 0;
+		for (Future<Integer> result : results) {
+			count += result.get();
+		}
+		executor.shutdown();
+		assertEquals(threads * writes, count);
+	}
+
+	private String write(String value) throws IOException {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final HttpHeaders headers = new HttpHeaders();
+		converter.write(new DefaultOAuth2AccessToken(value), MediaType.APPLICATION_XML, new HttpOutputMessage() {
+			public HttpHeaders getHeaders() {
+				return headers;
+			}
+
+			public OutputStream getBody() throws IOException {
+				return output;
+			}
+		});
+		return output.toString("UTF-8");
+	}
+
+}
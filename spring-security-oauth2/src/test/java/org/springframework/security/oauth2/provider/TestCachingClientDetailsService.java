@@ -0,0 +1,127 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.oauth2.common.exceptions.BadClientCredentialsException;
+
+public class TestCachingClientDetailsService {
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private CachingClientDetailsService service;
+
+	@Before
+	public void setUp() throws Exception {
+		db = new EmbeddedDatabaseBuilder().addDefaultScripts().build();
+		jdbcTemplate = new JdbcTemplate(db);
+		service = new CachingClientDetailsService(new JdbcClientDetailsService(db));
+		service.addClientDetails(new BaseClientDetails("foo", "", "read", "authorization_code", "ROLE_CLIENT"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		db.shutdown();
+	}
+
+	@Test
+	public void testLoadIsCached() {
+		assertEquals("[read]", service.loadClientByClientId("foo").getScope().toString());
+		jdbcTemplate.update("update oauth_client_details set scope='write' where client_id='foo'");
+		assertEquals("[read]", service.loadClientByClientId("foo").getScope().toString());
+		assertEquals(1, service.getMissCount());
+		assertEquals(1, service.getHitCount());
+		service.evict("foo");
+		assertEquals("[write]", service.loadClientByClientId("foo").getScope().toString());
+	}
+
+	@Test
+	public void testUpdateEvicts() {
+		service.loadClientByClientId("foo");
+		service.updateClientDetails(new BaseClientDetails("foo", "", "write", "authorization_code", "ROLE_CLIENT"));
+		assertEquals("[write]", service.loadClientByClientId("foo").getScope().toString());
+	}
+
+	@Test
+	public void testUpdateSecretEvicts() {
+		service.loadClientByClientId("foo");
+		service.updateClientSecret("foo", "bar");
+		assertEquals("bar", service.loadClientByClientId("foo").getClientSecret());
+	}
+
+	@Test(expected = BadClientCredentialsException.class)
+	public void testRemoveEvicts() {
+		service.loadClientByClientId("foo");
+		service.removeClientDetails("foo");
+		service.loadClientByClientId("foo");
+	}
+
+	@Test
+	public void testExpiredEntryIsReloaded() {
+		service.setTimeToLiveSeconds(0);
+		service.loadClientByClientId("foo");
+		service.loadClientByClientId("foo");
+		assertEquals(2, service.getMissCount());
+	}
+
+	@Test
+	public void testChangeListener() {
+		final List<String> changed = new ArrayList<String>();
+		service.setChangeListener(new ClientDetailsChangeListener() {
+			public void clientDetailsChanged(String clientId) {
+				changed.add(clientId);
+			}
+		});
+		service.updateClientSecret("foo", "bar");
+		service.removeClientDetails("foo");
+		assertEquals(Arrays.asList("foo", "foo"), changed);
+	}
+
+	@Test
+	public void testChangeListenerIsNotNotifiedOfFailedChange() {
+		final List<String> changed = new ArrayList<String>();
+		service.setChangeListener(new ClientDetailsChangeListener() {
+			public void clientDetailsChanged(String clientId) {
+				changed.add(clientId);
+			}
+		});
+		try {
+			service.removeClientDetails("bar");
+			fail("Expected NoSuchClientException");
+		}
+		catch (NoSuchClientException e) {
+			// expected
+		}
+		assertEquals(0, changed.size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRegistrationNeedsRegistrationService() {
+		new CachingClientDetailsService(new InMemoryClientDetailsService()).removeClientDetails("foo");
+	}
+
+}
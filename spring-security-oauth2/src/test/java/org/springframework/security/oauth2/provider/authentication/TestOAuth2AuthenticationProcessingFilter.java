@@ -16,10 +16,14 @@ package org.springframework.security.oauth2.provider.authentication;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
 
 import org.junit.After;
 import org.junit.Test;
@@ -30,8 +34,11 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.RejectedTokenCache;
+import org.springframework.security.web.AuthenticationEntryPoint;
 
 /**
  * @author Dave Syer
@@ -75,4 +82,29 @@ public class TestOAuth2AuthenticationProcessingFilter {
 		assertNotNull(result.getDetails());
 	}
 
+	@Test
+	public void testRejectedTokenIsNotAuthenticatedAgain() throws Exception {
+		final AtomicInteger count = new AtomicInteger();
+		filter.setAuthenticationManager(new AuthenticationManager() {
+			public Authentication authenticate(Authentication request) throws AuthenticationException {
+				count.incrementAndGet();
+				throw new InvalidTokenException("Invalid token");
+			}
+		});
+		AuthenticationEntryPoint entryPoint = Mockito.mock(AuthenticationEntryPoint.class);
+		filter.setAuthenticationEntryPoint(entryPoint);
+		RejectedTokenCache rejectedTokenCache = new RejectedTokenCache();
+		filter.setRejectedTokenCache(rejectedTokenCache);
+		request.addHeader("Authorization", "Bearer FOO");
+		filter.doFilter(request, null, chain);
+		assertTrue(rejectedTokenCache.isRejected("FOO"));
+
+		filter.doFilter(request, null, chain);
+		assertEquals(1, count.get());
+		assertNull(SecurityContextHolder.getContext().getAuthentication());
+		Mockito.verify(entryPoint, Mockito.times(2)).commence(Mockito.eq(request),
+				Mockito.<HttpServletResponse> any(), Mockito.<AuthenticationException> any());
+		Mockito.verifyZeroInteractions(chain);
+	}
+
 }
@@ -1,6 +1,14 @@
 package org.springframework.security.oauth2.provider.code;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
 import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.common.util.TokenValueGenerator;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
 
 public class TestInMemoryAuthorizationCodeServices extends TestAuthorizationCodeServicesBase {
 
@@ -15,4 +23,66 @@ public class TestInMemoryAuthorizationCodeServices extends TestAuthorizationCode
 	AuthorizationCodeServices getAuthorizationCodeServices() {
 		return authorizationCodeServices;
 	}
+
+	@Test(expected = InvalidGrantException.class)
+	public void testExpiredCodeIsNotRedeemed() {
+		// Already in the past, so it expires straight away
+		authorizationCodeServices.setCodeValiditySeconds(-2);
+		String code = authorizationCodeServices.createAuthorizationCode(createAuthentication());
+		try {
+			authorizationCodeServices.consumeAuthorizationCode(code);
+		}
+		finally {
+			assertEquals(0, authorizationCodeServices.getCodeCount());
+			assertEquals(1, authorizationCodeServices.getExpiredCodeCount());
+		}
+	}
+
+	@Test
+	public void testOldestCodeIsEvictedWhenFull() {
+		authorizationCodeServices.setMaxCodes(2);
+		authorizationCodeServices.setCodeValiditySeconds(100);
+		String first = authorizationCodeServices.createAuthorizationCode(createAuthentication());
+		authorizationCodeServices.setCodeValiditySeconds(200);
+		String second = authorizationCodeServices.createAuthorizationCode(createAuthentication());
+		String third = authorizationCodeServices.createAuthorizationCode(createAuthentication());
+		assertEquals(2, authorizationCodeServices.getCodeCount());
+		assertEquals(1, authorizationCodeServices.getEvictedCodeCount());
+		assertNotNull(authorizationCodeServices.consumeAuthorizationCode(second));
+		assertNotNull(authorizationCodeServices.consumeAuthorizationCode(third));
+		try {
+			authorizationCodeServices.consumeAuthorizationCode(first);
+			fail("Should have thrown exception");
+		}
+		catch (InvalidGrantException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCounts() {
+		String code = authorizationCodeServices.createAuthorizationCode(createAuthentication());
+		authorizationCodeServices.createAuthorizationCode(createAuthentication());
+		authorizationCodeServices.consumeAuthorizationCode(code);
+		assertEquals(2, authorizationCodeServices.getIssuedCodeCount());
+		assertEquals(1, authorizationCodeServices.getRedeemedCodeCount());
+		assertEquals(0, authorizationCodeServices.getExpiredCodeCount());
+		assertEquals(1, authorizationCodeServices.getCodeCount());
+	}
+
+	@Test
+	public void testCodeComesFromGenerator() {
+		authorizationCodeServices.setTokenValueGenerator(new TokenValueGenerator() {
+			public String generate() {
+				return "generated";
+			}
+		});
+		assertEquals("generated", authorizationCodeServices.createAuthorizationCode(createAuthentication()));
+		assertNotNull(authorizationCodeServices.consumeAuthorizationCode("generated"));
+	}
+
+	private AuthorizationRequestHolder createAuthentication() {
+		return new AuthorizationRequestHolder(new DefaultAuthorizationRequest("id", null), new TestAuthentication(
+				"test2", false));
+	}
 }
@@ -1,9 +1,19 @@
 package org.springframework.security.oauth2.provider.code;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Date;
+
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
 
 public class TestJdbcAuthorizationCodeServices extends TestAuthorizationCodeServicesBase {
 	private JdbcAuthorizationCodeServices authorizationCodeServices;
@@ -26,4 +36,60 @@ public class TestJdbcAuthorizationCodeServices extends TestAuthorizationCodeServ
 	AuthorizationCodeServices getAuthorizationCodeServices() {
 		return authorizationCodeServices;
 	}
+
+	@Test(expected = InvalidGrantException.class)
+	public void testCodeDeletedByAnotherRequestIsNotRedeemed() {
+		// Simulate a concurrent request deleting the code between the select and the delete
+		authorizationCodeServices.setDeleteAuthenticationSql("delete from oauth_code where code = ? and 1 = 0");
+		String code = authorizationCodeServices.createAuthorizationCode(createAuthentication());
+		authorizationCodeServices.consumeAuthorizationCode(code);
+	}
+
+	@Test
+	public void testConsumeWithSingleStatement() {
+		// HSQL has no "delete ... returning", but any query that returns the authentication column will do
+		authorizationCodeServices
+				.setConsumeAuthenticationSql("select code, authentication from oauth_code where code = ?");
+		String code = authorizationCodeServices.createAuthorizationCode(createAuthentication());
+		assertEquals(createAuthentication(), authorizationCodeServices.consumeAuthorizationCode(code));
+		assertNull(authorizationCodeServices.remove("unknown"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRemoveUnredeemedCodesNeedsCreationTime() {
+		authorizationCodeServices.removeUnredeemedCodes(new Date());
+	}
+
+	@Test
+	public void testRemoveUnredeemedCodes() {
+		authorizationCodeServices.setStoreCreationTime(true);
+		authorizationCodeServices.setBatchSize(2);
+		for (int i = 0; i < 5; i++) {
+			authorizationCodeServices.createAuthorizationCode(createAuthentication());
+		}
+		Date now = new Date(System.currentTimeMillis() + 1000);
+		String code = authorizationCodeServices.createAuthorizationCode(createAuthentication());
+		new JdbcTemplate(db).update("update oauth_code set created = ? where code = ?", new Date(now.getTime() + 60000),
+				code);
+
+		assertEquals(5, authorizationCodeServices.removeUnredeemedCodes(now));
+		assertEquals(0, authorizationCodeServices.removeUnredeemedCodes(now));
+		assertNotNull(authorizationCodeServices.consumeAuthorizationCode(code));
+	}
+
+	@Test(timeout = 10000)
+	public void testRemoveUnredeemedCodesStopsWhenBatchDeletesNothing() {
+		authorizationCodeServices.setStoreCreationTime(true);
+		authorizationCodeServices.setBatchSize(2);
+		authorizationCodeServices.setDeleteUnredeemedCodeSql("delete from oauth_code where code = ? and created > ?");
+		for (int i = 0; i < 5; i++) {
+			authorizationCodeServices.createAuthorizationCode(createAuthentication());
+		}
+		assertEquals(0, authorizationCodeServices.removeUnredeemedCodes(new Date(System.currentTimeMillis() + 1000)));
+	}
+
+	private AuthorizationRequestHolder createAuthentication() {
+		return new AuthorizationRequestHolder(new DefaultAuthorizationRequest("id", null), new TestAuthentication(
+				"test2", false));
+	}
 }
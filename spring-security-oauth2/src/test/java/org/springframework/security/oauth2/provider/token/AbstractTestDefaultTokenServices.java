@@ -1,11 +1,22 @@
 package org.springframework.security.oauth2.provider.token;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -16,6 +27,7 @@ import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.common.util.TokenValueGenerator;
 import org.springframework.security.oauth2.provider.BaseClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
@@ -178,6 +190,54 @@ public abstract class AbstractTestDefaultTokenServices {
 		assertEquals(1, getRefreshTokenCount());
 	}
 
+	@Test
+	public void testConcurrentRequestsShareToken() throws Exception {
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<OAuth2AccessToken>> results = new ArrayList<Future<OAuth2AccessToken>>();
+		for (int i = 0; i < threads; i++) {
+			results.add(executor.submit(new Callable<OAuth2AccessToken>() {
+				public OAuth2AccessToken call() throws Exception {
+					start.await();
+					return getTokenServices().createAccessToken(createAuthentication());
+				}
+			}));
+		}
+		start.countDown();
+		Set<String> values = new HashSet<String>();
+		for (Future<OAuth2AccessToken> result : results) {
+			values.add(result.get().getValue());
+		}
+		executor.shutdown();
+		assertEquals(1, values.size());
+		assertEquals(1, getAccessTokenCount());
+	}
+
+	@Test
+	public void testRevokedTokenIsPushedToRejectedTokenCache() throws Exception {
+		RejectedTokenCache rejectedTokenCache = new RejectedTokenCache();
+		getTokenServices().setRejectedTokenCache(rejectedTokenCache);
+		OAuth2AccessToken accessToken = getTokenServices().createAccessToken(createAuthentication());
+		assertFalse(rejectedTokenCache.isRejected(accessToken.getValue()));
+		assertTrue(getTokenServices().revokeToken(accessToken.getValue()));
+		assertTrue(rejectedTokenCache.isRejected(accessToken.getValue()));
+	}
+
+	@Test
+	public void testTokenValuesComeFromGenerator() throws Exception {
+		final AtomicInteger counter = new AtomicInteger();
+		getTokenServices().setTokenValueGenerator(new TokenValueGenerator() {
+			public String generate() {
+				return "generated" + counter.incrementAndGet();
+			}
+		});
+		OAuth2AccessToken accessToken = getTokenServices().createAccessToken(createAuthentication());
+		assertEquals(2, counter.get());
+		assertTrue(accessToken.getValue().startsWith("generated"));
+		assertTrue(accessToken.getRefreshToken().getValue().startsWith("generated"));
+		assertEquals(accessToken, tokenStore.readAccessToken(accessToken.getValue()));
+	}
 
 	private OAuth2Authentication createAuthentication() {
 		return new OAuth2Authentication(new DefaultAuthorizationRequest("id",
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+public class TestCachingResourceServerTokenServices {
+
+	private InMemoryTokenStore tokenStore = new InMemoryTokenStore();
+
+	private DefaultTokenServices delegate = new DefaultTokenServices();
+
+	private CachingResourceServerTokenServices services = new CachingResourceServerTokenServices(delegate);
+
+	private OAuth2Authentication authentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id",
+			Arrays.asList("read")), new UsernamePasswordAuthenticationToken("foo", "bar"));
+
+	@Before
+	public void init() throws Exception {
+		delegate.setTokenStore(tokenStore);
+		delegate.afterPropertiesSet();
+	}
+
+	@Test
+	public void testLoadAuthenticationIsCached() {
+		OAuth2AccessToken token = delegate.createAccessToken(authentication);
+		assertEquals(authentication, services.loadAuthentication(token.getValue()));
+		assertEquals(0, services.getHitCount());
+		assertEquals(1, services.getMissCount());
+		// Remove directly from the store: the cache doesn't know
+		tokenStore.removeAccessToken(token.getValue());
+		assertEquals(authentication, services.loadAuthentication(token.getValue()));
+		assertEquals(token, services.readAccessToken(token.getValue()));
+		assertEquals(2, services.getHitCount());
+	}
+
+	@Test(expected = InvalidTokenException.class)
+	public void testRevokeTokenEvicts() {
+		OAuth2AccessToken token = delegate.createAccessToken(authentication);
+		services.loadAuthentication(token.getValue());
+		services.revokeToken(token.getValue());
+		services.loadAuthentication(token.getValue());
+	}
+
+	@Test(expected = InvalidTokenException.class)
+	public void testEvict() {
+		OAuth2AccessToken token = delegate.createAccessToken(authentication);
+		services.loadAuthentication(token.getValue());
+		tokenStore.removeAccessToken(token.getValue());
+		services.evict(token.getValue());
+		services.loadAuthentication(token.getValue());
+	}
+
+	@Test
+	public void testExpiredTokenIsNotCached() throws Exception {
+		// Expires well before the time to live
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() + 200));
+		tokenStore.storeAccessToken(token, authentication);
+		assertEquals(authentication, services.loadAuthentication("FOO"));
+		assertEquals(authentication, services.loadAuthentication("FOO"));
+		assertEquals(1, services.getHitCount());
+		Thread.sleep(300);
+		try {
+			services.loadAuthentication("FOO");
+			fail("Expected InvalidTokenException");
+		}
+		catch (InvalidTokenException e) {
+			// expected: the delegate was asked again and the token has expired
+		}
+		assertEquals(1, services.getHitCount());
+		assertEquals(2, services.getMissCount());
+		assertEquals(0, services.getSize());
+	}
+
+	@Test
+	public void testAccessTokenIsReadWithAuthenticationFromOtherDelegates() {
+		ResourceServerTokenServices other = mock(ResourceServerTokenServices.class);
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		when(other.loadAuthentication("FOO")).thenReturn(authentication);
+		when(other.readAccessToken("FOO")).thenReturn(token);
+		services = new CachingResourceServerTokenServices(other);
+		assertEquals(authentication, services.loadAuthentication("FOO"));
+		assertEquals(token, services.readAccessToken("FOO"));
+		assertEquals(authentication, services.loadAuthentication("FOO"));
+		verify(other, times(1)).loadAuthentication("FOO");
+		verify(other, times(1)).readAccessToken("FOO");
+	}
+
+	@Test
+	public void testExpiryIsCappedForOtherDelegates() throws Exception {
+		ResourceServerTokenServices other = mock(ResourceServerTokenServices.class);
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() + 200));
+		when(other.loadAuthentication("FOO")).thenReturn(authentication);
+		when(other.readAccessToken("FOO")).thenReturn(token);
+		services = new CachingResourceServerTokenServices(other);
+		services.loadAuthentication("FOO");
+		assertEquals(1, services.getSize());
+		Thread.sleep(300);
+		services.loadAuthentication("FOO");
+		assertEquals(0, services.getHitCount());
+		verify(other, times(2)).loadAuthentication("FOO");
+	}
+
+	@Test
+	public void testEntryIsNotCachedWithoutAccessToken() {
+		ResourceServerTokenServices other = mock(ResourceServerTokenServices.class);
+		when(other.loadAuthentication("FOO")).thenReturn(authentication);
+		services = new CachingResourceServerTokenServices(other);
+		assertEquals(authentication, services.loadAuthentication("FOO"));
+		assertEquals(0, services.getSize());
+	}
+
+	@Test(expected = InvalidTokenException.class)
+	public void testSubclassOfDefaultTokenServicesIsUsed() {
+		OAuth2AccessToken token = delegate.createAccessToken(authentication);
+		DefaultTokenServices rejecting = new DefaultTokenServices() {
+			@Override
+			public StoredAccessToken loadAccessTokenAndAuthentication(String accessTokenValue) {
+				throw new InvalidTokenException("Rejected: " + accessTokenValue);
+			}
+		};
+		rejecting.setTokenStore(tokenStore);
+		services = new CachingResourceServerTokenServices(rejecting);
+		services.loadAuthentication(token.getValue());
+	}
+
+	@Test
+	public void testMaxSize() {
+		services.setMaxSize(1);
+		OAuth2AccessToken token = delegate.createAccessToken(authentication);
+		services.loadAuthentication(token.getValue());
+		OAuth2AccessToken other = delegate.createAccessToken(new OAuth2Authentication(new DefaultAuthorizationRequest(
+				"other", Arrays.asList("read")), null));
+		services.loadAuthentication(other.getValue());
+		assertEquals(1, services.getSize());
+	}
+
+}
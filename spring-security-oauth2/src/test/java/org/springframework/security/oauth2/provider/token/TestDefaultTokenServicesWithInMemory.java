@@ -3,6 +3,8 @@ package org.springframework.security.oauth2.provider.token;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import java.util.Collections;
 import java.util.Date;
@@ -93,6 +95,21 @@ public class TestDefaultTokenServicesWithInMemory extends AbstractTestDefaultTok
 		assertEquals(1, getAccessTokenCount());
 	}
 
+	@Test
+	public void testLoadAuthenticationWithPlainTokenStore() throws Exception {
+		// A store that cannot read the token and authentication together
+		TokenStore plainTokenStore = mock(TokenStore.class);
+		OAuth2Authentication expectedAuthentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id",
+				Collections.singleton("read")), new TestAuthentication("test2", false));
+		OAuth2AccessToken accessToken = new DefaultOAuth2AccessToken("FOO");
+		when(plainTokenStore.readAccessToken("FOO")).thenReturn(accessToken);
+		when(plainTokenStore.readAuthentication(accessToken)).thenReturn(expectedAuthentication);
+		getTokenServices().setTokenStore(plainTokenStore);
+		assertEquals(expectedAuthentication, getTokenServices().loadAuthentication("FOO"));
+		expected.expect(InvalidTokenException.class);
+		getTokenServices().loadAuthentication("BAR");
+	}
+
 	@Override
 	protected TokenStore createTokenStore() {
 		tokenStore = new InMemoryTokenStore();
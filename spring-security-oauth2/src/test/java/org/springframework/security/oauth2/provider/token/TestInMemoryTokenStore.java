@@ -1,12 +1,23 @@
 package org.springframework.security.oauth2.provider.token;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 
@@ -67,4 +78,96 @@ public class TestInMemoryTokenStore extends TestTokenStoreBase {
 			getTokenStore().storeAccessToken(expectedOAuth2AccessToken, expectedAuthentication);
 		}
 	}
+
+	@Test
+	public void testFlushRemovesExpiredRefreshTokens() throws Exception {
+		OAuth2Authentication expectedAuthentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id", null), new TestAuthentication("test", false));
+		getTokenStore().storeRefreshToken(new DefaultExpiringOAuth2RefreshToken("expired", new Date(System.currentTimeMillis() - 1000)), expectedAuthentication);
+		getTokenStore().storeRefreshToken(new DefaultExpiringOAuth2RefreshToken("valid", new Date(System.currentTimeMillis() + 100000)), expectedAuthentication);
+		getTokenStore().flush();
+		assertNull(getTokenStore().readRefreshToken("expired"));
+		assertNotNull(getTokenStore().readRefreshToken("valid"));
+		assertEquals(1, getTokenStore().getSweepCount());
+		assertEquals(1, getTokenStore().getExpiredTokenCount());
+	}
+
+	@Test
+	public void testBackgroundSweep() throws Exception {
+		getTokenStore().setFlushInterval(1);
+		getTokenStore().setExpirySweepInterval(1);
+		getTokenStore().afterPropertiesSet();
+		try {
+			OAuth2Authentication expectedAuthentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id",
+					null), new TestAuthentication("test", false));
+			DefaultOAuth2AccessToken expectedOAuth2AccessToken = new DefaultOAuth2AccessToken("testToken");
+			expectedOAuth2AccessToken.setExpiration(new Date(System.currentTimeMillis() - 1000));
+			getTokenStore().storeAccessToken(expectedOAuth2AccessToken, expectedAuthentication);
+			// Not flushed on write
+			assertEquals(1, getTokenStore().getAccessTokenCount());
+			for (int i = 0; i < 50 && getTokenStore().getAccessTokenCount() > 0; i++) {
+				Thread.sleep(100);
+			}
+			assertEquals(0, getTokenStore().getAccessTokenCount());
+			assertTrue(getTokenStore().getSweepCount() > 0);
+		}
+		finally {
+			getTokenStore().destroy();
+		}
+	}
+
+	@Test
+	public void testRemoveAccessTokenCleansClientIndex() throws Exception {
+		OAuth2Authentication expectedAuthentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id", null), new TestAuthentication("test", false));
+		getTokenStore().storeAccessToken(new DefaultOAuth2AccessToken("testToken"), expectedAuthentication);
+		Collection<OAuth2AccessToken> tokens = getTokenStore().findTokensByClientId("id");
+		getTokenStore().removeAccessToken("testToken");
+		assertEquals(0, getTokenStore().findTokensByClientId("id").size());
+		assertEquals(0, getTokenStore().findTokensByUserName("test").size());
+		assertEquals(0, getTokenStore().getIndexKeyCount());
+		// The earlier result is a snapshot
+		assertEquals(1, tokens.size());
+	}
+
+	@Test
+	public void testConcurrentStoreAndRemove() throws Exception {
+		final int threads = 8;
+		final int iterations = 2000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Future<?>[] futures = new Future<?>[threads];
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			futures[t] = executor.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					for (int i = 0; i < iterations; i++) {
+						OAuth2Authentication authentication = new OAuth2Authentication(new DefaultAuthorizationRequest(
+								"id", null), new TestAuthentication("user" + (i % 10), false));
+						String value = "token-" + thread + "-" + i;
+						getTokenStore().storeAccessToken(new DefaultOAuth2AccessToken(value), authentication);
+						getTokenStore().findTokensByClientId("id").size();
+						if (i % 2 == 0) {
+							getTokenStore().removeAccessToken(value);
+						}
+					}
+					return null;
+				}
+			});
+		}
+		executor.shutdown();
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		int expected = threads * iterations / 2;
+		assertEquals(expected, getTokenStore().findTokensByClientId("id").size());
+		int byUser = 0;
+		for (int i = 0; i < 10; i++) {
+			byUser += getTokenStore().findTokensByUserName("user" + i).size();
+		}
+		assertEquals(expected, byUser);
+		for (OAuth2AccessToken token : getTokenStore().findTokensByClientId("id")) {
+			getTokenStore().removeAccessToken(token.getValue());
+		}
+		assertEquals(0, getTokenStore().getIndexKeyCount());
+	}
+
 }
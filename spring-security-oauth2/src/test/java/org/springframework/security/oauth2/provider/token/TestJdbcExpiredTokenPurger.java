@@ -0,0 +1,109 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.TestTokenStoreBase.TestAuthentication;
+
+public class TestJdbcExpiredTokenPurger {
+
+	private EmbeddedDatabase db;
+
+	private JdbcTokenStore tokenStore;
+
+	private JdbcExpiredTokenPurger purger;
+
+	@Before
+	public void setUp() throws Exception {
+		db = new EmbeddedDatabaseBuilder().addDefaultScripts().build();
+		tokenStore = new JdbcTokenStore(db);
+		tokenStore.setStoreExpiration(true);
+		purger = new JdbcExpiredTokenPurger(db);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		purger.destroy();
+		db.shutdown();
+	}
+
+	@Test
+	public void testPurgeRemovesOnlyExpiredTokens() {
+		storeAccessToken("expired", new Date(System.currentTimeMillis() - 10000));
+		storeAccessToken("valid", new Date(System.currentTimeMillis() + 100000));
+		storeAccessToken("forever", null);
+		OAuth2Authentication authentication = createAuthentication("marissa");
+		tokenStore.storeRefreshToken(new DefaultExpiringOAuth2RefreshToken("expiredRefresh", new Date(System
+				.currentTimeMillis() - 10000)), authentication);
+		tokenStore.storeRefreshToken(new DefaultOAuth2RefreshToken("foreverRefresh"), authentication);
+
+		assertEquals(2, purger.purge());
+
+		assertNull(tokenStore.readAccessToken("expired"));
+		assertNotNull(tokenStore.readAccessToken("valid"));
+		assertNotNull(tokenStore.readAccessToken("forever"));
+		assertNull(tokenStore.readRefreshToken("expiredRefresh"));
+		assertNotNull(tokenStore.readRefreshToken("foreverRefresh"));
+		assertEquals(1, purger.getPurgeCount());
+		assertEquals(2, purger.getPurgedTokenCount());
+	}
+
+	@Test
+	public void testPurgeInSeveralBatches() {
+		purger.setBatchSize(2);
+		for (int i = 0; i < 5; i++) {
+			storeAccessToken("expired" + i, new Date(System.currentTimeMillis() - 10000));
+		}
+		assertEquals(5, purger.purge());
+		assertEquals(0, purger.purge());
+		assertEquals(5, purger.getPurgedTokenCount());
+	}
+
+	@Test(timeout = 10000)
+	public void testPurgeStopsWhenBatchDeletesNothing() {
+		purger.setBatchSize(2);
+		// A delete that does not match what the select finds
+		purger.setDeleteAccessTokenSql("delete from oauth_access_token where token_id = ? and expiration > ?");
+		for (int i = 0; i < 5; i++) {
+			storeAccessToken("expired" + i, new Date(System.currentTimeMillis() - 10000));
+		}
+		assertEquals(0, purger.purge());
+		assertNotNull(tokenStore.readAccessToken("expired0"));
+	}
+
+	private void storeAccessToken(String value, Date expiration) {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(value);
+		token.setExpiration(expiration);
+		tokenStore.storeAccessToken(token, createAuthentication(value));
+	}
+
+	private OAuth2Authentication createAuthentication(String name) {
+		return new OAuth2Authentication(new DefaultAuthorizationRequest("id", null), new TestAuthentication(name, false));
+	}
+
+}
@@ -1,9 +1,19 @@
 package org.springframework.security.oauth2.provider.token;
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.Date;
+
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
 
 /**
  * @author Dave Syer
@@ -32,4 +42,32 @@ public class TestJdbcTokenStore extends TestTokenStoreBase {
 		db.shutdown();
 	}
 
+	@Test
+	public void testTablesWithoutExpirationColumns() {
+		EmbeddedDatabase legacy = new EmbeddedDatabaseBuilder().setName("legacyTokens").build();
+		try {
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(legacy);
+			jdbcTemplate.execute("create table oauth_access_token (token_id VARCHAR(256), token LONGVARBINARY, "
+					+ "authentication_id VARCHAR(256), user_name VARCHAR(256), client_id VARCHAR(256), "
+					+ "authentication LONGVARBINARY, refresh_token VARCHAR(256))");
+			jdbcTemplate.execute("create table oauth_refresh_token (token_id VARCHAR(256), token LONGVARBINARY, "
+					+ "authentication LONGVARBINARY)");
+			JdbcTokenStore legacyStore = new JdbcTokenStore(legacy);
+			OAuth2Authentication authentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id", null),
+					new TestAuthentication("test", false));
+			DefaultExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken("refreshToken",
+					new Date(System.currentTimeMillis() + 100000));
+			DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken("accessToken");
+			accessToken.setExpiration(new Date(System.currentTimeMillis() + 100000));
+			accessToken.setRefreshToken(refreshToken);
+			legacyStore.storeRefreshToken(refreshToken, authentication);
+			legacyStore.storeAccessToken(accessToken, authentication);
+			assertEquals(accessToken, legacyStore.readAccessToken("accessToken"));
+			assertEquals(refreshToken, legacyStore.readRefreshToken("refreshToken"));
+		}
+		finally {
+			legacy.shutdown();
+		}
+	}
+
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestRejectedTokenCache {
+
+	private RejectedTokenCache cache = new RejectedTokenCache();
+
+	@Test
+	public void testRejectedToken() {
+		assertFalse(cache.isRejected("FOO"));
+		cache.reject("FOO");
+		assertTrue(cache.isRejected("FOO"));
+		assertFalse(cache.isRejected("BAR"));
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void testExpiredTokenIsNotRejected() {
+		cache.setTimeToLiveSeconds(0);
+		cache.reject("FOO");
+		assertFalse(cache.isRejected("FOO"));
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testSizeIsBounded() {
+		cache.setMaxSize(2);
+		cache.reject("FOO");
+		cache.reject("BAR");
+		cache.reject("SPAM");
+		assertEquals(2, cache.getSize());
+		assertTrue(cache.isRejected("SPAM"));
+	}
+
+	@Test
+	public void testClear() {
+		cache.reject("FOO");
+		cache.clear();
+		assertFalse(cache.isRejected("FOO"));
+		assertEquals(0, cache.getSize());
+	}
+
+}
@@ -56,6 +56,19 @@ public abstract class TestTokenStoreBase {
 		assertNull(getTokenStore().readAuthentication(expectedOAuth2AccessToken.getValue()));
 	}
 
+	@Test
+	public void testReadAccessTokenAndAuthentication() {
+		OAuth2Authentication expectedAuthentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id", null), new TestAuthentication("test2", false));
+		OAuth2AccessToken expectedOAuth2AccessToken = new DefaultOAuth2AccessToken("testToken");
+		getTokenStore().storeAccessToken(expectedOAuth2AccessToken, expectedAuthentication);
+
+		StoredAccessToken stored = ((StoredAccessTokenReader) getTokenStore()).readAccessTokenAndAuthentication("testToken");
+		assertEquals(expectedOAuth2AccessToken, stored.getAccessToken());
+		assertEquals(expectedAuthentication, stored.getAuthentication());
+		getTokenStore().removeAccessToken(expectedOAuth2AccessToken);
+		assertNull(((StoredAccessTokenReader) getTokenStore()).readAccessTokenAndAuthentication("testToken"));
+	}
+
 	@Test
 	public void testRetrieveAccessToken() {
 		OAuth2Authentication expectedAuthentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id", null), new TestAuthentication("test2", false));
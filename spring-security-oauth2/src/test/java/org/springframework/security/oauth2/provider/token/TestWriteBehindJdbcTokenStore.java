@@ -0,0 +1,229 @@
+/*
+ * Copyright 2006-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+public class TestWriteBehindJdbcTokenStore extends TestTokenStoreBase {
+
+	private WriteBehindJdbcTokenStore tokenStore;
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@Override
+	public WriteBehindJdbcTokenStore getTokenStore() {
+		return tokenStore;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		db = new EmbeddedDatabaseBuilder().addDefaultScripts().build();
+		jdbcTemplate = new JdbcTemplate(db);
+		tokenStore = new WriteBehindJdbcTokenStore(db);
+		// Long enough that the tests decide when the queue is written
+		tokenStore.setFlushInterval(60000);
+		tokenStore.afterPropertiesSet();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		tokenStore.destroy();
+		db.shutdown();
+	}
+
+	@Test
+	public void testQueuedTokenIsVisibleBeforeFlush() {
+		OAuth2Authentication authentication = createAuthentication("marissa");
+		DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken("testToken");
+		accessToken.setRefreshToken(new DefaultOAuth2RefreshToken("refreshToken"));
+		tokenStore.storeRefreshToken(accessToken.getRefreshToken(), authentication);
+		tokenStore.storeAccessToken(accessToken, authentication);
+
+		assertEquals(2, tokenStore.getQueueDepth());
+		assertEquals(0, countRows("oauth_access_token"));
+		assertEquals(accessToken, tokenStore.readAccessToken("testToken"));
+		assertEquals(accessToken, tokenStore.getAccessToken(authentication));
+		assertEquals(authentication, tokenStore.readAuthentication("testToken"));
+		assertEquals(authentication, tokenStore.readAuthenticationForRefreshToken("refreshToken"));
+
+		tokenStore.flush();
+		assertEquals(0, tokenStore.getQueueDepth());
+		assertEquals(1, countRows("oauth_access_token"));
+		assertEquals(1, countRows("oauth_refresh_token"));
+		assertEquals(accessToken, tokenStore.readAccessToken("testToken"));
+		assertEquals(1, tokenStore.getFlushCount());
+		assertEquals(2, tokenStore.getFlushedUpdateCount());
+	}
+
+	@Test
+	public void testConsecutiveInsertsAreBatched() {
+		tokenStore.setMaxBatchSize(2);
+		for (int i = 0; i < 5; i++) {
+			tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("token" + i), createAuthentication("user" + i));
+		}
+		tokenStore.flush();
+		assertEquals(5, countRows("oauth_access_token"));
+		assertEquals(1, tokenStore.getFlushCount());
+		assertEquals(0, tokenStore.getFailedUpdateCount());
+	}
+
+	@Test
+	public void testQueuedRemoval() {
+		tokenStore.setSynchronousRemoval(false);
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("testToken"), createAuthentication("marissa"));
+		tokenStore.flush();
+		tokenStore.removeAccessToken("testToken");
+
+		assertEquals(1, countRows("oauth_access_token"));
+		assertNull(tokenStore.readAccessToken("testToken"));
+		assertNull(tokenStore.getAccessToken(createAuthentication("marissa")));
+		tokenStore.flush();
+		assertEquals(0, countRows("oauth_access_token"));
+	}
+
+	@Test
+	public void testSynchronousRemoval() {
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("testToken"), createAuthentication("marissa"));
+		tokenStore.removeAccessToken("testToken");
+		assertEquals(0, tokenStore.getQueueDepth());
+		assertEquals(0, countRows("oauth_access_token"));
+	}
+
+	@Test
+	public void testFullQueueIsFlushedByCaller() {
+		tokenStore.setMaxQueueSize(2);
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("token1"), createAuthentication("user1"));
+		assertEquals(1, tokenStore.getQueueDepth());
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("token2"), createAuthentication("user2"));
+		assertEquals(0, tokenStore.getQueueDepth());
+		assertEquals(2, countRows("oauth_access_token"));
+	}
+
+	@Test
+	public void testFailedUpdateDoesNotLoseOthers() {
+		OAuth2AccessToken duplicate = new DefaultOAuth2AccessToken("duplicate");
+		tokenStore.storeAccessToken(duplicate, createAuthentication("user1"));
+		tokenStore.flush();
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("token1"), createAuthentication("user2"));
+		tokenStore.storeAccessToken(duplicate, createAuthentication("user1"));
+		tokenStore.flush();
+		assertEquals(2, countRows("oauth_access_token"));
+		assertEquals(1, tokenStore.getFailedUpdateCount());
+		assertNotNull(tokenStore.readAccessToken("token1"));
+	}
+
+	@Test
+	public void testUnreachableDatabaseKeepsQueue() throws Exception {
+		FailingDataSource dataSource = new FailingDataSource(db);
+		WriteBehindJdbcTokenStore store = new WriteBehindJdbcTokenStore(dataSource);
+		store.setMaxQueueSize(2);
+		try {
+			store.storeAccessToken(new DefaultOAuth2AccessToken("token1"), createAuthentication("user1"));
+			dataSource.failing = true;
+			store.flush();
+			assertEquals(1, store.getQueueDepth());
+			assertNotNull(store.readAccessToken("token1"));
+
+			// The queue is full, so the caller flushes it (and fails again), and the oldest change is discarded
+			store.storeAccessToken(new DefaultOAuth2AccessToken("token2"), createAuthentication("user2"));
+			store.storeAccessToken(new DefaultOAuth2AccessToken("token3"), createAuthentication("user3"));
+			assertEquals(2, store.getQueueDepth());
+			assertEquals(1, store.getFailedUpdateCount());
+
+			dataSource.failing = false;
+			store.flush();
+			assertEquals(0, store.getQueueDepth());
+			assertEquals(2, countRows("oauth_access_token"));
+			assertNull(store.readAccessToken("token1"));
+			assertNotNull(store.readAccessToken("token3"));
+		}
+		finally {
+			dataSource.failing = false;
+			store.destroy();
+		}
+	}
+
+	@Test
+	public void testUnexpectedFailureKeepsQueue() throws Exception {
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("testToken"), createAuthentication("marissa"));
+		Object unwritable = new Object() {
+			@Override
+			public String toString() {
+				throw new IllegalStateException("Cannot be written");
+			}
+		};
+		tokenStore.update("delete from oauth_access_token where token_id = ?", new Object[] { unwritable },
+				new int[] { Types.VARCHAR });
+		tokenStore.flush();
+		assertEquals(2, tokenStore.getQueueDepth());
+		assertEquals(0, countRows("oauth_access_token"));
+		assertNotNull(tokenStore.readAccessToken("testToken"));
+	}
+
+	@Test
+	public void testDestroyWritesQueue() throws Exception {
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("testToken"), createAuthentication("marissa"));
+		tokenStore.destroy();
+		assertEquals(1, countRows("oauth_access_token"));
+	}
+
+	private static class FailingDataSource extends DelegatingDataSource {
+
+		private volatile boolean failing;
+
+		public FailingDataSource(DataSource dataSource) {
+			super(dataSource);
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			if (failing) {
+				throw new SQLException("Database unavailable");
+			}
+			return super.getConnection();
+		}
+
+	}
+
+	private int countRows(String table) {
+		return jdbcTemplate.queryForInt("select count(*) from " + table);
+	}
+
+	private OAuth2Authentication createAuthentication(String name) {
+		return new OAuth2Authentication(new DefaultAuthorizationRequest("id", null), new TestAuthentication(name, false));
+	}
+
+}
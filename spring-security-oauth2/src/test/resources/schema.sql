@@ -21,25 +21,37 @@ create table oauth_client_token (
 );
 
 create table oauth_access_token (
-  token_id VARCHAR(256),
+  token_id VARCHAR(256) PRIMARY KEY,
   token LONGVARBINARY,
   authentication_id VARCHAR(256),
   user_name VARCHAR(256),
   client_id VARCHAR(256),
   authentication LONGVARBINARY,
-  refresh_token VARCHAR(256)
+  refresh_token VARCHAR(256),
+  expiration TIMESTAMP
 );
 
+create index oauth_access_token_authentication_id on oauth_access_token (authentication_id);
+create index oauth_access_token_user_name on oauth_access_token (user_name);
+create index oauth_access_token_client_id on oauth_access_token (client_id);
+create index oauth_access_token_refresh_token on oauth_access_token (refresh_token);
+create index oauth_access_token_expiration on oauth_access_token (expiration);
+
 create table oauth_refresh_token (
-  token_id VARCHAR(256),
+  token_id VARCHAR(256) PRIMARY KEY,
   token LONGVARBINARY,
-  authentication LONGVARBINARY
+  authentication LONGVARBINARY,
+  expiration TIMESTAMP
 );
 
+create index oauth_refresh_token_expiration on oauth_refresh_token (expiration);
+
 create table oauth_code (
-  code VARCHAR(256), authentication LONGVARBINARY
+  code VARCHAR(256) PRIMARY KEY, authentication LONGVARBINARY, created TIMESTAMP
 );
 
+create index oauth_code_created on oauth_code (created);
+
 -- customized oauth_client_details table
 create table ClientDetails (
   appId VARCHAR(256) PRIMARY KEY,